@@ -1,7 +1,10 @@
 package org.esa.s3tbx.c3solcislstr.ac;
 
 import org.esa.s3tbx.c3solcislstr.ac.aot.AotConsts;
+import org.esa.s3tbx.c3solcislstr.ac.aot.AotLowresOp;
 import org.esa.s3tbx.c3solcislstr.ac.aot.AotMasterOp;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.RasterDataNode;
 import org.esa.snap.core.gpf.Operator;
@@ -50,6 +53,11 @@ public class OlciSlstrAcOp extends Operator {
             description = "If set, SDR uncertainty bands will be written into SDR product")
     private boolean writeSdrUncertaintyBands;
 
+    @Parameter(defaultValue = "false",
+            label = "Use SDR derivative for AOT uncertainty",
+            description = "If set, the AOT term of the SDR uncertainty uses the derivative of the SDR with respect to AOT")
+    private boolean useSdrAotDerivative;
+
     @Parameter(defaultValue = "true", label = "Compute SDR everywhere (ignore clouds, water)")
     private boolean computeSdrEverywhere;
 
@@ -59,6 +67,58 @@ public class OlciSlstrAcOp extends Operator {
     @Parameter(description = "Path to atmospheric parameter LUTs.")
     private String pathToAtmosphericParameterLuts;
 
+    @Parameter(defaultValue = "HEAP", label = "Storage of atmospheric parameter LUTs",
+            description = "If DIRECT, the LUT values are stored outside of the Java heap, which reduces garbage collection effort")
+    private Array.Storage lutStorage;
+
+    @Parameter(defaultValue = "DOUBLE", label = "Precision of atmospheric parameter LUT interpolation",
+            description = "If FLOAT, the LUT interpolation uses single precision arithmetic, which is faster")
+    private VectorLookupTable.Precision lutPrecision;
+
+    @Parameter(defaultValue = "0.0", interval = "[0.0,*)", label = "Maximum quantization error of atmospheric parameter LUTs",
+            description = "If positive, the LUT values are quantized to 16 bits, which reduces memory by a factor of two " +
+                    "or more. Loading fails if the absolute quantization error exceeds this value")
+    private double lutQuantizationError;
+
+    @Parameter(defaultValue = "0", interval = "[0,*)", label = "Capacity of atmospheric parameter LUT contraction cache",
+            description = "If positive, LUTs contracted over surface height and AOT are cached, so most lookups " +
+                    "interpolate over the angles only. Surface height and AOT are rounded to 0.01 and 0.001. " +
+                    "The cache cannot be used with the SDR AOT derivative or the LUT surrogates")
+    private int lutContractionCacheCapacity;
+
+    @Parameter(label = "Snapshot directory of atmospheric parameter LUTs",
+            description = "If set, the preprocessed LUTs are written to binary snapshots in this directory once, " +
+                    "and are mapped from the snapshots afterwards, which is much faster than reading the NetCDF LUTs")
+    private File lutSnapshotDir;
+
+    @Parameter(defaultValue = "21", interval = "[0,*)", label = "Aerosol model of atmospheric parameter LUTs",
+            description = "The index of the aerosol model of the atmospheric parameter LUTs. The LUT snapshots hold " +
+                    "the default model 21 only, so other models are read from the NetCDF LUTs")
+    private int lutAerosolModel;
+
+    @Parameter(defaultValue = "false", label = "Restrict atmospheric parameter LUTs to the product geometry",
+            description = "If set, only the part of the LUTs covering the surface heights and angles of the source " +
+                    "product is read, which reduces load time and memory. The LUT snapshots are not used then")
+    private boolean lutGeometryEnvelope;
+
+    @Parameter(label = "SDR bands", description = "The names of the SDR bands written, e.g. 'sdr_Oa01'. If not set, " +
+            "all SDR bands are written. Only the atmospheric parameter LUT wavelengths of these bands are read")
+    private String[] sdrBands;
+
+    @Parameter(defaultValue = "0.0", interval = "[0.0,*)", label = "Maximum error of atmospheric parameter LUT surrogates",
+            description = "If positive, the LUTs are replaced by piecewise polynomials fitted to the LUTs with this " +
+                    "maximum absolute error at the LUT nodes, the cell centres and random test points. Fitting fails if " +
+                    "the error cannot be met. The surrogates cannot be used with the LUT contraction cache")
+    private double lutSurrogateMaxError;
+
+    @Parameter(defaultValue = "4", interval = "[1,*)", label = "Degree of atmospheric parameter LUT surrogates",
+            description = "The maximum total degree of the piecewise polynomials replacing the LUTs")
+    private int lutSurrogateDegree;
+
+    @Parameter(label = "Report directory of atmospheric parameter LUT surrogates",
+            description = "If set, the accuracy reports and coefficients of the LUT surrogates are written to this directory")
+    private File lutSurrogateReportDir;
+
 
     @SourceProduct(description = "C3S SYN OLCI SLSTR product",
             label = "C3S SYN OLCI SLSTR L1b product")
@@ -69,6 +129,7 @@ public class OlciSlstrAcOp extends Operator {
     @Override
     public void initialize() throws OperatorException {
         sensor = determineSensor(sourceProduct);
+        preloadAuxdata();
         Product aotProduct;
         aotProduct = processAot(sourceProduct);
         if (aotProduct == AotMasterOp.EMPTY_PRODUCT) {
@@ -102,6 +163,39 @@ public class OlciSlstrAcOp extends Operator {
         }
     }
 
+    /**
+     * Starts loading the LUTs and surface spectra in the background, so the loads overlap with
+     * setting up the AOT and SDR operators, which wait for the data when they need them first.
+     * Nothing is loaded for a source product too small for the AOT retrieval, as neither operator
+     * is set up then.
+     */
+    private void preloadAuxdata() {
+        if (AotMasterOp.isTooSmall(sourceProduct)) {
+            return;
+        }
+        AotLowresOp.preload(sensor);
+        // the envelope LUTs depend on the source product statistics, which are computed by the SDR operator
+        if (!aotOnly && !lutGeometryEnvelope && pathToAtmosphericParameterLuts != null) {
+            SdrOlciSlstrOp.preloadLuts(sensor, sdrBands, getLutPath(false), getLutPath(true), lutStorage,
+                                       lutPrecision, lutQuantizationError, lutSnapshotDir, lutAerosolModel);
+        }
+    }
+
+    private File getLutPath(boolean slstr) {
+        final String lutName;
+        switch (sensor) {
+            case OLCI_SLSTR_S3A:
+                lutName = slstr ? S3_A_SLSTR_ATM_PARAMS_LUT_NAME : S3_A_OLCI_ATM_PARAMS_LUT_NAME;
+                break;
+            case OLCI_SLSTR_S3B:
+                lutName = slstr ? S3_B_SLSTR_ATM_PARAMS_LUT_NAME : S3_B_OLCI_ATM_PARAMS_LUT_NAME;
+                break;
+            default:
+                throw new OperatorException("Sensor '" + sensor.getName() + "' not supported.");
+        }
+        return new File(pathToAtmosphericParameterLuts + File.separator + lutName);
+    }
+
     private void copySourceBands(String geomBandNameOlci) {
         RasterDataNode rasterDataNodeOlci = sourceProduct.getBand(geomBandNameOlci);
         if (rasterDataNodeOlci != null) {
@@ -158,26 +252,20 @@ public class OlciSlstrAcOp extends Operator {
         sdrOp.setParameter("sensor", sensor);
         sdrOp.setParameter("computeSdrEverywhere", computeSdrEverywhere);
         sdrOp.setParameter("writeSdrUncertaintyBands", writeSdrUncertaintyBands);
-        switch (sensor) {
-            case OLCI_SLSTR_S3A:
-                final String olciALutName =
-                        pathToAtmosphericParameterLuts + File.separator + S3_A_OLCI_ATM_PARAMS_LUT_NAME;
-                sdrOp.setParameter("pathToLutOlci", olciALutName);
-                final String slstrALutName =
-                        pathToAtmosphericParameterLuts + File.separator + S3_A_SLSTR_ATM_PARAMS_LUT_NAME;
-                sdrOp.setParameter("pathToLutSlstr", slstrALutName);
-                break;
-            case OLCI_SLSTR_S3B:
-                final String olciBLutName =
-                        pathToAtmosphericParameterLuts + File.separator + S3_B_OLCI_ATM_PARAMS_LUT_NAME;
-                sdrOp.setParameter("pathToLutOlci", olciBLutName);
-                final String slstrBLutName =
-                        pathToAtmosphericParameterLuts + File.separator + S3_B_SLSTR_ATM_PARAMS_LUT_NAME;
-                sdrOp.setParameter("pathToLutSlstr", slstrBLutName);
-                break;
-            default:
-                throw new OperatorException("Sensor '" + sensor.getName() + "' not supported.");
-        }
+        sdrOp.setParameter("useSdrAotDerivative", useSdrAotDerivative);
+        sdrOp.setParameter("lutStorage", lutStorage);
+        sdrOp.setParameter("lutPrecision", lutPrecision);
+        sdrOp.setParameter("lutQuantizationError", lutQuantizationError);
+        sdrOp.setParameter("lutContractionCacheCapacity", lutContractionCacheCapacity);
+        sdrOp.setParameter("lutSnapshotDir", lutSnapshotDir);
+        sdrOp.setParameter("lutAerosolModel", lutAerosolModel);
+        sdrOp.setParameter("lutGeometryEnvelope", lutGeometryEnvelope);
+        sdrOp.setParameter("sdrBands", sdrBands);
+        sdrOp.setParameter("lutSurrogateMaxError", lutSurrogateMaxError);
+        sdrOp.setParameter("lutSurrogateDegree", lutSurrogateDegree);
+        sdrOp.setParameter("lutSurrogateReportDir", lutSurrogateReportDir);
+        sdrOp.setParameter("pathToLutOlci", getLutPath(false));
+        sdrOp.setParameter("pathToLutSlstr", getLutPath(true));
 
         return sdrOp.getTargetProduct();
     }
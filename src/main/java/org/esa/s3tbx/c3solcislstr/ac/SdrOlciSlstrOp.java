@@ -1,11 +1,24 @@
 package org.esa.s3tbx.c3solcislstr.ac;
 
-import org.esa.s3tbx.c3solcislstr.ac.aot.lut.HyLutOlci;
-import org.esa.s3tbx.c3solcislstr.ac.aot.lut.HyLutSlstr;
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.HyLut;
 import org.esa.s3tbx.c3solcislstr.ac.aot.lut.Lut;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutEnvelope;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutPair;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutPreloader;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutReadOptions;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutRegistry;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.SurrogateLut;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.ContractionCache;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.Stx;
+import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.gpf.OperatorException;
 import org.esa.snap.core.gpf.OperatorSpi;
 import org.esa.snap.core.gpf.annotations.OperatorMetadata;
@@ -16,7 +29,18 @@ import org.esa.snap.core.gpf.pointop.*;
 import org.esa.snap.core.util.ProductUtils;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 import static java.lang.Math.*;
 import static java.lang.StrictMath.toRadians;
@@ -44,6 +68,11 @@ public class SdrOlciSlstrOp extends PixelOperator {
             description = "If set, SDR uncertainty bands will be written into SDR product")
     boolean writeSdrUncertaintyBands;
 
+    @Parameter(defaultValue = "false",
+            description = "If set, the AOT term of the SDR uncertainty uses the derivative of the SDR with respect to AOT, " +
+                    "instead of the diffuse to global ratio for downward radiation")
+    boolean useSdrAotDerivative;
+
     @Parameter(defaultValue = "false",
             description = " If set, SDR are computed everywhere (brute force, ignores clouds etc.)")
     boolean computeSdrEverywhere;
@@ -57,6 +86,59 @@ public class SdrOlciSlstrOp extends PixelOperator {
     @Parameter(label = "Path to AC LUT", description = "The look-up-table used for the atmospheric correction of SLSTR bands.")
     private File pathToLutSlstr;
 
+    @Parameter(defaultValue = "HEAP", description = "The storage of the LUT values.")
+    private Array.Storage lutStorage;
+
+    @Parameter(defaultValue = "DOUBLE", description = "The arithmetic precision of the LUT interpolation.")
+    private VectorLookupTable.Precision lutPrecision;
+
+    @Parameter(defaultValue = "0.0", interval = "[0.0,*)",
+            description = "The maximum absolute error of 16-bit LUT value quantization. Zero disables quantization.")
+    private double lutQuantizationError;
+
+    @Parameter(defaultValue = "0", interval = "[0,*)",
+            description = "The number of LUTs contracted over surface height and AOT which are cached. Zero disables the cache. " +
+                    "The cache cannot be used with the SDR AOT derivative or the LUT surrogates.")
+    private int lutContractionCacheCapacity;
+
+    @Parameter(description = "The directory of the preprocessed LUT snapshots. If set, the LUTs are mapped from " +
+            "snapshots, which are written first if they are missing or stale.")
+    private File lutSnapshotDir;
+
+    @Parameter(defaultValue = "21", interval = "[0,*)",
+            description = "The index of the aerosol model of the LUTs. The LUT snapshots hold the default model 21 only.")
+    private int lutAerosolModel;
+
+    @Parameter(defaultValue = "false",
+            description = "If set, the LUTs are restricted to the ranges of surface height and angles covered by the " +
+                    "source product, padded by one LUT node. The LUT snapshots are not used then.")
+    private boolean lutGeometryEnvelope;
+
+    @Parameter(description = "The names of the SDR bands written, e.g. 'sdr_Oa01'. If not set, all SDR bands are " +
+            "written. Only the LUT wavelengths of these bands are read.")
+    private String[] sdrBands;
+
+    @Parameter(defaultValue = "0.0", interval = "[0.0,*)",
+            description = "The maximum absolute error of the polynomial surrogates used instead of the LUTs, at the LUT " +
+                    "nodes, the cell centres and random test points. Zero disables the surrogates. The surrogates cannot be " +
+                    "used with the LUT contraction cache.")
+    private double lutSurrogateMaxError;
+
+    @Parameter(defaultValue = "4", interval = "[1,*)",
+            description = "The maximum total degree of the polynomial surrogates used instead of the LUTs.")
+    private int lutSurrogateDegree;
+
+    @Parameter(description = "The directory the accuracy reports and coefficients of the LUT surrogates are written to.")
+    private File lutSurrogateReportDir;
+
+    private static final int OLCI_BAND_COUNT = 21;
+
+    // the margin the subsampled ranges of the angle bands are widened by for the LUT envelope (degree)
+    private static final double ENVELOPE_ANGLE_MARGIN = 1.0;
+
+    // the locks guarding the LUT snapshots, which are written by preloads and operators
+    private static final Map<File, Object> SNAPSHOT_LOCKS = new ConcurrentHashMap<>();
+
     static final int SRC_LAND_MASK = 0;
     static final int SRC_SNOW_MASK = 1;
 
@@ -83,17 +165,25 @@ public class SdrOlciSlstrOp extends PixelOperator {
     static final int SRC_TOA_RFL = 17;
     int SRC_TOA_VAR;
 
-    private Lut hyLutOlci;
+    private HyLut hyLutOlci;
     private double[] hyLutOlciMinMax;
+    private double[] hyLutOlciRaaMinMax;
 
-    private Lut hyLutSlstr;
+    private HyLut hyLutSlstr;
     private double[] hyLutSlstrMinMax;
+    private double[] hyLutSlstrRaaMinMax;
+
+    private Lut lutOlci;
+    private Lut lutSlstr;
+    private LutPair lutPair;
     private double vzaMinOlci;
     private double vzaMaxOlci;
     private double szaMinOlci;
     private double szaMaxOlci;
     private double hsfMinOlci;
     private double hsfMaxOlci;
+    private double raaMinOlci;
+    private double raaMaxOlci;
     private double aotMinOlci;
     private double aotMaxOlci;
     private double ozoMinOlci;
@@ -108,6 +198,8 @@ public class SdrOlciSlstrOp extends PixelOperator {
     private double szaMaxSlstr;
     private double hsfMinSlstr;
     private double hsfMaxSlstr;
+    private double raaMinSlstr;
+    private double raaMaxSlstr;
     private double aotMinSlstr;
     private double aotMaxSlstr;
     private double ozoMinSlstr;
@@ -119,24 +211,93 @@ public class SdrOlciSlstrOp extends PixelOperator {
 
     private double[] geophysicalNoDataValues;
 
+    // the sensor bands written, and the indexes of their SDR band names
+    private int[] bandIndexes;
+    private int[] sdrIndexes;
+    private int olciBandCount;
+    // the wavelengths read from the LUTs
+    private int[] olciWavelengths;
+    private int[] slstrWavelengths;
+
+    private ThreadLocal<LutPair.Buffers> lutBuffers;
+    private final List<LutPair.Buffers> allLutBuffers = new CopyOnWriteArrayList<>();
+
 
     @Override
     protected void prepareInputs() throws OperatorException {
         super.prepareInputs();
+        if (writeSdrUncertaintyBands && useSdrAotDerivative && lutContractionCacheCapacity > 0) {
+            // the AOT derivative is interpolated from the full LUTs, which the contraction cache cannot serve
+            throw new OperatorException("The LUT contraction cache cannot be used with the SDR AOT derivative");
+        }
+        if (lutSurrogateMaxError > 0.0 && lutContractionCacheCapacity > 0) {
+            // the surrogates replace the LUT interpolation the contraction cache would serve
+            throw new OperatorException("The LUT contraction cache cannot be used with the LUT surrogates");
+        }
+        initBandSelection();
         String lutPathOlci = pathToLutOlci.getAbsolutePath();
         String lutPathSlstr = pathToLutSlstr.getAbsolutePath();
-        hyLutOlciMinMax = new double[14];
-        hyLutSlstrMinMax = new double[14];
-        try {
-            hyLutOlci = HyLutOlci.read(lutPathOlci, hyLutOlciMinMax);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        final LutRegistry registry = LutRegistry.getInstance();
+        final long startTime = System.nanoTime();
+        final LutEnvelope envelopeOlci;
+        final LutEnvelope envelopeSlstr;
+        if (lutGeometryEnvelope) {
+            envelopeOlci = computeEnvelope("OLCI", SRC_VZA_OLCI, SRC_VAA_OLCI, SRC_SZA_OLCI, SRC_SAA_OLCI);
+            envelopeSlstr = computeEnvelope("SLSTR", SRC_VZA_SLSTR, SRC_VAA_SLSTR, SRC_SZA_SLSTR, SRC_SAA_SLSTR);
+        } else {
+            envelopeOlci = null;
+            envelopeSlstr = null;
         }
+        final LutReadOptions optionsOlci = createReadOptions(lutPathOlci, envelopeOlci, olciWavelengths, false);
+        final LutReadOptions optionsSlstr = createReadOptions(lutPathSlstr, envelopeSlstr, slstrWavelengths, true);
+        // the SLSTR LUT is read while the OLCI LUT is read
+        final Future<HyLut> slstrTask = LutPreloader.getInstance().submit(
+                () -> readLut(registry, lutPathSlstr, optionsSlstr, getLogger()));
         try {
-            hyLutSlstr = HyLutSlstr.read(lutPathSlstr, hyLutSlstrMinMax);
+            hyLutOlci = readLut(registry, lutPathOlci, optionsOlci, getLogger());
+            hyLutSlstr = slstrTask.get();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperatorException("Interrupted while reading the LUTs", e);
+        } finally {
+            slstrTask.cancel(true);
         }
+        getLogger().info(String.format("LUTs read in %.3f s", (System.nanoTime() - startTime) * 1.0e-9));
+        getLogger().fine(String.format("LUT registry: %d loads, %d hits, %.1f MiB resident",
+                                       registry.getLoadCount(), registry.getHitCount(),
+                                       registry.getResidentBytes() / (1024.0 * 1024.0)));
+        hyLutOlciMinMax = hyLutOlci.getArrayMinMax();
+        hyLutSlstrMinMax = hyLutSlstr.getArrayMinMax();
+        hyLutOlciRaaMinMax = hyLutOlci.getRaaMinMax();
+        hyLutSlstrRaaMinMax = hyLutSlstr.getRaaMinMax();
+        if (lutSurrogateMaxError > 0.0) {
+            lutOlci = getSurrogate(registry, "OLCI", lutPathOlci, optionsOlci);
+            lutSlstr = getSurrogate(registry, "SLSTR", lutPathSlstr, optionsSlstr);
+            // the surrogates do not refer to the LUTs, so the registry may reclaim them
+            hyLutOlci = null;
+            hyLutSlstr = null;
+        } else {
+            // the registry LUTs are shared, so each operator holds its own contraction cache
+            hyLutOlci = hyLutOlci.withContractionCacheCapacity(lutContractionCacheCapacity);
+            hyLutSlstr = hyLutSlstr.withContractionCacheCapacity(lutContractionCacheCapacity);
+            lutOlci = hyLutOlci;
+            lutSlstr = hyLutSlstr;
+        }
+        // the LUT columns of the bands written are their positions in the target product, as the LUTs
+        // hold the wavelengths of the bands written only, and a sensor without bands written is skipped
+        lutPair = new LutPair(olciBandCount > 0 ? lutOlci : null,
+                              olciBandCount < bandIndexes.length ? lutSlstr : null);
+        // per-thread buffers keep the interpolation free of allocations, and as adjacent pixels have
+        // similar geometry, the interval searches start from the previous hit
+        lutBuffers = ThreadLocal.withInitial(() -> {
+            final LutPair.Buffers buffers = lutPair.createBuffers(LookupWorkspace.Search.HUNT);
+            allLutBuffers.add(buffers);
+            return buffers;
+        });
 //        aux = SdrAuxdata.getInstance(sensor);
         //TODO check LUT vza range [60-0] instead of [0, 60]
         initMinMaxInputValues();
@@ -166,7 +327,7 @@ public class SdrOlciSlstrOp extends PixelOperator {
     }
 
     private void addSdrBands(Product targetProduct) {
-        for (int i = 0; i < sensor.getToaBandNamesToCorrected().length; i++) {
+        for (int i : sdrIndexes) {
             Band srcBand = sourceProduct.getBand(sensor.getToaBandNamesToCorrected()[i]);
             Band band = targetProduct.addBand(sensor.getSdrBandNames()[i], ProductData.TYPE_FLOAT32);
             band.setNoDataValue(Float.NaN);
@@ -176,7 +337,7 @@ public class SdrOlciSlstrOp extends PixelOperator {
     }
 
     private void addSdrErrorBands(Product targetProduct) {
-        for (int i = 0; i < sensor.getToaBandNamesToCorrected().length; i++) {
+        for (int i : sdrIndexes) {
             Band srcBand = sourceProduct.getBand(sensor.getToaBandNamesToCorrected()[i]);
             Band band = targetProduct.addBand(sensor.getSdrErrorBandNames()[i], ProductData.TYPE_FLOAT32);
             band.setNoDataValue(Float.NaN);
@@ -246,11 +407,11 @@ public class SdrOlciSlstrOp extends PixelOperator {
     @Override
     protected void configureTargetSamples(TargetSampleConfigurer configurator) {
         int index = 0;
-        for (int i = 0; i < sensor.getSdrBandNames().length; i++) {
+        for (int i : sdrIndexes) {
             configurator.defineSample(index++, sensor.getSdrBandNames()[i]);
         }
         if (writeSdrUncertaintyBands) {
-            for (int i = 0; i < sensor.getSdrErrorBandNames().length; i++) {
+            for (int i : sdrIndexes) {
                 configurator.defineSample(index++, sensor.getSdrErrorBandNames()[i]);
             }
         }
@@ -305,6 +466,8 @@ public class SdrOlciSlstrOp extends PixelOperator {
                 sza_olci < szaMinOlci || sza_olci > szaMaxOlci ||
                 vza_slstr < vzaMinSlstr || vza_slstr > vzaMaxSlstr ||
                 sza_slstr < szaMinSlstr || sza_slstr > szaMaxSlstr ||
+                phi_olci < raaMinOlci || phi_olci > raaMaxOlci ||
+                phi_slstr < raaMinSlstr || phi_slstr > raaMaxSlstr ||
                 aot < aotMinOlci || aot > aotMaxOlci ||
                 hsf < hsfMinOlci || hsf > hsfMaxOlci ||
                 aot < aotMinSlstr || aot > aotMaxSlstr ||
@@ -336,13 +499,16 @@ public class SdrOlciSlstrOp extends PixelOperator {
             return;
         }
 
-        double[] toa_rfl = new double[sensor.getNumBands()];
-        for (int i = 0; i < toa_rfl.length; i++) {
+        // only the bands written are computed, indexed by their position in the target product
+        final int bandCount = bandIndexes.length;
+        double[] toa_rfl = new double[bandCount];
+        for (int j = 0; j < bandCount; j++) {
+            final int i = bandIndexes[j];
             double toaRefl = sourceSamples[SRC_TOA_RFL + i].getDouble();
             if (toaRefl != geophysicalNoDataValues[i]) {
-                toa_rfl[i] = toaRefl / sensor.getCalCoeff()[i];
+                toa_rfl[j] = toaRefl / sensor.getCalCoeff()[i];
             } else {
-                toa_rfl[i] = Double.NaN;
+                toa_rfl[j] = Double.NaN;
 
             }
         }
@@ -363,71 +529,55 @@ public class SdrOlciSlstrOp extends PixelOperator {
 
 
         //TODO
-        double[] tg_olci = hyLutOlci.getTG(cwv, ozo, amf_olci);
-        double[] tg_slstr = hyLutSlstr.getTG(cwv, ozo, amf_slstr);
-        double[][] f_int_all_olci = hyLutOlci.getRT(aot, sza_olci, vza_olci, phi_olci, hsf);
-        double[][] f_int_all_slstr = hyLutSlstr.getRT(aot, sza_slstr, vza_slstr, phi_slstr, hsf);
-
-        int[] keyCorrectedYesNo = sensor.gettoaBandNamesToCorrectedBinaer();
-
-        if (f_int_all_olci == null || f_int_all_slstr == null) {
-            OlciSlstrAcUtils.fillTargetSampleWithNoDataValue(targetSamples);
-            return;
-        }
-
-        double[] sab = new double[sensor.getNumBands()];
-        double[] rfl_pix = new double[sensor.getNumBands()];
-        double[] deltaReflf2deltaAot = new double[sensor.getNumBands()];
+        final LutPair.Buffers buffers = lutBuffers.get();
+        final boolean computeDerivatives = writeSdrUncertaintyBands && useSdrAotDerivative;
+        lutPair.getTG(cwv, ozo, amf_olci, amf_slstr, buffers);
+        lutPair.getRT(aot, hsf, sza_olci, vza_olci, phi_olci, sza_slstr, vza_slstr, phi_slstr, computeDerivatives,
+                      buffers);
+        // the OLCI and SLSTR bands written are stacked in the order of the target product
+        final double[][] f_int_all = buffers.getRT();
+        final double[][] df_int_all = buffers.getRTDerivatives();
+        final double[] tg = buffers.getTG();
+
+        double[] sab = new double[bandCount];
+        double[] rfl_pix = new double[bandCount];
+        double[] deltaReflf2deltaAot = new double[bandCount];
         double rpw;
-        double[] ttot = new double[sensor.getNumBands()];
-        double[] f_int = new double[5];
-        double[] tg = new double[sensor.getNumBands()];
+        double[] ttot = new double[bandCount];
         double x_term;
         int counter = 0;
-        for (int i = 0; i < sensor.getNumBands(); i++) {
-            //TODO check
-            if (i < 21) { // OLCI
-                for (int j = 0; j < 5; j++) {
-                    f_int[j] = f_int_all_olci[j][i];
-                }
-                tg[i] = tg_olci[i];
-                rpw = f_int[0]; // * Math.PI / mus_olci; // Path Radiance
-                ttot[i] = f_int[1]; // / mus_olci;    // Total TOA flux (Isc*Tup*Tdw)
-            } else { //SLSTR
-                for (int k = 0; k < 5; k++) {
-                    //TODO after OLCI and SLSTR LUT delivery
-//                    f_int[j] = f_int_all_slstr[k][i];
-                    f_int[k] = f_int_all_slstr[k][i - 21];
-                }
-                //TODO after OLCI and SLSTR LUT delivery
-//                tg[i] = tg_slstr[i];
-                tg[i] = tg_slstr[i - 21];
-                rpw = f_int[0]; // * Math.PI / mus_slstr; // Path Radiance
-                ttot[i] = f_int[1]; // / mus_slstr;    // Total TOA flux (Isc*Tup*Tdw)
-            }
+        for (int i = 0; i < bandCount; i++) {
+            rpw = f_int_all[0][i]; // * Math.PI / mus; // Path Radiance
+            ttot[i] = f_int_all[1][i]; // / mus;    // Total TOA flux (Isc*Tup*Tdw)
 
-            deltaReflf2deltaAot[i] = f_int[3];
-            sab[i] = f_int[2];        // Spherical Albedo
+            deltaReflf2deltaAot[i] = f_int_all[3][i];
+            sab[i] = f_int_all[2][i];        // Spherical Albedo
 
             toa_rfl[i] = toa_rfl[i] / tg[i];
 
             x_term = (toa_rfl[i] - rpw) / ttot[i];
             rfl_pix[i] = x_term / (1. + sab[i] * x_term); //calculation of SDR
 
-            if (keyCorrectedYesNo[i] == 1) {
-                targetSamples[counter].set(rfl_pix[i]);
-                counter++;
+            if (computeDerivatives) {
+                // derivative of the SDR with respect to AOT, from the derivatives of path reflectance,
+                // total transmission and spherical albedo
+                final double dx_term = -(df_int_all[0][i] + x_term * df_int_all[1][i]) / ttot[i];
+                final double denominator = 1. + sab[i] * x_term;
+                deltaReflf2deltaAot[i] = (dx_term - x_term * x_term * df_int_all[2][i]) / (denominator * denominator);
             }
+
+            targetSamples[counter].set(rfl_pix[i]);
+            counter++;
         }
 
         // compute and write uncertainties only on demand
         if (writeSdrUncertaintyBands) {
-            double[] err_rad = new double[sensor.getNumBands()];
-            double[] err_RTM = new double[sensor.getNumBands()];
-            double[] err_all = new double[sensor.getNumBands()];
-            double[] err_aod = new double[sensor.getNumBands()];
+            double[] err_rad = new double[bandCount];
+            double[] err_RTM = new double[bandCount];
+            double[] err_all = new double[bandCount];
+            double[] err_aod = new double[bandCount];
 
-            for (int i = 0; i < sensor.getNumBands(); i++) {
+            for (int i = 0; i < bandCount; i++) {
                 //TODO check getRadiometricError == relative error
                 err_rad[i] = sensor.getRadiometricError() * toa_rfl[i] / ttot[i];
                 err_RTM[i] = sensor.getRtmError();
@@ -436,13 +586,66 @@ public class SdrOlciSlstrOp extends PixelOperator {
             }
 
 
-            for (int i = 0; i < sensor.getNumBands(); i++) {
-                if (keyCorrectedYesNo[i] == 1) {
-                    targetSamples[counter].set(err_all[i]);
-                    counter++;
+            for (int i = 0; i < bandCount; i++) {
+                targetSamples[counter].set(err_all[i]);
+                counter++;
+            }
+        }
+    }
+
+    /**
+     * Selects the bands written, i.e. the bands corrected which are requested, and the LUT
+     * wavelengths needed for them.
+     */
+    private void initBandSelection() {
+        final int[][] selection = selectBands(sensor, sdrBands);
+        bandIndexes = selection[0];
+        sdrIndexes = selection[1];
+        olciWavelengths = getLutWavelengths(bandIndexes, false);
+        slstrWavelengths = getLutWavelengths(bandIndexes, true);
+        olciBandCount = (int) Arrays.stream(bandIndexes).filter(i -> i < OLCI_BAND_COUNT).count();
+    }
+
+    /**
+     * Returns the indexes of the sensor bands written, and the indexes of their SDR band names.
+     */
+    static int[][] selectBands(Sensor sensor, String[] sdrBands) {
+        final String[] sdrBandNames = sensor.getSdrBandNames();
+        final List<String> requested = sdrBands != null && sdrBands.length > 0 ? Arrays.asList(sdrBands) : null;
+        if (requested != null) {
+            for (String name : requested) {
+                if (!Arrays.asList(sdrBandNames).contains(name)) {
+                    throw new OperatorException(String.format("Unknown SDR band '%s'", name));
                 }
             }
         }
+        final int[] keyCorrectedYesNo = sensor.gettoaBandNamesToCorrectedBinaer();
+        final List<Integer> bands = new ArrayList<>();
+        final List<Integer> sdr = new ArrayList<>();
+        for (int i = 0, c = 0; i < sensor.getNumBands(); i++) {
+            if (keyCorrectedYesNo[i] == 1) {
+                if (requested == null || requested.contains(sdrBandNames[c])) {
+                    bands.add(i);
+                    sdr.add(c);
+                }
+                c++;
+            }
+        }
+        return new int[][]{
+                bands.stream().mapToInt(Integer::intValue).toArray(),
+                sdr.stream().mapToInt(Integer::intValue).toArray()
+        };
+    }
+
+    /**
+     * Returns the LUT wavelengths needed for the sensor bands written.
+     */
+    static int[] getLutWavelengths(int[] bandIndexes, boolean slstr) {
+        final int[] wavelengths = slstr ?
+                Arrays.stream(bandIndexes).filter(i -> i >= OLCI_BAND_COUNT).map(i -> i - OLCI_BAND_COUNT).toArray() :
+                Arrays.stream(bandIndexes).filter(i -> i < OLCI_BAND_COUNT).toArray();
+        // the LUT ranges are needed for the validity checks, even if no band of a sensor is written
+        return wavelengths.length > 0 ? wavelengths : new int[]{0};
     }
 
     private void initMinMaxInputValues() {
@@ -455,6 +658,9 @@ public class SdrOlciSlstrOp extends PixelOperator {
         hsfMinOlci = hyLutOlciMinMax[4];
         hsfMaxOlci = hyLutOlciMinMax[5];
 
+        raaMinOlci = hyLutOlciRaaMinMax[0];
+        raaMaxOlci = hyLutOlciRaaMinMax[1];
+
         aotMinOlci = hyLutOlciMinMax[6];
         aotMaxOlci = hyLutOlciMinMax[7];
 
@@ -476,6 +682,9 @@ public class SdrOlciSlstrOp extends PixelOperator {
         hsfMinSlstr = hyLutSlstrMinMax[4];
         hsfMaxSlstr = hyLutSlstrMinMax[5];
 
+        raaMinSlstr = hyLutSlstrRaaMinMax[0];
+        raaMaxSlstr = hyLutSlstrRaaMinMax[1];
+
         aotMinSlstr = hyLutSlstrMinMax[6];
         aotMaxSlstr = hyLutSlstrMinMax[7];
 
@@ -489,6 +698,243 @@ public class SdrOlciSlstrOp extends PixelOperator {
         amfMaxSlstr = hyLutSlstrMinMax[13];
     }
 
+    @Override
+    public void dispose() {
+        long hitCount = 0;
+        long adjacentCount = 0;
+        long missCount = 0;
+        for (LutPair.Buffers buffers : allLutBuffers) {
+            hitCount += buffers.getWorkspace().getHitCount();
+            adjacentCount += buffers.getWorkspace().getAdjacentCount();
+            missCount += buffers.getWorkspace().getMissCount();
+        }
+        final long searchCount = hitCount + adjacentCount + missCount;
+        if (searchCount > 0) {
+            getLogger().info(String.format("LUT interval searches: %d, same interval: %.1f%%, adjacent interval: %.1f%%, other: %.1f%%",
+                                           searchCount, 100.0 * hitCount / searchCount,
+                                           100.0 * adjacentCount / searchCount, 100.0 * missCount / searchCount));
+        }
+        logContractionCache("OLCI", hyLutOlci);
+        logContractionCache("SLSTR", hyLutSlstr);
+        allLutBuffers.clear();
+        super.dispose();
+    }
+
+    /**
+     * Starts reading the OLCI and SLSTR LUTs into the {@link LutRegistry} in the background, see
+     * {@link LutPreloader}, so an operator created with the same parameters later waits for the
+     * LUTs only if they are not read by then. The snapshots are written first, if they are stale.
+     *
+     * @param sensor         the sensor.
+     * @param sdrBands       the names of the SDR bands written. If {@code null} or empty, all SDR bands are written.
+     * @param pathToLutOlci  the OLCI LUT file.
+     * @param pathToLutSlstr the SLSTR LUT file.
+     * @param storage        the storage of the LUT values.
+     * @param precision      the arithmetic precision of the LUT interpolation.
+     * @param maxError       the maximum absolute error of 16-bit LUT value quantization.
+     * @param snapshotDir    the directory of the LUT snapshots. May be {@code null}.
+     * @param aerosolModel   the index of the aerosol model.
+     */
+    public static void preloadLuts(Sensor sensor, String[] sdrBands, File pathToLutOlci, File pathToLutSlstr,
+                                   Array.Storage storage, VectorLookupTable.Precision precision, double maxError,
+                                   File snapshotDir, int aerosolModel) {
+        final int[] bandIndexes = selectBands(sensor, sdrBands)[0];
+        final LutRegistry registry = LutRegistry.getInstance();
+        final Logger logger = Logger.getLogger(SdrOlciSlstrOp.class.getName());
+        final LutPreloader preloader = LutPreloader.getInstance();
+        final String lutPathOlci = pathToLutOlci.getAbsolutePath();
+        final String lutPathSlstr = pathToLutSlstr.getAbsolutePath();
+        preloader.preload(() -> readLut(registry, lutPathOlci, createReadOptions(
+                lutPathOlci, storage, precision, maxError, snapshotDir, null, getLutWavelengths(bandIndexes, false),
+                aerosolModel, false), logger));
+        preloader.preload(() -> readLut(registry, lutPathSlstr, createReadOptions(
+                lutPathSlstr, storage, precision, maxError, snapshotDir, null, getLutWavelengths(bandIndexes, true),
+                aerosolModel, true), logger));
+    }
+
+    private LutReadOptions createReadOptions(String lutPath, LutEnvelope envelope, int[] wavelengths, boolean slstr) {
+        return createReadOptions(lutPath, lutStorage, lutPrecision, lutQuantizationError, lutSnapshotDir, envelope,
+                                 wavelengths, lutAerosolModel, slstr);
+    }
+
+    private static LutReadOptions createReadOptions(String lutPath, Array.Storage storage,
+                                                    VectorLookupTable.Precision precision, double maxError,
+                                                    File snapshotDir, LutEnvelope envelope, int[] wavelengths,
+                                                    int aerosolModel, boolean slstr) {
+        final LutReadOptions sensorOptions = slstr ? LutReadOptions.forSlstr() : LutReadOptions.forOlci();
+        // the snapshots hold the full LUTs of the default aerosol model, so they are not used if the LUTs
+        // are restricted to an envelope, or another aerosol model is used
+        final File snapshot = envelope == null && aerosolModel == sensorOptions.getAerosolModel() ?
+                              getSnapshot(snapshotDir, lutPath, wavelengths) : null;
+        return sensorOptions
+                .withAerosolModel(aerosolModel)
+                .withStorage(storage)
+                .withPrecision(precision)
+                .withQuantizationError(maxError)
+                .withSnapshot(snapshot)
+                .withEnvelope(envelope)
+                .withWavelengths(wavelengths);
+    }
+
+    private static HyLut readLut(LutRegistry registry, String lutPath, LutReadOptions options, Logger logger)
+            throws IOException {
+        final File snapshot = options.getSnapshot();
+        if (snapshot != null) {
+            // a snapshot may be written by a preload and by an operator at the same time
+            synchronized (SNAPSHOT_LOCKS.computeIfAbsent(snapshot.getAbsoluteFile(), f -> new Object())) {
+                if (!HyLut.isSnapshotCurrent(lutPath, options)) {
+                    try {
+                        HyLut.writeSnapshot(lutPath, options);
+                        logger.info(String.format("LUT snapshot written to '%s'", snapshot));
+                    } catch (IOException e) {
+                        logger.warning(String.format("Cannot write LUT snapshot '%s': %s", snapshot, e.getMessage()));
+                    }
+                }
+            }
+        }
+        return registry.get(lutPath, options);
+    }
+
+    /**
+     * Computes the envelope of surface height and angles covered by the source product. The relative
+     * azimuth range is derived from the solar and viewing azimuth ranges, so it is conservative.
+     *
+     * @return the envelope, or {@code null} if the ranges of the source rasters are not available.
+     */
+    private LutEnvelope computeEnvelope(String sensorName, int vzaIndex, int vaaIndex, int szaIndex, int saaIndex) {
+        try {
+            final double[] vza = getAncillaryRange(vzaIndex, false);
+            final double[] vaa = getAncillaryRange(vaaIndex, false);
+            final double[] sza = getAncillaryRange(szaIndex, false);
+            final double[] saa = getAncillaryRange(saaIndex, false);
+            // the surface height is not smooth, so its extremes may be missed by subsampling
+            final double[] dem = getAncillaryRange(SRC_DEM_OLCI, true);
+            final double[] raa = getRaaRange(saa[0] - vaa[1], saa[1] - vaa[0]);
+            final LutEnvelope envelope = new LutEnvelope(0.001 * dem[0], 0.001 * dem[1], raa[0], raa[1],
+                                                         vza[0], vza[1], sza[0], sza[1]);
+            getLogger().info(String.format("%s LUT envelope: %s", sensorName, envelope));
+            return envelope;
+        } catch (RuntimeException e) {
+            getLogger().warning(String.format("Cannot compute %s LUT envelope, the full LUT is read: %s",
+                                              sensorName, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Returns the range of an ancillary raster. The range of a tie-point grid is the range of its tie
+     * points, which bounds the interpolated values. The range of a band is taken from accurate
+     * statistics, or from the statistics of a subsampled level of its image, so the full-resolution
+     * band is not read. The latter is used for the angles only, which vary smoothly, so the extremes
+     * missed by subsampling are covered by a margin, and by the node the RT tables are padded with on
+     * either side. Pixels beyond the envelope are set to no-data, see {@link #computePixel}.
+     */
+    private double[] getAncillaryRange(int sampleIndex, boolean accurate) {
+        final String name = sensor.getAncillaryBandNames()[sampleIndex - SRC_VZA_OLCI];
+        final RasterDataNode node = getSourceProduct().getRasterDataNode(name);
+        if (node == null) {
+            throw new IllegalStateException(String.format("Raster '%s' not found", name));
+        }
+        double min;
+        double max;
+        if (node instanceof TiePointGrid) {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            for (float value : ((TiePointGrid) node).getTiePoints()) {
+                if (!Float.isNaN(value)) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+            }
+            if (min > max) {
+                throw new IllegalStateException(String.format("Raster '%s' has no valid tie points", name));
+            }
+        } else if (accurate) {
+            final Stx stx = node.getStx(true, ProgressMonitor.NULL);
+            min = stx.getMinimum();
+            max = stx.getMaximum();
+        } else {
+            final Stx stx = node.getStx(false, ProgressMonitor.NULL);
+            min = stx.getMinimum() - ENVELOPE_ANGLE_MARGIN;
+            max = stx.getMaximum() + ENVELOPE_ANGLE_MARGIN;
+        }
+        return new double[]{min, max};
+    }
+
+    /**
+     * Returns the range of the relative azimuth angle as computed in {@link #computePixel}, for a given
+     * range of the difference of solar and viewing azimuth angle.
+     */
+    static double[] getRaaRange(double min, double max) {
+        double raaMin;
+        double raaMax;
+        if (max - min >= 360.0) {
+            raaMin = 0.0;
+            raaMax = 180.0;
+        } else {
+            raaMin = Math.min(foldAzimuth(min), foldAzimuth(max));
+            raaMax = Math.max(foldAzimuth(min), foldAzimuth(max));
+            if (containsMultiple(min, max, 0.0)) {
+                raaMin = 0.0;
+            }
+            if (containsMultiple(min, max, 180.0)) {
+                raaMax = 180.0;
+            }
+        }
+        return new double[]{Math.max(Math.min(raaMin, 179), 1), Math.max(Math.min(raaMax, 179), 1)};
+    }
+
+    private static double foldAzimuth(double difference) {
+        final double phi = Math.abs(difference) % 360.0;
+        return phi > 180.0 ? 360.0 - phi : phi;
+    }
+
+    // tests if the interval [min, max] contains a number equal to offset modulo 360
+    private static boolean containsMultiple(double min, double max, double offset) {
+        return Math.floor((max - offset) / 360.0) * 360.0 >= min - offset;
+    }
+
+    private static File getSnapshot(File snapshotDir, String lutPath, int[] wavelengths) {
+        if (snapshotDir == null) {
+            return null;
+        }
+        // snapshots of different wavelength subsets are kept apart
+        final StringBuilder name = new StringBuilder(new File(lutPath).getName());
+        for (int i = 0; i < wavelengths.length; i++) {
+            name.append(i == 0 ? "_" : "-").append(wavelengths[i]);
+        }
+        return new File(snapshotDir, name.append(".snapshot").toString());
+    }
+
+    private Lut getSurrogate(LutRegistry registry, String sensorName, String lutPath, LutReadOptions options) {
+        final SurrogateLut surrogateLut;
+        try {
+            // the surrogates are fitted once, and are shared like the LUTs
+            surrogateLut = registry.getSurrogate(lutPath, options, lutSurrogateDegree, lutSurrogateMaxError);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new OperatorException(String.format("Cannot fit %s LUT surrogate: %s", sensorName, e.getMessage()), e);
+        }
+        if (lutSurrogateReportDir != null) {
+            final File reportFile = new File(lutSurrogateReportDir, sensorName + "_lut_surrogate.txt");
+            try (Writer writer = new FileWriter(reportFile)) {
+                surrogateLut.writeReport(writer);
+            } catch (IOException e) {
+                throw new OperatorException(String.format("Cannot write LUT surrogate report '%s'", reportFile), e);
+            }
+            getLogger().info(String.format("%s LUT surrogate report written to '%s'", sensorName, reportFile));
+        }
+        return surrogateLut;
+    }
+
+    private void logContractionCache(String sensorName, HyLut lut) {
+        final ContractionCache cache = lut != null ? lut.getContractionCache() : null;
+        if (cache != null) {
+            getLogger().info(String.format("%s LUT contraction cache: hit rate %.1f%%, %d tables, %.1f MiB",
+                                           sensorName, 100.0 * cache.getHitRate(), cache.size(),
+                                           cache.getMemoryFootprint() / (1024.0 * 1024.0)));
+        }
+    }
+
     public static class Spi extends OperatorSpi {
 
         public Spi() {
@@ -3,6 +3,7 @@ package org.esa.s3tbx.c3solcislstr.ac.aot;
 import com.bc.ceres.core.ProgressMonitor;
 import org.esa.s3tbx.c3solcislstr.ac.OlciSlstrAcUtils;
 import org.esa.s3tbx.c3solcislstr.ac.Sensor;
+import org.esa.s3tbx.c3solcislstr.ac.aot.lut.LutPreloader;
 import org.esa.s3tbx.c3solcislstr.ac.aot.lut.MerisLuts;
 import org.esa.s3tbx.c3solcislstr.ac.aot.lut.MomoLut;
 import org.esa.s3tbx.c3solcislstr.ac.aot.math.BrentFitFunction;
@@ -29,6 +30,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -67,7 +69,7 @@ public class AotLowresOp extends Operator {
     @TargetProduct
     private Product targetProduct;
 
-    private String SurfaceSpecName = "surface_reflectance_spec.asc";
+    private static final String SURFACE_SPEC_NAME = "surface_reflectance_spec.asc";
 
     private String productName;
     private String productType;
@@ -94,6 +96,7 @@ public class AotLowresOp extends Operator {
     private double[] vegSurfSpec;
     private double[] specWeights;
     private MomoLut momo;
+    private ThreadLocal<MomoLut.Buffers> momoBuffers;
     private Band validBand;
     private BorderExtender borderExt;
     private Rectangle pixelWindow;
@@ -140,7 +143,7 @@ public class AotLowresOp extends Operator {
         specWeights = sensor.getSpecWeights();
         specWvl = getSpectralWvl(specBandNames);
         nSpecWvl = specWvl[0].length;
-        readSurfaceSpectra(SurfaceSpecName);
+        readSurfaceSpectra(SURFACE_SPEC_NAME);
 
         if (!sourceProduct.containsRasterDataNode(ozoneName)) {
             createConstOzoneBand();
@@ -200,7 +203,8 @@ public class AotLowresOp extends Operator {
         BrentFitFunction brentFitFunction = null;
         inPixField = readDarkestNPixels(sourceTiles, iX, iY, pixelWindow);
         if (inPixField != null) {
-            brentFitFunction = new BrentFitFunction(BrentFitFunction.SPECTRAL_MODEL, inPixField, momo, specWeights, soilSurfSpec, vegSurfSpec);
+            brentFitFunction = new BrentFitFunction(BrentFitFunction.SPECTRAL_MODEL, inPixField, momo, momoBuffers.get(),
+                                                    specWeights, soilSurfSpec, vegSurfSpec);
         }
         retrieveAndSetTarget(inPixField, brentFitFunction, targetTiles, iX, iY);
     }
@@ -408,34 +412,29 @@ public class AotLowresOp extends Operator {
         sourceProduct.addBand(ndviBand);
     }
 
+    /**
+     * Starts loading the MOMO and gas transmission LUTs and the surface spectra in the background,
+     * see {@link LutPreloader}. The operator collects them on initialisation.
+     *
+     * @param sensor the sensor.
+     */
+    public static void preload(Sensor sensor) {
+        final int nLutBands = sensor.getNumBandsAotCorr();
+        final LutPreloader preloader = LutPreloader.getInstance();
+        preloader.preload(getMomoKey(nLutBands), () -> readMomoLut(nLutBands));
+        preloader.preload(getSurfaceSpectraKey(SURFACE_SPEC_NAME), () -> readSurfaceSpectraTable(SURFACE_SPEC_NAME));
+    }
+
     private void readSurfaceSpectra(String fname) {
         Guardian.assertNotNull("specWvl", specWvl);
-//        src/main/resources/org/esa/s3tbx/c3solcislstr/ac/surface_reflectance_spec.asc
-        final InputStream inputStream = InputPixelData.class.getResourceAsStream(fname);
-        Guardian.assertNotNull("surface spectra InputStream", inputStream);
-        BufferedReader reader;
-        reader = new BufferedReader(new InputStreamReader(inputStream));
-        String line;
-        float[] fullWvl = new float[10000];
-        float[] fullSoil = new float[10000];
-        float[] fullVeg = new float[10000];
-        int nWvl = 0;
+        final float[][] table;
         try {
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!(line.isEmpty() || line.startsWith("#") || line.startsWith("*"))) {
-                    String[] stmp = line.split("[ \t]+");
-                    fullWvl[nWvl] = Float.parseFloat(stmp[0]);
-                    if (fullWvl[nWvl] < 100) fullWvl[nWvl] *= 1000; // conversion from um to nm
-                    fullSoil[nWvl] = Float.parseFloat(stmp[this.soilSpecId]);
-                    fullVeg[nWvl] = Float.parseFloat(stmp[this.vegSpecId]);
-                    nWvl++;
-                }
-            }
+            table = LutPreloader.getInstance().take(getSurfaceSpectraKey(fname), () -> readSurfaceSpectraTable(fname));
         } catch (IOException ex) {
             Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
             throw new OperatorException(ex.getMessage(), ex.getCause());
         }
+        final int nWvl = table.length;
 
         soilSurfSpec = new double[nSpecWvl];
         vegSurfSpec = new double[nSpecWvl];
@@ -444,11 +443,11 @@ public class AotLowresOp extends Operator {
             float wvl = specWvl[0][i];
             float width = specWvl[1][i];
             int count = 0;
-            while (j < nWvl && fullWvl[j] < wvl - width / 2) j++;
+            while (j < nWvl && table[j][0] < wvl - width / 2) j++;
             if (j == nWvl) throw new OperatorException("wavelength not found reading surface spectra");
-            while (fullWvl[j] < wvl + width / 2) {
-                soilSurfSpec[i] += fullSoil[j];
-                vegSurfSpec[i] += fullVeg[j];
+            while (j < nWvl && table[j][0] < wvl + width / 2) {
+                soilSurfSpec[i] += table[j][this.soilSpecId];
+                vegSurfSpec[i] += table[j][this.vegSpecId];
                 count++;
                 j++;
             }
@@ -460,12 +459,53 @@ public class AotLowresOp extends Operator {
         }
     }
 
+    /**
+     * Reads the table of surface spectra, with the wavelength (nm) in the first column, followed by
+     * the spectra, one row per wavelength.
+     */
+    private static float[][] readSurfaceSpectraTable(String fname) throws IOException {
+//        src/main/resources/org/esa/s3tbx/c3solcislstr/ac/surface_reflectance_spec.asc
+        final InputStream inputStream = InputPixelData.class.getResourceAsStream(fname);
+        Guardian.assertNotNull("surface spectra InputStream", inputStream);
+        final List<float[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!(line.isEmpty() || line.startsWith("#") || line.startsWith("*"))) {
+                    String[] stmp = line.split("[ \t]+");
+                    final float[] row = new float[stmp.length];
+                    for (int k = 0; k < stmp.length; k++) {
+                        row[k] = Float.parseFloat(stmp[k]);
+                    }
+                    if (row[0] < 100) row[0] *= 1000; // conversion from um to nm
+                    rows.add(row);
+                }
+            }
+        }
+        return rows.toArray(new float[0][]);
+    }
+
     private void readLookupTable() throws IOException {
-        ImageInputStream aotIis = MerisLuts.getAotLutData();
-        ImageInputStream gasIis = MerisLuts.getCwvLutData();
         int nLutBands = sensor.getNumBandsAotCorr();
 //        int nLutBands = Sensor.MERIS.getNumBands();  // so far we have only MERIS LUTs!
-        momo = new MomoLut(aotIis, gasIis, nLutBands);
+        momo = LutPreloader.getInstance().take(getMomoKey(nLutBands), () -> readMomoLut(nLutBands));
+        // the LUT is shared by all tile threads, each of which interpolates into its own buffers
+        momoBuffers = ThreadLocal.withInitial(momo::createBuffers);
+    }
+
+    private static MomoLut readMomoLut(int nLutBands) throws IOException {
+        ImageInputStream aotIis = MerisLuts.getAotLutData();
+        ImageInputStream gasIis = MerisLuts.getCwvLutData();
+        return new MomoLut(aotIis, gasIis, nLutBands);
+    }
+
+    private static String getMomoKey(int nLutBands) {
+        return "MOMO LUT (" + nLutBands + " bands)";
+    }
+
+    private static String getSurfaceSpectraKey(String fname) {
+        return "surface spectra " + fname;
     }
 
     private float[][] getSpectralWvl(String[] bandNames) {
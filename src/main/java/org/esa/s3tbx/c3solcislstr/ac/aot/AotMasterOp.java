@@ -92,9 +92,19 @@ public class AotMasterOp extends Operator {
 
     public static final Product EMPTY_PRODUCT = new Product("empty", "empty", 0, 0);
 
+    /**
+     * Tests if a source product is too small for the AOT retrieval, so the {@link #EMPTY_PRODUCT} is produced.
+     *
+     * @param sourceProduct the source product.
+     * @return {@code true} if the source product is too small.
+     */
+    public static boolean isTooSmall(Product sourceProduct) {
+        return sourceProduct.getSceneRasterWidth() < 9 || sourceProduct.getSceneRasterHeight() < 9;
+    }
+
     @Override
     public void initialize() throws OperatorException {
-        if (sourceProduct.getSceneRasterWidth() < 9 || sourceProduct.getSceneRasterHeight() < 9) {
+        if (isTooSmall(sourceProduct)) {
             setTargetProduct(EMPTY_PRODUCT);
             return;
         }
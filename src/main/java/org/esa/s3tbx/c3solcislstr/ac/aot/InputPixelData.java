@@ -8,6 +8,8 @@ package org.esa.s3tbx.c3solcislstr.ac.aot;
 import org.esa.s3tbx.c3solcislstr.ac.aot.util.PixelGeometry;
 
 /**
+ * The input of the AOT retrieval for a single pixel, and the surface reflectance derived from it.
+ * Instances are created per super-pixel and are confined to the thread retrieving it.
  *
  * @author akheckel
  */
@@ -35,11 +37,11 @@ public class InputPixelData {
         this.diffuseFrac = new double[nSpecWvl];
     }
 
-    public synchronized double[] getSurfReflec() {
+    public double[] getSurfReflec() {
         return surfReflec;
     }
 
-    public synchronized double[] getToaReflec() {
+    public double[] getToaReflec() {
         return toaReflec;
     }
 
@@ -11,11 +11,9 @@ import org.esa.s3tbx.c3solcislstr.ac.aot.math.Function;
 
 /**
  * Provides aerosol retrieval class
- * currently not thread safe !!!
- *     subsequent calls to Brent and Powell.
- *     Somewhere along that line thread safety is broken
- * --> instantiate locally in computeTileStack()
- * 
+ * not thread safe, the cost function modifies the pixel data of its super-pixel
+ * --> instantiate locally per super-pixel in computeTileStack()
+ *
  * @author akheckel
  */
 public class PointRetrieval {
@@ -28,7 +26,7 @@ public class PointRetrieval {
 
 // public methods
 
-    public synchronized RetrievalResults runRetrieval(double maxAOT) {
+    public RetrievalResults runRetrieval(double maxAOT) {
         double[] brent = Brent.brent(0.001, 0.5 * maxAOT, maxAOT, brentFitFct, 5e-6);
         float optAOT = (float) brent[0];
         float optErr = (float) brent[1];
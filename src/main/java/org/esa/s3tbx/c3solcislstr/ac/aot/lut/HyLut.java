@@ -0,0 +1,879 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.*;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The atmospheric parameter LUTs read from the hyperspectral NetCDF LUT files.
+ */
+public class HyLut implements Lut {
+
+    static final int RT = 0;
+    static final int TG = 1;
+
+    /**
+     * The index of the default aerosol model, whose tables are read from the LUT files unless another
+     * model is requested, and which is the only model kept in snapshots.
+     */
+    static final int AEROSOL_MODEL = 21;
+
+    // the members of the fused RT table, and the offsets of the parameters in its value vector (in wavelengths)
+    private static final int[][] RT_AXES = {{0, 1, 2, 3, 4}, {0, 1, 4}, {0, 1, 3}, {0, 1}};
+    private static final int RP_OFFSET = 0;
+    private static final int TD_OFFSET = 1;
+    private static final int DD_OFFSET = 2;
+    private static final int TU_OFFSET = 3;
+    private static final int DU_OFFSET = 4;
+    private static final int SA_OFFSET = 5;
+    private static final int RT_PARAMETER_COUNT = 6;
+    private static final int RT_AOT_AXIS = 1;
+
+    /**
+     * The pool reading the LUT variables concurrently, which is shared by all LUTs read at the same time.
+     */
+    private static final ExecutorService LOAD_EXECUTOR = createLoadExecutor();
+
+    /**
+     * The dimensions of the atmospheric parameters returned by {@link #getRT}, i.e. dimension {@code i}
+     * of parameter {@code k} is the common dimension {@code RT_PARAMETER_AXES[k][i]} of hsf, aot, raa,
+     * vza and sza.
+     */
+    static final int[][] RT_PARAMETER_AXES = {{0, 1, 2, 3, 4}, {0, 1, 3, 4}, {0, 1}, {0, 1, 4}, {0, 1, 3}};
+
+    /**
+     * The steps used for rounding hsf and aot when the contraction cache is enabled.
+     */
+    static final double[] CONTRACTION_STEPS = {0.01, 0.001};
+
+    private final FusedLookupTable lutRT;
+    private final MultivariateLookupTable lutTG;
+    private final int wavelengthCount;
+    private final double[] arrayMinMax;
+    private final ContractionCache contractionCache;
+
+    HyLut(MultivariateLookupTable[] tables, double[] arrayMinMax) {
+        this.lutRT = (FusedLookupTable) tables[RT];
+        this.lutTG = tables[TG];
+        this.wavelengthCount = lutTG.getVectorLength();
+        this.arrayMinMax = arrayMinMax.clone();
+        this.contractionCache = null;
+    }
+
+    /**
+     * Creates a LUT sharing the lookup tables of another LUT. The contraction cache is not shared.
+     *
+     * @param lut the other LUT.
+     */
+    HyLut(HyLut lut) {
+        this(lut, 0);
+    }
+
+    /**
+     * Creates a LUT sharing the lookup tables of another LUT, with its own contraction cache.
+     *
+     * @param lut      the other LUT.
+     * @param capacity the capacity of the contraction cache, see {@link #withContractionCacheCapacity(int)}.
+     */
+    private HyLut(HyLut lut, int capacity) {
+        this.lutRT = lut.lutRT;
+        this.lutTG = lut.lutTG;
+        this.wavelengthCount = lut.wavelengthCount;
+        this.arrayMinMax = lut.arrayMinMax;
+        this.contractionCache = capacity > 0 ? new ContractionCache(lutRT, CONTRACTION_STEPS, capacity) : null;
+    }
+
+    /**
+     * Reads the lookup tables of path reflectance, downward and upward transmission, spherical albedo,
+     * downward and upward diffuse to global ratio and gaseous transmission of an aerosol model from a
+     * LUT file.
+     * <p>
+     * The first six parameters are fused into a single table over hsf, aot, raa, vza and sza, so the
+     * fractional indexes are computed once for all of them. Downward transmission and diffuse to global
+     * ratio, and upward transmission and diffuse to global ratio, share all their dimensions and are
+     * interleaved, so one corner fetch serves both.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options, e.g. {@link LutReadOptions#forOlci()}. If the snapshot of the options is
+     *                 current, and neither an envelope nor another than the default aerosol model is given,
+     *                 the tables are mapped from the snapshot instead of being read from the LUT file.
+     *                 Values mapped from a snapshot are copied to the heap if the storage is
+     *                 {@link Array.Storage#HEAP}.
+     * @return the LUT.
+     * @throws IOException if the LUT file or the snapshot could not be read, the LUT file has not the
+     *                     aerosol model, or the quantization error exceeds the maximum.
+     */
+    public static HyLut read(String location, LutReadOptions options) throws IOException {
+        final int aerosolModel = options.getAerosolModel();
+        final int[] remapping = options.getRemapping();
+        final File snapshot = options.getSnapshot();
+        final LutSnapshot tables;
+        if (aerosolModel == AEROSOL_MODEL && options.getEnvelope() == null && snapshot != null &&
+            LutSnapshot.isCurrent(snapshot, new File(location), remapping)) {
+            tables = LutSnapshot.read(snapshot);
+        } else {
+            tables = readSnapshot(location, aerosolModel, options.getEnvelope(), remapping, options.getStorage());
+        }
+        return new HyLut(createTables(tables, options.getStorage(), options.getPrecision(),
+                                      options.getQuantizationError()), tables.arrayMinMax);
+    }
+
+    /**
+     * Tests if the snapshot of the preprocessed LUT file given by the options is current, i.e. exists
+     * and was written from the LUT file for the wavelengths of the options in the current snapshot format.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options.
+     * @return {@code true} if the snapshot is current.
+     * @throws IOException if the LUT file could not be read.
+     * @throws IllegalArgumentException if the options do not give a snapshot, or give another than the
+     *                                  default aerosol model.
+     */
+    public static boolean isSnapshotCurrent(String location, LutReadOptions options) throws IOException {
+        return LutSnapshot.isCurrent(getSnapshot(options), new File(location), options.getRemapping());
+    }
+
+    /**
+     * Writes the snapshot of the preprocessed LUT file given by the options, i.e. the tables of the
+     * default aerosol model, with their dimensions reversed and their wavelengths remapped, into a
+     * versioned binary file stamped with a checksum of the LUT file. The snapshot is read much faster
+     * than the LUT file.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options.
+     * @throws IOException if the LUT file could not be read or the snapshot could not be written.
+     * @throws IllegalArgumentException if the options do not give a snapshot, or give another than the
+     *                                  default aerosol model.
+     */
+    public static void writeSnapshot(String location, LutReadOptions options) throws IOException {
+        final File snapshot = getSnapshot(options);
+        readSnapshot(location, AEROSOL_MODEL, null, options.getRemapping(), Array.Storage.HEAP)
+                .write(snapshot, new File(location));
+    }
+
+    private static File getSnapshot(LutReadOptions options) {
+        if (options.getSnapshot() == null) {
+            throw new IllegalArgumentException("The options do not give a snapshot file.");
+        }
+        if (options.getAerosolModel() != AEROSOL_MODEL) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "The snapshot holds the default aerosol model {0} only.", AEROSOL_MODEL));
+        }
+        return options.getSnapshot();
+    }
+
+    /**
+     * Returns the remapping of the wavelengths restricted to a subset of the wavelengths, so only the
+     * values of the subset are read and stored.
+     *
+     * @param remapping   the remapping of the wavelengths.
+     * @param wavelengths the indexes of the wavelengths of the subset in ascending order, with respect
+     *                    to the remapped wavelengths. If {@code null}, all wavelengths are used.
+     * @return the restricted remapping.
+     * @throws IllegalArgumentException if the subset is empty, or an index is out of range or not ascending.
+     */
+    static int[] selectWavelengths(int[] remapping, int[] wavelengths) throws IllegalArgumentException {
+        if (wavelengths == null) {
+            return remapping;
+        }
+        if (wavelengths.length == 0) {
+            throw new IllegalArgumentException("The wavelength subset is empty.");
+        }
+        final int[] selection = new int[wavelengths.length];
+        for (int i = 0; i < wavelengths.length; i++) {
+            final int index = wavelengths[i];
+            if (index < 0 || index >= remapping.length || i > 0 && index <= wavelengths[i - 1]) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Illegal wavelength index {0} at position {1}.", index, i));
+            }
+            selection[i] = remapping[index];
+        }
+        return selection;
+    }
+
+    /**
+     * Reads the number of aerosol models in a LUT file.
+     *
+     * @param location the location of the LUT file.
+     * @return the number of aerosol models.
+     * @throws IOException if the LUT file could not be read.
+     */
+    static int readAerosolModelCount(String location) throws IOException {
+        try (final NetcdfFile ncfile = NetcdfFiles.open(location)) {
+            return getVariable(ncfile, "reflectance_toa").getDimension(6).getLength();
+        }
+    }
+
+    private static LutSnapshot readSnapshot(String location, int aerosolModel, LutEnvelope envelope,
+                                            int[] remapping, Array.Storage storage)
+            throws IOException {
+        try (final NetcdfFile ncfile = NetcdfFiles.open(location)) {
+            final double[] arrayMinMax = new double[14];
+            final Array aWav = readData(getVariable(ncfile, "wvl_c"));
+            final int nWav = aWav.getLength();
+            for (int index : remapping) {
+                if (index >= nWav) {
+                    throw new IOException(MessageFormat.format(
+                            "Wavelength index {0} is out of range, the LUT file has {1} wavelengths.", index, nWav));
+                }
+            }
+            final int modelCount = getVariable(ncfile, "reflectance_toa").getDimension(6).getLength();
+            if (aerosolModel >= modelCount) {
+                throw new IOException(MessageFormat.format(
+                        "Aerosol model {0} is out of range, the LUT file has {1} aerosol models.", aerosolModel, modelCount));
+            }
+
+            final Array vzaArray = readData(getVariable(ncfile, "vza"));
+            arrayMinMax[0] = vzaArray.getValue(0);
+            arrayMinMax[1] = vzaArray.getValue(vzaArray.getLength() - 1);
+
+            final Array szaArray = readData(getVariable(ncfile, "sza"));
+            arrayMinMax[2] = szaArray.getValue(0);
+            arrayMinMax[3] = szaArray.getValue(szaArray.getLength() - 1);
+
+            final Array hsfArray = readData(getVariable(ncfile, "hsf"));
+            arrayMinMax[4] = 0.001;
+            arrayMinMax[5] = hsfArray.getValue(hsfArray.getLength() - 1);
+
+            final Array aotArray = readData(getVariable(ncfile, "tauaer"));
+            arrayMinMax[6] = aotArray.getValue(0);
+            arrayMinMax[7] = aotArray.getValue(aotArray.getLength() - 1);
+
+            final Array ozoArray = readData(getVariable(ncfile, "Uo3"));
+            arrayMinMax[8] = ozoArray.getValue(0);
+            arrayMinMax[9] = ozoArray.getValue(ozoArray.getLength() - 1);
+
+            final Array cwvArray = readData(getVariable(ncfile, "Uh2o"));
+            arrayMinMax[10] = cwvArray.getValue(0);
+            arrayMinMax[11] = cwvArray.getValue(cwvArray.getLength() - 1);
+
+            final Array amfArray = readData(getVariable(ncfile, "amf"));
+            arrayMinMax[12] = amfArray.getValue(0);
+            arrayMinMax[13] = amfArray.getValue(amfArray.getLength() - 1);
+
+
+            // downward and upward transmission are read together with their diffuse to global ratio, into
+            // the interleaved arrays of the fused table, so the values are stored once in their final layout
+            final CompletionService<LutVariable> reads = new ExecutorCompletionService<>(LOAD_EXECUTOR);
+            final List<LutVariable> variables = getAll(reads, Arrays.asList(
+                    submitRead(reads, location, new String[]{"reflectance_toa"}, 6, aerosolModel, remapping, envelope, RT_AXES[0], storage),
+                    submitRead(reads, location, new String[]{"transmission_down", "diffuse_to_global_down"}, 4, aerosolModel, remapping, envelope, RT_AXES[1], storage),
+                    submitRead(reads, location, new String[]{"transmission_up", "diffuse_to_global_up"}, 4, aerosolModel, remapping, envelope, RT_AXES[2], storage),
+                    submitRead(reads, location, new String[]{"spherical_albedo"}, 3, aerosolModel, remapping, envelope, RT_AXES[3], storage),
+                    submitRead(reads, location, new String[]{"Tg"}, 4, 0, remapping, null, null, storage)));
+            final int[] vectorLengths = new int[variables.size()];
+            final IntervalPartition[][] dimensions = new IntervalPartition[variables.size()][];
+            final Array[] values = new Array[variables.size()];
+            for (int k = 0; k < values.length; k++) {
+                final LutVariable variable = variables.get(k);
+                vectorLengths[k] = variable.vectorLength;
+                dimensions[k] = variable.dimensions;
+                values[k] = variable.values;
+            }
+            if (envelope != null) {
+                // the RT tables are restricted to the envelope, so pixels beyond are out of range
+                restrictMinMax(arrayMinMax, variables.get(0).dimensions);
+            }
+            return new LutSnapshot(arrayMinMax, remapping.clone(), vectorLengths, dimensions, values);
+        }
+    }
+
+    /**
+     * Restricts the ranges of vza, sza and hsf to the dimensions of the RT tables, i.e. hsf, aot, raa,
+     * vza and sza, which have been restricted to an envelope.
+     */
+    private static void restrictMinMax(double[] arrayMinMax, IntervalPartition[] rtDimensions) {
+        final double[] vza = rtDimensions[3].getSequence();
+        arrayMinMax[0] = vza[0];
+        arrayMinMax[1] = vza[vza.length - 1];
+        final double[] sza = rtDimensions[4].getSequence();
+        arrayMinMax[2] = sza[0];
+        arrayMinMax[3] = sza[sza.length - 1];
+        final double[] hsf = rtDimensions[0].getSequence();
+        arrayMinMax[4] = Math.max(arrayMinMax[4], hsf[0]);
+        arrayMinMax[5] = hsf[hsf.length - 1];
+    }
+
+    /**
+     * Submits the read of the values and dimensions of LUT variables defined on the same vertexes to
+     * the loader pool. The value vectors of the variables are interleaved, i.e. at each vertex the
+     * remapped vector of the first variable is followed by the remapped vector of the second one.
+     * Each read opens the LUT file on its own, because a NetCDF file must not be read by several
+     * threads. Only the wavelengths used by the remapping are read, and if an envelope is given, only
+     * the hyperslab needed for the envelope is read.
+     */
+    private static Future<LutVariable> submitRead(CompletionService<LutVariable> reads, String location,
+                                                  String[] names, int dimensionIndex, int coordinateIndex,
+                                                  int[] remapping, LutEnvelope envelope, int[] axes,
+                                                  Array.Storage storage) {
+        return reads.submit(() -> {
+            try (final NetcdfFile ncfile = NetcdfFiles.open(location)) {
+                IntervalPartition[] commonDimensions = null;
+                Array values = null;
+                for (int s = 0; s < names.length; s++) {
+                    final Variable v = getVariable(ncfile, names[s]);
+                    final IntervalPartition[] dimensions = readDimensionsReversed(ncfile, v, 1, 1);
+                    final int[] origin = new int[v.getRank()];
+                    final int[] shape = getCardinals(v);
+                    if (envelope != null) {
+                        for (int i = 0; i < dimensions.length; i++) {
+                            final double[] range = envelope.getRange(axes[i]);
+                            if (range != null) {
+                                final double[] sequence = dimensions[i].getSequence();
+                                final int[] indexes = LutEnvelope.getIndexRange(sequence, range[0], range[1]);
+                                // the reversed dimension i is the dimension rank - 2 - i of the variable
+                                final int k = v.getRank() - 2 - i;
+                                origin[k] = indexes[0];
+                                shape[k] = indexes[1] - indexes[0] + 1;
+                                dimensions[i] = new IntervalPartition(Arrays.copyOfRange(sequence, indexes[0], indexes[1] + 1));
+                            }
+                        }
+                    }
+                    if (commonDimensions == null) {
+                        commonDimensions = dimensions;
+                    } else {
+                        ensureEqualDimensions(commonDimensions, dimensions);
+                    }
+                    values = readDataReversed(v, dimensionIndex, coordinateIndex, origin, shape, remapping,
+                                              s, names.length, values, storage);
+                }
+                return new LutVariable(values, commonDimensions, remapping.length * names.length);
+            }
+        });
+    }
+
+    /**
+     * Returns the results of the reads submitted to a completion service in the order of submission.
+     * The reads are awaited in the order of completion, so the first failure is reported at once, and
+     * the reads still pending are cancelled.
+     */
+    private static <T> List<T> getAll(CompletionService<T> reads, List<Future<T>> futures) throws IOException {
+        final List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                reads.take().get();
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the LUT file.");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static MultivariateLookupTable[] createTables(LutSnapshot tables, Array.Storage storage,
+                                                          VectorLookupTable.Precision precision, double maxError)
+            throws IOException {
+        final VectorLookupTable[] members = new VectorLookupTable[RT_AXES.length];
+        for (int k = 0; k < members.length; k++) {
+            members[k] = createTable(tables.vectorLengths[k], storage.store(tables.values[k]), tables.dimensions[k],
+                                     precision, maxError);
+        }
+        final int tg = RT_AXES.length;
+        final VectorLookupTable tableTG = createTable(tables.vectorLengths[tg], storage.store(tables.values[tg]),
+                                                      tables.dimensions[tg], precision, maxError);
+
+        final MultivariateLookupTable[] result = new MultivariateLookupTable[2];
+        result[RT] = new FusedLookupTable(tables.dimensions[0], members, RT_AXES);
+        result[TG] = tableTG;
+        return result;
+    }
+
+    private static VectorLookupTable createTable(int length, Array values, IntervalPartition[] dimensions,
+                                                 VectorLookupTable.Precision precision, double maxError)
+            throws IOException {
+        final VectorLookupTable.Layout layout = VectorLookupTable.Layout.getDefault();
+        values = layout.arrange(length, values, dimensions);
+        if (maxError > 0.0) {
+            try {
+                values = Array.Quantized.of(values, length, maxError);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(MessageFormat.format("Cannot quantize LUT values: {0}", e.getMessage()), e);
+            }
+        }
+        final VectorLookupTable table = new VectorLookupTable(length, values, layout, dimensions);
+        table.setPrecision(precision);
+        return table;
+    }
+
+    private static void ensureEqualDimensions(IntervalPartition[] a, IntervalPartition[] b) throws IOException {
+        boolean equal = a.length == b.length;
+        for (int i = 0; equal && i < a.length; i++) {
+            equal = Arrays.equals(a[i].getSequence(), b[i].getSequence());
+        }
+        if (!equal) {
+            throw new IOException("Transmission and diffuse to global ratio have different dimensions.");
+        }
+    }
+
+    /**
+     * Returns a LUT sharing the lookup tables of this LUT, with its own cache of RT tables contracted
+     * over hsf and aot. With the cache enabled, hsf and aot are rounded to the nearest multiple of 0.01
+     * and 0.001, respectively, and a lookup interpolates over raa, vza and sza only. LUTs obtained from
+     * the {@link LutRegistry} are shared, so each user of a LUT gets its own cache by this method.
+     *
+     * @param capacity the maximum number of contracted tables held. If zero, the cache is disabled.
+     * @return the LUT.
+     */
+    public HyLut withContractionCacheCapacity(int capacity) {
+        return new HyLut(this, capacity);
+    }
+
+    /**
+     * Returns the minima and maxima of the LUT dimensions, i.e. of vza, sza, hsf, aot, ozone,
+     * water vapour and air mass.
+     *
+     * @return the minima and maxima.
+     */
+    public double[] getArrayMinMax() {
+        return arrayMinMax.clone();
+    }
+
+    /**
+     * Returns the minimum and maximum of the relative azimuth angle of the RT tables, which are
+     * less than the full range if the tables have been restricted to an envelope.
+     *
+     * @return the minimum and maximum.
+     */
+    public double[] getRaaMinMax() {
+        final IntervalPartition raa = lutRT.getDimension(2);
+        return new double[]{raa.getMin(), raa.getMax()};
+    }
+
+    /**
+     * Returns an estimate of the memory occupied by the lookup values in bytes.
+     *
+     * @return the memory footprint in bytes.
+     */
+    public long getMemoryFootprint() {
+        return lutRT.getMemoryFootprint() + lutTG.getMemoryFootprint();
+    }
+
+    /**
+     * Returns the cache of RT tables contracted over hsf and aot.
+     *
+     * @return the cache, or {@code null} if the cache is disabled.
+     */
+    public ContractionCache getContractionCache() {
+        return contractionCache;
+    }
+
+    /**
+     * Returns a lookup table of a single atmospheric parameter returned by {@link #getRT} over
+     * its dimensions, see {@link #RT_PARAMETER_AXES}. The table allocates memory on each lookup,
+     * and is meant for deriving other representations of the parameter.
+     *
+     * @param k the row of the parameter in the matrix returned by {@link #getRT}.
+     * @return the lookup table.
+     */
+    MultivariateLookupTable getRTParameterTable(int k) {
+        return new ParameterTable(k);
+    }
+
+    /**
+     * Returns a dimension of the RT table, i.e. of hsf, aot, raa, vza or sza.
+     *
+     * @param i the index of the dimension.
+     * @return the dimension.
+     */
+    IntervalPartition getRTDimension(int i) {
+        return lutRT.getDimension(i);
+    }
+
+    MultivariateLookupTable getTGTable() {
+        return lutTG;
+    }
+
+    @Override
+    public int getWavelengthCount() {
+        return wavelengthCount;
+    }
+
+    @Override
+    public double[][] getRT(double aot, double sza, double vza, double raa, double hsf) {
+        final double[][] matrix = new double[5][wavelengthCount];
+        getRT(aot, sza, vza, raa, hsf, matrix, new LookupWorkspace());
+        return matrix;
+    }
+
+    @Override
+    public void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, int offset,
+                      LookupWorkspace workspace) {
+        getRT(null, aot, sza, vza, raa, hsf, rt, offset, workspace);
+    }
+
+    /**
+     * Interpolates the atmospheric parameters into a column range of a matrix, see
+     * {@link #getRT(double, double, double, double, double, double[][], int, LookupWorkspace)}, with
+     * the fractional indexes of hsf and aot computed by the caller, see {@link #getRTDimension(int)}.
+     * The fractional indexes are not used if the contraction cache is enabled.
+     *
+     * @param hsfAot the fractional indexes of hsf and aot, or {@code null}.
+     */
+    void getRT(FracIndex[] hsfAot, double aot, double sza, double vza, double raa, double hsf, double[][] rt,
+               int offset, LookupWorkspace workspace) {
+        final int n = wavelengthCount;
+        final double[] values = workspace.getValues(RT_PARAMETER_COUNT * n);
+        final ContractionCache cache = contractionCache;
+        if (cache != null) {
+            final double[] c3 = workspace.getCoordinates(3);
+            c3[0] = raa;
+            c3[1] = vza;
+            c3[2] = sza;
+            cache.get(hsf, aot).getValues(c3, values, workspace);
+        } else {
+            final double[] c5 = workspace.getCoordinates(5);
+            c5[0] = hsf;
+            c5[1] = aot;
+            c5[2] = raa;
+            c5[3] = vza;
+            c5[4] = sza;
+            lutRT.getValues(c5, hsfAot, values, workspace);
+        }
+
+        final double[] rp = rt[0];
+        final double[] tt = rt[1];
+        final double[] sa = rt[2];
+        final double[] dd = rt[3];
+        final double[] du = rt[4];
+        for (int w = 0; w < n; w++) {
+            rp[offset + w] = values[RP_OFFSET * n + w];
+            tt[offset + w] = values[TD_OFFSET * n + w] * values[TU_OFFSET * n + w];
+            sa[offset + w] = values[SA_OFFSET * n + w];
+            dd[offset + w] = values[DD_OFFSET * n + w];
+            du[offset + w] = values[DU_OFFSET * n + w];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The derivatives are interpolated from the full RT table, so the contraction cache is not used.
+     */
+    @Override
+    public void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, double[][] rtDerivatives,
+                      int offset, LookupWorkspace workspace) {
+        getRT(null, aot, sza, vza, raa, hsf, rt, rtDerivatives, offset, workspace);
+    }
+
+    /**
+     * Interpolates the atmospheric parameters and their partial derivatives into a column range of
+     * matrices, see {@link #getRT(double, double, double, double, double, double[][], double[][], int,
+     * LookupWorkspace)}, with the fractional indexes of hsf and aot computed by the caller.
+     *
+     * @param hsfAot the fractional indexes of hsf and aot, or {@code null}.
+     */
+    void getRT(FracIndex[] hsfAot, double aot, double sza, double vza, double raa, double hsf, double[][] rt,
+               double[][] rtDerivatives, int offset, LookupWorkspace workspace) {
+        final double[] c5 = workspace.getCoordinates(5);
+        c5[0] = hsf;
+        c5[1] = aot;
+        c5[2] = raa;
+        c5[3] = vza;
+        c5[4] = sza;
+        final int n = wavelengthCount;
+        final int m = RT_PARAMETER_COUNT * n;
+        final double[] values = workspace.getValues(m);
+        final double[] derivatives = workspace.getDerivatives(m);
+        lutRT.getValues(c5, hsfAot, values, RT_AOT_AXIS, derivatives, workspace);
+
+        for (int w = 0; w < n; w++) {
+            final double td = values[TD_OFFSET * n + w];
+            final double tu = values[TU_OFFSET * n + w];
+            final int c = offset + w;
+            rt[0][c] = values[RP_OFFSET * n + w];
+            rt[1][c] = td * tu;
+            rt[2][c] = values[SA_OFFSET * n + w];
+            rt[3][c] = values[DD_OFFSET * n + w];
+            rt[4][c] = values[DU_OFFSET * n + w];
+            rtDerivatives[0][c] = derivatives[RP_OFFSET * n + w];
+            rtDerivatives[1][c] = derivatives[TD_OFFSET * n + w] * tu + td * derivatives[TU_OFFSET * n + w];
+            rtDerivatives[2][c] = derivatives[SA_OFFSET * n + w];
+            rtDerivatives[3][c] = derivatives[DD_OFFSET * n + w];
+            rtDerivatives[4][c] = derivatives[DU_OFFSET * n + w];
+        }
+    }
+
+    @Override
+    public double[] getTG(double cwv, double ozo, double amf) {
+        return lutTG.getValues(cwv, ozo, amf);
+    }
+
+    @Override
+    public void getTG(double cwv, double ozo, double amf, double[] tg, LookupWorkspace workspace) {
+        final double[] c3 = workspace.getCoordinates(3);
+        c3[0] = cwv;
+        c3[1] = ozo;
+        c3[2] = amf;
+        lutTG.getValues(c3, tg, workspace);
+    }
+
+    private static Variable getVariable(NetcdfFile ncFile, String name) throws IOException {
+        final Variable v = ncFile.findVariable(name);
+        if (v == null) {
+            throw new IOException(MessageFormat.format("Variable ''{0}'' not found.", name));
+        }
+        return v;
+    }
+
+    private static int[] getCardinals(Variable v) {
+        return v.getDimensions().stream().mapToInt(Dimension::getLength).toArray();
+    }
+
+    private static Array readData(Variable v, int[] origin, int[] shape, int[] dimensionIndexes,
+                                  int[] coordinateIndexes) throws IOException {
+        final int[] start = origin.clone();
+        final int[] sizes = shape.clone();
+        for (int i = 0; i < dimensionIndexes.length; i++) {
+            start[dimensionIndexes[i]] = coordinateIndexes[i];
+            sizes[dimensionIndexes[i]] = 1;
+        }
+        try {
+            return Array.create(v.read(start, sizes).get1DJavaArray(v.getDataType()));
+        } catch (InvalidRangeException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reads the hyperslab of a variable where the coordinate of a given dimension is fixed,
+     * with the order of the remaining dimensions reversed. The data are read one wavelength
+     * at a time and are written straight into their final layout, so no full-size temporary
+     * copy is made. The hyperslab is further restricted to the hyperslab given by origin and shape,
+     * and only the wavelengths of the remapping are read, i.e. column {@code j} of the variable holds
+     * the values of wavelength {@code remapping[j]}. The columns of the variable are those of source
+     * {@code sourceIndex} out of {@code sourceCount} sources interleaved, see {@link #submitRead}.
+     *
+     * @param data the data the values are written to, or {@code null} if the data are allocated.
+     * @return the data.
+     */
+    private static Array readDataReversed(Variable v, int dimensionIndex, int coordinateIndex, int[] origin,
+                                          int[] shape, int[] remapping, int sourceIndex, int sourceCount,
+                                          Array data, Array.Storage storage)
+            throws IOException {
+        if (dimensionIndex == 0) {
+            throw new IllegalArgumentException("The wavelength dimension cannot be removed.");
+        }
+        final int[] cardinals = new int[shape.length - 1];
+        for (int i = 0, j = 0; i < shape.length; i++) {
+            if (i != dimensionIndex) {
+                cardinals[j++] = shape[i];
+            }
+        }
+        final int columnCount = remapping.length * sourceCount;
+        final int columnOffset = remapping.length * sourceIndex;
+        final int[] sliceCardinals = cardinals.clone();
+        sliceCardinals[0] = 1;
+        int sliceLength = 1;
+        for (int cardinal : sliceCardinals) {
+            sliceLength *= cardinal;
+        }
+        final int[] reversal = reverseOrdering(cardinals.length);
+        final double[] buffer = new double[sliceLength];
+
+        for (int j = 0; j < remapping.length; j++) {
+            final Array slice = readData(v, origin, shape, new int[]{0, dimensionIndex},
+                                         new int[]{remapping[j], coordinateIndex});
+            if (data == null) {
+                data = storage.allocate(slice, sliceLength * columnCount);
+            }
+            slice.reordered(reversal, sliceCardinals).compacted().getValues(0, buffer);
+            for (int i = 0; i < sliceLength; i++) {
+                data.setValue(i * columnCount + columnOffset + j, buffer[i]);
+            }
+        }
+        return data;
+    }
+
+    private static Array readData(Variable v) throws IOException {
+        return Array.create(v.read().get1DJavaArray(v.getDataType()));
+    }
+
+    private static IntervalPartition[] readDimensions(NetcdfFile ncfile, Variable v, int[] reordering, int skip, int drop) throws IOException {
+        if (reordering.length != v.getRank()) {
+            throw new IllegalArgumentException(
+                    MessageFormat.format("Reordering must be an array of length '{0}'.", v.getRank()));
+        }
+        final IntervalPartition[] partitions = new IntervalPartition[v.getRank() - skip - drop];
+        for (int i = 0; i < v.getRank() - skip - drop; i++) {
+            final String dimensionName = v.getDimension(reordering[i + skip]).getShortName();
+            partitions[i] = new IntervalPartition(readData(getVariable(ncfile, dimensionName)));
+        }
+        return partitions;
+    }
+
+    @SuppressWarnings("SameParameterValue")
+    private static IntervalPartition[] readDimensionsReversed(NetcdfFile ncfile, Variable v, int skip, int drop) throws IOException {
+        return readDimensions(ncfile, v, reverseOrdering(v.getRank()), skip, drop);
+    }
+
+    private static ExecutorService createLoadExecutor() {
+        final int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threadCount, threadCount, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "lut-loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the threads are only needed while LUTs are read
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static int[] reverseOrdering(int n) {
+        final int[] ordering = new int[n];
+        for (int i = 0, k = n - 1; i < n; i++, k--) {
+            ordering[i] = k;
+        }
+        return ordering;
+    }
+
+    private static final class LutVariable {
+
+        final Array values;
+        final IntervalPartition[] dimensions;
+        final int vectorLength;
+
+        LutVariable(Array values, IntervalPartition[] dimensions, int vectorLength) {
+            this.values = values;
+            this.dimensions = dimensions;
+            this.vectorLength = vectorLength;
+        }
+    }
+
+    private final class ParameterTable implements MultivariateLookupTable {
+
+        private final int k;
+        private final int[] axes;
+        private final IntervalPartition[] dimensions;
+
+        ParameterTable(int k) {
+            this.k = k;
+            this.axes = RT_PARAMETER_AXES[k];
+            this.dimensions = new IntervalPartition[axes.length];
+            for (int i = 0; i < axes.length; i++) {
+                dimensions[i] = lutRT.getDimension(axes[i]);
+            }
+        }
+
+        @Override
+        public int getDimensionCount() {
+            return dimensions.length;
+        }
+
+        @Override
+        public IntervalPartition[] getDimensions() {
+            return dimensions;
+        }
+
+        @Override
+        public IntervalPartition getDimension(int i) {
+            return dimensions[i];
+        }
+
+        @Override
+        public int getVectorLength() {
+            return wavelengthCount;
+        }
+
+        @Override
+        public double[] getValues(double... coordinates) {
+            final double[] values = new double[wavelengthCount];
+            getValues(coordinates, values, new LookupWorkspace());
+            return values;
+        }
+
+        @Override
+        public void getValues(double[] coordinates, double[] values, LookupWorkspace workspace) {
+            if (coordinates.length != axes.length) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "coordinates.length = {0} is not equal to {1}", coordinates.length, axes.length));
+            }
+            // the parameter does not depend on the coordinates of the other dimensions
+            final double[] c5 = new double[lutRT.getDimensionCount()];
+            for (int i = 0; i < c5.length; i++) {
+                c5[i] = lutRT.getDimension(i).get(0);
+            }
+            for (int i = 0; i < axes.length; i++) {
+                c5[axes[i]] = coordinates[i];
+            }
+            final int n = wavelengthCount;
+            final double[] parameters = new double[RT_PARAMETER_COUNT * n];
+            lutRT.getValues(c5, parameters, workspace);
+            for (int w = 0; w < n; w++) {
+                switch (k) {
+                    case 0:
+                        values[w] = parameters[RP_OFFSET * n + w];
+                        break;
+                    case 1:
+                        values[w] = parameters[TD_OFFSET * n + w] * parameters[TU_OFFSET * n + w];
+                        break;
+                    case 2:
+                        values[w] = parameters[SA_OFFSET * n + w];
+                        break;
+                    case 3:
+                        values[w] = parameters[DD_OFFSET * n + w];
+                        break;
+                    default:
+                        values[w] = parameters[DU_OFFSET * n + w];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The atmospheric parameter LUTs of all aerosol models in a LUT file, see {@link LutRegistry#getModels}.
+ * <p>
+ * The LUT of an aerosol model is obtained from the registry when the model is requested first, so
+ * it is shared with all other users of the registry. Models obtained are retained in a cache, which
+ * evicts the least recently used models when the memory occupied exceeds a limit, so a processing
+ * run may switch models, e.g. per tile or region, without reading the LUT file for every switch. An
+ * evicted model is held softly by the registry only, and may be reclaimed under memory pressure.
+ * The most recently obtained model is never evicted, even if it exceeds the limit on its own. A LUT
+ * returned remains valid after having been evicted. This class is thread safe.
+ * <p>
+ * The operators process a single aerosol model, which they obtain from the registry directly, see
+ * {@link LutRegistry#get(String, LutReadOptions)}. This class is API for retrievals which switch
+ * between aerosol models within a run, and has no caller in the processors yet.
+ */
+public final class HyLutModels {
+
+    private final int modelCount;
+    private final long maxBytes;
+    private final Loader loader;
+    private final Object[] locks;
+    // the models obtained, in the order of access
+    private final LinkedHashMap<Integer, HyLut> models = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+    private long loadCount;
+    private long hitCount;
+    private long evictionCount;
+
+    HyLutModels(int modelCount, long maxBytes, Loader loader) throws IllegalArgumentException {
+        if (modelCount <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal number of aerosol models {0}", modelCount));
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal memory limit {0}", maxBytes));
+        }
+        this.modelCount = modelCount;
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+        this.locks = new Object[modelCount];
+        for (int i = 0; i < modelCount; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the number of aerosol models.
+     *
+     * @return the number of aerosol models.
+     */
+    public int getModelCount() {
+        return modelCount;
+    }
+
+    /**
+     * Returns the LUT of an aerosol model, which is obtained if it is not in the cache. Concurrent requests
+     * for the same model wait for a single load, while requests for other models proceed. The LUT is
+     * shared and must not be modified, see {@link HyLut#withContractionCacheCapacity(int)}.
+     *
+     * @param aerosolModel the index of the aerosol model.
+     * @return the LUT.
+     * @throws IOException              if the LUT could not be read.
+     * @throws IllegalArgumentException if the index is out of range.
+     */
+    public HyLut getModel(int aerosolModel) throws IOException, IllegalArgumentException {
+        if (aerosolModel < 0 || aerosolModel >= modelCount) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Illegal aerosol model {0}, expected a model in [0, {1}]", aerosolModel, modelCount - 1));
+        }
+        HyLut lut = getCached(aerosolModel);
+        if (lut != null) {
+            return lut;
+        }
+        synchronized (locks[aerosolModel]) {
+            lut = getCached(aerosolModel);
+            if (lut != null) {
+                return lut;
+            }
+            lut = loader.load(aerosolModel);
+            synchronized (models) {
+                models.put(aerosolModel, lut);
+                residentBytes += lut.getMemoryFootprint();
+                loadCount++;
+                evict(aerosolModel);
+            }
+            return lut;
+        }
+    }
+
+    /**
+     * Returns the indexes of the aerosol models in the cache, from the least to the most recently used.
+     *
+     * @return the indexes of the aerosol models.
+     */
+    public int[] getCachedModels() {
+        synchronized (models) {
+            final int[] indexes = new int[models.size()];
+            int i = 0;
+            for (Integer model : models.keySet()) {
+                indexes[i++] = model;
+            }
+            return indexes;
+        }
+    }
+
+    /**
+     * Returns an estimate of the memory occupied by the models in the cache in bytes.
+     *
+     * @return the memory occupied in bytes.
+     */
+    public long getResidentBytes() {
+        synchronized (models) {
+            return residentBytes;
+        }
+    }
+
+    /**
+     * Returns the number of models obtained, including models obtained again after having been evicted.
+     *
+     * @return the number of models obtained.
+     */
+    public long getLoadCount() {
+        synchronized (models) {
+            return loadCount;
+        }
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        synchronized (models) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Returns the number of models evicted from the cache.
+     *
+     * @return the number of models evicted.
+     */
+    public long getEvictionCount() {
+        synchronized (models) {
+            return evictionCount;
+        }
+    }
+
+    private HyLut getCached(int aerosolModel) {
+        synchronized (models) {
+            final HyLut lut = models.get(aerosolModel);
+            if (lut != null) {
+                hitCount++;
+            }
+            return lut;
+        }
+    }
+
+    // must be called while holding the lock on the models
+    private void evict(int retained) {
+        final Iterator<Map.Entry<Integer, HyLut>> iterator = models.entrySet().iterator();
+        while (residentBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<Integer, HyLut> entry = iterator.next();
+            if (entry.getKey() != retained) {
+                residentBytes -= entry.getValue().getMemoryFootprint();
+                evictionCount++;
+                iterator.remove();
+            }
+        }
+    }
+
+    interface Loader {
+
+        HyLut load(int aerosolModel) throws IOException;
+    }
+}
@@ -16,10 +16,83 @@
 
 package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
 
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+
 public interface Lut {
 
+    /**
+     * Returns the number of wavelengths of the vectors returned by {@link #getRT} and {@link #getTG}.
+     *
+     * @return the number of wavelengths.
+     */
+    int getWavelengthCount();
+
     double[][] getRT(double aot, double sza, double vza, double raa, double hsf);
 
+    /**
+     * Interpolates the atmospheric parameters into a caller-supplied matrix without allocating memory.
+     *
+     * @param rt        the matrix receiving path reflectance, total transmission, spherical albedo,
+     *                  and diffuse to global ratios for downward and upward radiation (on return).
+     *                  The matrix must have five rows, each of length {@link #getWavelengthCount()}.
+     * @param workspace the per-thread lookup workspace.
+     */
+    default void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt,
+                       LookupWorkspace workspace) {
+        getRT(aot, sza, vza, raa, hsf, rt, 0, workspace);
+    }
+
+    /**
+     * Interpolates the atmospheric parameters into a column range of a caller-supplied matrix without
+     * allocating memory, e.g. into the columns of a sensor in a matrix stacking the wavelengths of
+     * several sensors.
+     *
+     * @param rt        the matrix receiving the atmospheric parameters, see
+     *                  {@link #getRT(double, double, double, double, double, double[][], LookupWorkspace)}.
+     *                  The rows must have at least {@code offset + } {@link #getWavelengthCount()} columns.
+     * @param offset    the column receiving the parameters of the first wavelength.
+     * @param workspace the per-thread lookup workspace.
+     */
+    void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, int offset,
+               LookupWorkspace workspace);
+
+    /**
+     * Interpolates the atmospheric parameters and their partial derivatives with respect to the
+     * aerosol optical thickness into caller-supplied matrices without allocating memory.
+     *
+     * @param rt            the matrix receiving the atmospheric parameters, see
+     *                      {@link #getRT(double, double, double, double, double, double[][], LookupWorkspace)}.
+     * @param rtDerivatives the matrix receiving the partial derivatives of the atmospheric parameters
+     *                      with respect to the aerosol optical thickness (on return). Must have the same
+     *                      shape as {@code rt}.
+     * @param workspace     the per-thread lookup workspace.
+     */
+    default void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt,
+                       double[][] rtDerivatives, LookupWorkspace workspace) {
+        getRT(aot, sza, vza, raa, hsf, rt, rtDerivatives, 0, workspace);
+    }
+
+    /**
+     * Interpolates the atmospheric parameters and their partial derivatives with respect to the
+     * aerosol optical thickness into a column range of caller-supplied matrices without allocating
+     * memory, see {@link #getRT(double, double, double, double, double, double[][], int, LookupWorkspace)}.
+     *
+     * @param rt            the matrix receiving the atmospheric parameters.
+     * @param rtDerivatives the matrix receiving the partial derivatives of the atmospheric parameters.
+     * @param offset        the column receiving the parameters of the first wavelength.
+     * @param workspace     the per-thread lookup workspace.
+     */
+    void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, double[][] rtDerivatives,
+               int offset, LookupWorkspace workspace);
+
     double[] getTG(double cwv, double ozo, double amf);
 
+    /**
+     * Interpolates the gaseous transmission into a caller-supplied array without allocating memory.
+     *
+     * @param tg        the array receiving the gaseous transmission (on return).
+     * @param workspace the per-thread lookup workspace.
+     */
+    void getTG(double cwv, double ozo, double amf, double[] tg, LookupWorkspace workspace);
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * The ranges of surface height, relative azimuth, viewing and solar zenith angle covered by a
+ * product. The RT tables of an atmospheric parameter LUT may be restricted to an envelope, so only
+ * the part of the tables needed for the product is read.
+ */
+public final class LutEnvelope {
+
+    // the ranges, indexed by the dimensions of the RT tables, i.e. hsf, aot, raa, vza and sza
+    private final double[][] ranges;
+
+    /**
+     * Creates a new envelope. The aot range is not restricted.
+     *
+     * @param hsfMin the minimum surface height (km).
+     * @param hsfMax the maximum surface height (km).
+     * @param raaMin the minimum relative azimuth angle (degree).
+     * @param raaMax the maximum relative azimuth angle (degree).
+     * @param vzaMin the minimum viewing zenith angle (degree).
+     * @param vzaMax the maximum viewing zenith angle (degree).
+     * @param szaMin the minimum solar zenith angle (degree).
+     * @param szaMax the maximum solar zenith angle (degree).
+     * @throws IllegalArgumentException if a minimum is greater than the maximum, or a limit is NaN.
+     */
+    public LutEnvelope(double hsfMin, double hsfMax, double raaMin, double raaMax,
+                       double vzaMin, double vzaMax, double szaMin, double szaMax) throws IllegalArgumentException {
+        ranges = new double[][]{
+                createRange("hsf", hsfMin, hsfMax),
+                null,
+                createRange("raa", raaMin, raaMax),
+                createRange("vza", vzaMin, vzaMax),
+                createRange("sza", szaMin, szaMax)
+        };
+    }
+
+    /**
+     * Returns the range of a dimension of the RT tables.
+     *
+     * @param axis the dimension, i.e. 0 for hsf, 1 for aot, 2 for raa, 3 for vza and 4 for sza.
+     * @return the minimum and maximum, or {@code null} if the dimension is not restricted.
+     */
+    double[] getRange(int axis) {
+        return ranges[axis];
+    }
+
+    /**
+     * Returns the indexes of the first and the last node of a sequence needed for interpolating
+     * at all coordinates within a range, padded by one node on either side.
+     *
+     * @param sequence the sequence of nodes, which is strictly increasing or decreasing.
+     * @param min      the minimum of the range.
+     * @param max      the maximum of the range.
+     * @return the indexes of the first and the last node.
+     */
+    static int[] getIndexRange(double[] sequence, double min, double max) {
+        final int n = sequence.length;
+        final boolean increasing = n < 2 || sequence[0] < sequence[n - 1];
+        int lo = 0;
+        int hi = n - 1;
+        for (int i = 0; i < n; i++) {
+            final double node = sequence[i];
+            if (increasing ? node <= min : node >= max) {
+                lo = i;
+            }
+        }
+        for (int i = n; i-- > 0; ) {
+            final double node = sequence[i];
+            if (increasing ? node >= max : node <= min) {
+                hi = i;
+            }
+        }
+        lo = Math.max(lo - 1, 0);
+        hi = Math.min(hi + 1, n - 1);
+        return new int[]{lo, hi};
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof LutEnvelope && Arrays.deepEquals(ranges, ((LutEnvelope) o).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(ranges);
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format("hsf [{0}, {1}], raa [{2}, {3}], vza [{4}, {5}], sza [{6}, {7}]",
+                                    ranges[0][0], ranges[0][1], ranges[2][0], ranges[2][1],
+                                    ranges[3][0], ranges[3][1], ranges[4][0], ranges[4][1]);
+    }
+
+    private static double[] createRange(String name, double min, double max) {
+        if (!(min <= max)) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal {0} range [{1}, {2}]", name, min, max));
+        }
+        return new double[]{min, max};
+    }
+}
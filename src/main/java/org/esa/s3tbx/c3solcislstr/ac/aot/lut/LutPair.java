@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.FracIndex;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+
+import java.util.Arrays;
+
+/**
+ * The atmospheric parameter LUTs of a sensor pair, e.g. OLCI and SLSTR, evaluated jointly.
+ * <p>
+ * The wavelengths of both LUTs are stacked into a single vector, the wavelengths of the first LUT
+ * followed by those of the second LUT, so a single call for both viewing geometries yields the
+ * atmospheric parameters of all bands, and callers need not distinguish between the sensors. Each
+ * LUT writes its parameters straight into its columns of the stacked matrices. If both LUTs are
+ * {@link HyLut}s with the same hsf and aot nodes, the fractional indexes of hsf and aot are computed
+ * once, on the partitions of the first LUT, and serve both LUTs.
+ */
+public final class LutPair {
+
+    private static final int RT_ROW_COUNT = 5;
+
+    private final Lut first;
+    private final Lut second;
+    private final int firstCount;
+    private final int secondCount;
+    // the hsf and aot dimensions shared by both LUTs, or null if the LUTs do not share them
+    private final IntervalPartition[] sharedDimensions;
+
+    /**
+     * Creates a new LUT pair.
+     *
+     * @param first  the LUT of the first sensor. If {@code null}, the first sensor contributes no wavelengths.
+     * @param second the LUT of the second sensor. If {@code null}, the second sensor contributes no wavelengths.
+     */
+    public LutPair(Lut first, Lut second) {
+        this.first = first;
+        this.second = second;
+        this.firstCount = first != null ? first.getWavelengthCount() : 0;
+        this.secondCount = second != null ? second.getWavelengthCount() : 0;
+        this.sharedDimensions = getSharedDimensions(first, second);
+    }
+
+    /**
+     * Returns the number of wavelengths of the stacked vectors.
+     *
+     * @return the number of wavelengths.
+     */
+    public int getWavelengthCount() {
+        return firstCount + secondCount;
+    }
+
+    /**
+     * Returns the number of wavelengths of the first sensor, i.e. the column of the first
+     * wavelength of the second sensor in the stacked vectors.
+     *
+     * @return the number of wavelengths of the first sensor.
+     */
+    public int getFirstWavelengthCount() {
+        return firstCount;
+    }
+
+    /**
+     * Creates the buffers receiving the results of a joint lookup. Buffers are not thread safe,
+     * each thread must use its own buffers.
+     *
+     * @param search the search mode of the lookup workspace.
+     * @return the buffers.
+     */
+    public Buffers createBuffers(LookupWorkspace.Search search) {
+        return new Buffers(search, firstCount, secondCount);
+    }
+
+    /**
+     * Interpolates the atmospheric parameters of both sensors, see
+     * {@link Lut#getRT(double, double, double, double, double, double[][], LookupWorkspace)}.
+     * The stacked parameters are available from {@link Buffers#getRT()} on return.
+     *
+     * @param aot         the aerosol optical thickness.
+     * @param hsf         the surface height.
+     * @param szaFirst    the solar zenith angle of the first sensor.
+     * @param vzaFirst    the viewing zenith angle of the first sensor.
+     * @param raaFirst    the relative azimuth angle of the first sensor.
+     * @param szaSecond   the solar zenith angle of the second sensor.
+     * @param vzaSecond   the viewing zenith angle of the second sensor.
+     * @param raaSecond   the relative azimuth angle of the second sensor.
+     * @param derivatives if {@code true}, the partial derivatives with respect to the aerosol optical
+     *                    thickness are interpolated, too, see {@link Buffers#getRTDerivatives()}.
+     * @param buffers     the per-thread buffers.
+     */
+    public void getRT(double aot, double hsf,
+                      double szaFirst, double vzaFirst, double raaFirst,
+                      double szaSecond, double vzaSecond, double raaSecond,
+                      boolean derivatives, Buffers buffers) {
+        final LookupWorkspace workspace = buffers.workspace;
+        final double[][] rt = buffers.rt;
+        final double[][] rtDerivatives = buffers.rtDerivatives;
+        if (sharedDimensions != null) {
+            final FracIndex[] hsfAot = buffers.hsfAot;
+            workspace.computeFracIndex(sharedDimensions[0], hsf, hsfAot[0]);
+            workspace.computeFracIndex(sharedDimensions[1], aot, hsfAot[1]);
+            final HyLut hyLutFirst = (HyLut) first;
+            final HyLut hyLutSecond = (HyLut) second;
+            if (derivatives) {
+                hyLutFirst.getRT(hsfAot, aot, szaFirst, vzaFirst, raaFirst, hsf, rt, rtDerivatives, 0, workspace);
+                hyLutSecond.getRT(hsfAot, aot, szaSecond, vzaSecond, raaSecond, hsf, rt, rtDerivatives, firstCount,
+                                  workspace);
+            } else {
+                hyLutFirst.getRT(hsfAot, aot, szaFirst, vzaFirst, raaFirst, hsf, rt, 0, workspace);
+                hyLutSecond.getRT(hsfAot, aot, szaSecond, vzaSecond, raaSecond, hsf, rt, firstCount, workspace);
+            }
+            return;
+        }
+        if (first != null) {
+            if (derivatives) {
+                first.getRT(aot, szaFirst, vzaFirst, raaFirst, hsf, rt, rtDerivatives, 0, workspace);
+            } else {
+                first.getRT(aot, szaFirst, vzaFirst, raaFirst, hsf, rt, 0, workspace);
+            }
+        }
+        if (second != null) {
+            if (derivatives) {
+                second.getRT(aot, szaSecond, vzaSecond, raaSecond, hsf, rt, rtDerivatives, firstCount, workspace);
+            } else {
+                second.getRT(aot, szaSecond, vzaSecond, raaSecond, hsf, rt, firstCount, workspace);
+            }
+        }
+    }
+
+    /**
+     * Interpolates the gaseous transmission of both sensors, see
+     * {@link Lut#getTG(double, double, double, double[], LookupWorkspace)}. The stacked gaseous
+     * transmission is available from {@link Buffers#getTG()} on return.
+     *
+     * @param cwv       the water vapour column.
+     * @param ozo       the ozone column.
+     * @param amfFirst  the air mass factor of the first sensor.
+     * @param amfSecond the air mass factor of the second sensor.
+     * @param buffers   the per-thread buffers.
+     */
+    public void getTG(double cwv, double ozo, double amfFirst, double amfSecond, Buffers buffers) {
+        if (first != null) {
+            first.getTG(cwv, ozo, amfFirst, buffers.tgFirst, buffers.workspace);
+            System.arraycopy(buffers.tgFirst, 0, buffers.tg, 0, firstCount);
+        }
+        if (second != null) {
+            second.getTG(cwv, ozo, amfSecond, buffers.tgSecond, buffers.workspace);
+            System.arraycopy(buffers.tgSecond, 0, buffers.tg, firstCount, secondCount);
+        }
+    }
+
+    private static IntervalPartition[] getSharedDimensions(Lut first, Lut second) {
+        if (!(first instanceof HyLut) || !(second instanceof HyLut)) {
+            return null;
+        }
+        final IntervalPartition[] dimensions = new IntervalPartition[2];
+        for (int i = 0; i < dimensions.length; i++) {
+            dimensions[i] = ((HyLut) first).getRTDimension(i);
+            if (!Arrays.equals(dimensions[i].getSequence(), ((HyLut) second).getRTDimension(i).getSequence())) {
+                return null;
+            }
+        }
+        return dimensions;
+    }
+
+    /**
+     * The per-thread buffers of a LUT pair, which receive the stacked results of the joint lookups.
+     */
+    public static final class Buffers {
+
+        private final LookupWorkspace workspace;
+        private final double[][] rt;
+        private final double[][] rtDerivatives;
+        private final double[] tg;
+        private final FracIndex[] hsfAot;
+        private final double[] tgFirst;
+        private final double[] tgSecond;
+
+        private Buffers(LookupWorkspace.Search search, int firstCount, int secondCount) {
+            workspace = new LookupWorkspace(search);
+            rt = new double[RT_ROW_COUNT][firstCount + secondCount];
+            rtDerivatives = new double[RT_ROW_COUNT][firstCount + secondCount];
+            tg = new double[firstCount + secondCount];
+            hsfAot = FracIndex.createArray(2);
+            tgFirst = new double[firstCount];
+            tgSecond = new double[secondCount];
+        }
+
+        /**
+         * Returns the lookup workspace.
+         *
+         * @return the workspace.
+         */
+        public LookupWorkspace getWorkspace() {
+            return workspace;
+        }
+
+        /**
+         * Returns the stacked atmospheric parameters, i.e. path reflectance, total transmission,
+         * spherical albedo, and diffuse to global ratios for downward and upward radiation.
+         *
+         * @return the matrix of the atmospheric parameters, with five rows of the stacked wavelengths.
+         */
+        public double[][] getRT() {
+            return rt;
+        }
+
+        /**
+         * Returns the partial derivatives of the stacked atmospheric parameters with respect to the
+         * aerosol optical thickness.
+         *
+         * @return the matrix of the partial derivatives, with five rows of the stacked wavelengths.
+         */
+        public double[][] getRTDerivatives() {
+            return rtDerivatives;
+        }
+
+        /**
+         * Returns the stacked gaseous transmission.
+         *
+         * @return the gaseous transmission.
+         */
+        public double[] getTG() {
+            return tg;
+        }
+    }
+}
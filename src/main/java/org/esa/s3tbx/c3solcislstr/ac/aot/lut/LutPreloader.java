@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A JVM-wide service loading auxiliary data, i.e. LUTs and surface spectra, in the background, so
+ * the loads overlap with reading the source product and building the processing graph.
+ * <p>
+ * A load is started by {@link #preload(String, Callable)} as soon as the data needed are known, and
+ * the result is collected by {@link #take(String, Callable)} when the data are needed first, which
+ * waits for the load to complete. A load whose result is not collected within a retention time
+ * after completion, e.g. because the processing run ended early, is dropped, so its data can be
+ * reclaimed. LUTs shared through the {@link LutRegistry} are preloaded with {@link #preload(Callable)}
+ * instead, as the registry makes a later request wait for the load. This class is thread safe.
+ */
+public final class LutPreloader {
+
+    private static final LutPreloader INSTANCE = new LutPreloader();
+    private static final long DEFAULT_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ScheduledExecutorService executor = createExecutor();
+    private final ConcurrentHashMap<String, Future<?>> loads = new ConcurrentHashMap<>();
+    private final long retentionMillis;
+
+    /**
+     * Returns the JVM-wide preloader.
+     *
+     * @return the preloader.
+     */
+    public static LutPreloader getInstance() {
+        return INSTANCE;
+    }
+
+    LutPreloader() {
+        this(DEFAULT_RETENTION_MILLIS);
+    }
+
+    LutPreloader(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Starts loading data in the background, unless a load with the same key is pending. The load is
+     * dropped if its result is not collected within the retention time after completion.
+     *
+     * @param key    the key identifying the data.
+     * @param loader the loader.
+     */
+    public void preload(String key, Callable<?> loader) {
+        final FutureTask<?> load = new FutureTask<Object>(loader::call) {
+            @Override
+            protected void done() {
+                executor.schedule(() -> loads.remove(key, this), retentionMillis, TimeUnit.MILLISECONDS);
+            }
+        };
+        // the load is started after it has been registered, so it is never dropped before
+        if (loads.putIfAbsent(key, load) == null) {
+            executor.execute(load);
+        }
+    }
+
+    /**
+     * Starts loading data in the background, whose result is collected by the caller.
+     *
+     * @param loader the loader.
+     * @return the pending load.
+     */
+    public <T> Future<T> submit(Callable<T> loader) {
+        return executor.submit(loader);
+    }
+
+    /**
+     * Starts loading data in the background, whose result is not collected. Failures are logged
+     * and are reported again by the subsequent request for the data.
+     *
+     * @param loader the loader.
+     */
+    public void preload(Callable<?> loader) {
+        executor.execute(() -> {
+            try {
+                loader.call();
+            } catch (Exception e) {
+                Logger.getLogger(getClass().getName()).log(Level.FINE, "Preloading failed", e);
+            }
+        });
+    }
+
+    /**
+     * Returns the data loaded in the background, waiting for the load to complete, or loads the data
+     * on the current thread, if no load with the key is pending. The load is forgotten, so the data
+     * are loaded again if they are preloaded again.
+     *
+     * @param key    the key identifying the data.
+     * @param loader the loader used if no load with the key is pending.
+     * @return the data.
+     * @throws IOException if the data could not be loaded.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T take(String key, Callable<T> loader) throws IOException {
+        final Future<?> load = loads.remove(key);
+        try {
+            if (load == null) {
+                return loader.call();
+            }
+            return (T) load.get();
+        } catch (InterruptedException e) {
+            if (load != null) {
+                load.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + key);
+        } catch (ExecutionException e) {
+            return rethrow(e.getCause());
+        } catch (Exception e) {
+            return rethrow(e);
+        }
+    }
+
+    /**
+     * Returns the number of loads whose result has not been collected.
+     *
+     * @return the number of loads pending.
+     */
+    public int getPendingCount() {
+        return loads.size();
+    }
+
+    private static <T> T rethrow(Throwable cause) throws IOException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(cause);
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(4, r -> {
+            final Thread thread = new Thread(r, "lut-preloader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the threads are only needed while auxiliary data are loaded or dropped
+        executor.setKeepAliveTime(30L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+
+import java.io.File;
+import java.text.MessageFormat;
+
+/**
+ * The options used for reading a hyperspectral LUT file, see {@link HyLut#read(String, LutReadOptions)}.
+ * The options start from the wavelength remapping of a sensor and are immutable, i.e. each
+ * {@code with} method returns new options.
+ */
+public final class LutReadOptions {
+
+    private final int[] sensorRemapping;
+    private final Array.Storage storage;
+    private final VectorLookupTable.Precision precision;
+    private final double maxError;
+    private final File snapshot;
+    private final LutEnvelope envelope;
+    private final int[] wavelengths;
+    private final int aerosolModel;
+
+    private LutReadOptions(int[] sensorRemapping, Array.Storage storage, VectorLookupTable.Precision precision,
+                           double maxError, File snapshot, LutEnvelope envelope, int[] wavelengths,
+                           int aerosolModel) {
+        this.sensorRemapping = sensorRemapping;
+        this.storage = storage;
+        this.precision = precision;
+        this.maxError = maxError;
+        this.snapshot = snapshot;
+        this.envelope = envelope;
+        this.wavelengths = wavelengths;
+        this.aerosolModel = aerosolModel;
+    }
+
+    /**
+     * Returns the default options for reading an OLCI LUT file, i.e. all wavelengths of the default
+     * aerosol model are read into double precision tables on the heap, from the LUT file.
+     *
+     * @return the options.
+     */
+    public static LutReadOptions forOlci() {
+        return new LutReadOptions(HyLutOlci.REMAPPING);
+    }
+
+    /**
+     * Returns the default options for reading an SLSTR LUT file, see {@link #forOlci()}.
+     *
+     * @return the options.
+     */
+    public static LutReadOptions forSlstr() {
+        return new LutReadOptions(HyLutSlstr.REMAPPING);
+    }
+
+    LutReadOptions(int[] sensorRemapping) {
+        this(sensorRemapping, Array.Storage.HEAP, VectorLookupTable.Precision.DOUBLE, 0.0, null, null, null,
+             HyLut.AEROSOL_MODEL);
+    }
+
+    /**
+     * Returns options with another storage of the lookup values.
+     *
+     * @param storage the storage used for the lookup values.
+     * @return the options.
+     */
+    public LutReadOptions withStorage(Array.Storage storage) {
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    /**
+     * Returns options with another arithmetic precision.
+     *
+     * @param precision the arithmetic precision used for interpolation.
+     * @return the options.
+     */
+    public LutReadOptions withPrecision(VectorLookupTable.Precision precision) {
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    /**
+     * Returns options with another quantization error.
+     *
+     * @param maxError the maximum absolute error permitted for quantizing the lookup values to 16 bits.
+     *                 If zero, the values are not quantized.
+     * @return the options.
+     */
+    public LutReadOptions withQuantizationError(double maxError) {
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    /**
+     * Returns options with another snapshot file. If the snapshot is current, the tables are mapped
+     * from the snapshot instead of being read from the LUT file, see {@link HyLut#writeSnapshot}.
+     *
+     * @param snapshot the snapshot file. May be {@code null}.
+     * @return the options.
+     */
+    public LutReadOptions withSnapshot(File snapshot) {
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    /**
+     * Returns options with another envelope. If an envelope is given, the RT tables are restricted to
+     * the envelope, padded by one node, and are read from the LUT file.
+     *
+     * @param envelope the envelope the RT tables are restricted to. May be {@code null}.
+     * @return the options.
+     */
+    public LutReadOptions withEnvelope(LutEnvelope envelope) {
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    /**
+     * Returns options with another wavelength subset. If a subset is given, only the values of the
+     * subset are read and stored, and the LUT returns the values of the subset only.
+     *
+     * @param wavelengths the indexes of the wavelengths used in ascending order. If {@code null}, all
+     *                    wavelengths are used.
+     * @return the options.
+     * @throws IllegalArgumentException if the subset is empty or not ascending, or an index is out of range.
+     */
+    public LutReadOptions withWavelengths(int[] wavelengths) throws IllegalArgumentException {
+        HyLut.selectWavelengths(sensorRemapping, wavelengths);
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope,
+                                  wavelengths != null ? wavelengths.clone() : null, aerosolModel);
+    }
+
+    /**
+     * Returns options with another aerosol model. The snapshot holds the default aerosol model only,
+     * so the tables of other models are read from the LUT file.
+     *
+     * @param aerosolModel the index of the aerosol model.
+     * @return the options.
+     * @throws IllegalArgumentException if the index is negative.
+     */
+    public LutReadOptions withAerosolModel(int aerosolModel) throws IllegalArgumentException {
+        if (aerosolModel < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal aerosol model {0}", aerosolModel));
+        }
+        return new LutReadOptions(sensorRemapping, storage, precision, maxError, snapshot, envelope, wavelengths,
+                                  aerosolModel);
+    }
+
+    public Array.Storage getStorage() {
+        return storage;
+    }
+
+    public VectorLookupTable.Precision getPrecision() {
+        return precision;
+    }
+
+    public double getQuantizationError() {
+        return maxError;
+    }
+
+    public File getSnapshot() {
+        return snapshot;
+    }
+
+    public LutEnvelope getEnvelope() {
+        return envelope;
+    }
+
+    public int[] getWavelengths() {
+        return wavelengths != null ? wavelengths.clone() : null;
+    }
+
+    public int getAerosolModel() {
+        return aerosolModel;
+    }
+
+    /**
+     * Returns the remapping of the LUT wavelengths read, i.e. the remapping of the sensor restricted
+     * to the wavelength subset.
+     *
+     * @return the remapping.
+     */
+    int[] getRemapping() {
+        return HyLut.selectWavelengths(sensorRemapping, wavelengths);
+    }
+}
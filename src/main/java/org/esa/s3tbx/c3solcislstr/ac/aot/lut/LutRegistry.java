@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A JVM-wide registry of the atmospheric parameter LUTs, which are shared by all operator instances.
+ * <p>
+ * LUTs are keyed by the canonical path and the modification time of the LUT file, the aerosol model,
+ * and the options used for reading, so a modified LUT file is read anew, and the LUTs read from the
+ * previous version of the file are dropped. Each LUT is read once, even if it is requested by several
+ * threads at the same time. The registry references the LUTs softly, so a LUT which is no longer used
+ * by any operator may be reclaimed under memory pressure, and is read again on the next request. The
+ * surrogates of the LUTs are held in the same way, so they are fitted once. The registry is thread safe.
+ * <p>
+ * Note that soft references are cleared under heap pressure only. The values of LUTs read with
+ * {@link Array.Storage#DIRECT} storage reside off the heap, so they are not reclaimed when direct
+ * memory runs short, and must be released by {@link #clear()} if necessary.
+ */
+public final class LutRegistry {
+
+    private static final LutRegistry INSTANCE = new LutRegistry();
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder reclaimedCount = new LongAdder();
+
+    /**
+     * Returns the JVM-wide registry.
+     *
+     * @return the registry.
+     */
+    public static LutRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    LutRegistry() {
+    }
+
+    /**
+     * Returns the LUT read from a LUT file, see {@link HyLut#read(String, LutReadOptions)}. The snapshot
+     * of the options is not part of the key, as the LUT read from a snapshot is the LUT read from the LUT
+     * file. The LUT is shared and must not be modified, see {@link HyLut#withContractionCacheCapacity(int)}.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options used for reading.
+     * @return the LUT.
+     * @throws IOException if the LUT could not be read.
+     */
+    public HyLut get(String location, LutReadOptions options) throws IOException {
+        return get(new Key(location, options), () -> HyLut.read(location, options));
+    }
+
+    /**
+     * Returns the surrogate of the LUT read from a LUT file, see {@link SurrogateLut#fit(HyLut, int, double)}.
+     * The surrogate is fitted once for all operators, and is keyed like the LUT, and by the degree and
+     * the error bound of the surrogate.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options used for reading.
+     * @param degree   the maximum total degree of the polynomials.
+     * @param maxError the maximum absolute error of the surrogate, see {@link SurrogateLut#fit(HyLut, int, double)}.
+     * @return the surrogate.
+     * @throws IOException              if the LUT could not be read.
+     * @throws IllegalArgumentException if the error bound cannot be met.
+     */
+    public SurrogateLut getSurrogate(String location, LutReadOptions options, int degree, double maxError)
+            throws IOException {
+        final Key key = new Key(location, options);
+        return get(new Key(key, degree, maxError), () -> SurrogateLut.fit(get(key, () -> HyLut.read(location, options)),
+                                                                          degree, maxError));
+    }
+
+    /**
+     * Returns the LUTs of all aerosol models in a LUT file. The LUT of an aerosol model is requested
+     * from the registry when the model is requested first, see {@link HyLutModels#getModel(int)}, so
+     * a model is read once, even if it is requested through several instances or directly. This method
+     * is API for retrievals which switch between aerosol models within a run. The operators process
+     * a single aerosol model, see {@link #get(String, LutReadOptions)}.
+     *
+     * @param location the location of the LUT file.
+     * @param options  the options used for reading. The aerosol model of the options is ignored.
+     * @param maxBytes the memory limit of the models retained by the instance in bytes.
+     * @return the LUTs of all aerosol models.
+     * @throws IOException              if the LUT file could not be read.
+     * @throws IllegalArgumentException if the memory limit is not positive.
+     */
+    public HyLutModels getModels(String location, LutReadOptions options, long maxBytes) throws IOException {
+        return new HyLutModels(HyLut.readAerosolModelCount(location), maxBytes,
+                               aerosolModel -> get(location, options.withAerosolModel(aerosolModel)));
+    }
+
+    /**
+     * Returns the number of LUTs read or surrogates fitted, including LUTs read again after having been reclaimed.
+     *
+     * @return the number of LUTs read.
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * Returns the number of requests served by a LUT read before.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of LUTs which have been reclaimed under memory pressure.
+     *
+     * @return the number of LUTs reclaimed.
+     */
+    public long getReclaimedCount() {
+        return reclaimedCount.sum();
+    }
+
+    /**
+     * Returns the number of LUTs held.
+     *
+     * @return the number of LUTs held.
+     */
+    public int size() {
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.getLut() != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns an estimate of the memory occupied by the LUTs held in bytes.
+     *
+     * @return the memory occupied in bytes.
+     */
+    public long getResidentBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            final Lut lut = entry.getLut();
+            if (lut instanceof HyLut) {
+                bytes += ((HyLut) lut).getMemoryFootprint();
+            } else if (lut instanceof SurrogateLut) {
+                bytes += ((SurrogateLut) lut).getMemoryFootprint();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Removes all LUTs from the registry. LUTs in use remain valid.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends Lut> T get(Key key, Loader<T> loader) throws IOException {
+        // entries of a previous version of the LUT file are dropped, LUTs in use remain valid
+        entries.keySet().removeIf(k -> k.path.equals(key.path) && k.lastModified != key.lastModified);
+        entries.forEach((k, entry) -> {
+            if (!k.equals(key)) {
+                entry.removeIfReclaimed(k);
+            }
+        });
+        while (true) {
+            final Lut lut = entries.computeIfAbsent(key, k -> new Entry()).get(loader);
+            // the entry has been removed while waiting, so the LUT is requested from its successor
+            if (lut != null) {
+                return (T) lut;
+            }
+        }
+    }
+
+    interface Loader<T extends Lut> {
+
+        T load() throws IOException;
+    }
+
+    /**
+     * A registry entry. Loading is guarded by the lock of the entry, so concurrent requests for the
+     * same LUT wait for a single load, while requests for other LUTs proceed. An entry whose LUT was
+     * reclaimed is removed from the registry only under its lock, and never while it is loading.
+     */
+    private final class Entry {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile SoftReference<Lut> reference;
+        private boolean removed;
+
+        /**
+         * Returns the LUT of the entry, which is loaded if it has not been loaded or has been reclaimed.
+         *
+         * @param loader the loader of the LUT.
+         * @return the LUT, or {@code null} if the entry has been removed from the registry.
+         * @throws IOException if the LUT could not be loaded.
+         */
+        Lut get(Loader<?> loader) throws IOException {
+            lock.lock();
+            try {
+                if (removed) {
+                    return null;
+                }
+                Lut lut = getLut();
+                if (lut != null) {
+                    hitCount.increment();
+                    return lut;
+                }
+                if (reference != null) {
+                    reclaimedCount.increment();
+                    reference = null;
+                }
+                lut = loader.load();
+                loadCount.increment();
+                reference = new SoftReference<>(lut);
+                return lut;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Lut getLut() {
+            final SoftReference<Lut> r = reference;
+            return r != null ? r.get() : null;
+        }
+
+        /**
+         * Removes the entry from the registry if its LUT has been reclaimed. An entry which is loading
+         * is skipped.
+         *
+         * @param key the key of the entry.
+         */
+        void removeIfReclaimed(Key key) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                final SoftReference<Lut> r = reference;
+                if (r != null && r.get() == null) {
+                    removed = true;
+                    reclaimedCount.increment();
+                    entries.remove(key, this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static final class Key {
+
+        private final String path;
+        private final long lastModified;
+        private final int aerosolModel;
+        private final int[] remapping;
+        private final Array.Storage storage;
+        private final VectorLookupTable.Precision precision;
+        private final double maxError;
+        private final LutEnvelope envelope;
+        // the degree and error bound of a surrogate, or zero for the LUT itself
+        private final int surrogateDegree;
+        private final double surrogateMaxError;
+
+        Key(String location, LutReadOptions options) throws IOException {
+            final File file = new File(location);
+            this.path = file.getCanonicalPath();
+            this.lastModified = file.lastModified();
+            this.aerosolModel = options.getAerosolModel();
+            this.remapping = options.getRemapping();
+            this.storage = options.getStorage();
+            this.precision = options.getPrecision();
+            this.maxError = options.getQuantizationError();
+            this.envelope = options.getEnvelope();
+            this.surrogateDegree = 0;
+            this.surrogateMaxError = 0.0;
+        }
+
+        Key(Key key, int surrogateDegree, double surrogateMaxError) {
+            this.path = key.path;
+            this.lastModified = key.lastModified;
+            this.aerosolModel = key.aerosolModel;
+            this.remapping = key.remapping;
+            this.storage = key.storage;
+            this.precision = key.precision;
+            this.maxError = key.maxError;
+            this.envelope = key.envelope;
+            this.surrogateDegree = surrogateDegree;
+            this.surrogateMaxError = surrogateMaxError;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return path.equals(that.path) && lastModified == that.lastModified &&
+                   aerosolModel == that.aerosolModel && Arrays.equals(remapping, that.remapping) &&
+                   storage == that.storage && precision == that.precision &&
+                   Double.compare(maxError, that.maxError) == 0 && Objects.equals(envelope, that.envelope) &&
+                   surrogateDegree == that.surrogateDegree &&
+                   Double.compare(surrogateMaxError, that.surrogateMaxError) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(path, lastModified, aerosolModel, storage, precision, maxError, envelope,
+                                     surrogateDegree, surrogateMaxError) + Arrays.hashCode(remapping);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The preprocessed tables of a hyperspectral LUT file, i.e. the tables of the aerosol model used,
+ * with their dimensions reversed and their wavelengths remapped and interleaved, and the minima
+ * and maxima of the LUT dimensions.
+ * <p>
+ * The tables can be written to a binary snapshot file, which is stamped with the length, the
+ * modification time and a checksum of the LUT file. Reading a snapshot maps the file into memory,
+ * so the tables are ready without reading or scanning any values.
+ */
+final class LutSnapshot {
+
+    /**
+     * The version of the snapshot format. Snapshots of other versions are stale.
+     */
+    static final int VERSION = 2;
+
+    static final int TABLE_COUNT = 5;
+
+    private static final int MAGIC = 0x43334C54;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    final double[] arrayMinMax;
+    final int[] remapping;
+    final int[] vectorLengths;
+    final IntervalPartition[][] dimensions;
+    final Array[] values;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param arrayMinMax   the minima and maxima of vza, sza, hsf, aot, ozone, water vapour and air mass.
+     * @param remapping     the remapping of the wavelengths.
+     * @param vectorLengths the vector lengths of the tables.
+     * @param dimensions    the dimensions of the tables.
+     * @param values        the values of the tables.
+     */
+    LutSnapshot(double[] arrayMinMax, int[] remapping, int[] vectorLengths, IntervalPartition[][] dimensions,
+                Array[] values) {
+        this.arrayMinMax = arrayMinMax;
+        this.remapping = remapping;
+        this.vectorLengths = vectorLengths;
+        this.dimensions = dimensions;
+        this.values = values;
+    }
+
+    /**
+     * Tests if a snapshot file exists and is a snapshot of a LUT file with a given wavelength
+     * remapping, written in the current format. If the length of the LUT file matches its stamp
+     * but the modification time does not, e.g. when the LUT file has been copied, the checksum
+     * of the LUT file is compared. If the checksum matches, the modification time of the stamp is
+     * updated, so the checksum is not computed again.
+     *
+     * @param snapshot  the snapshot file.
+     * @param source    the LUT file.
+     * @param remapping the remapping of the wavelengths.
+     * @return {@code true} if the snapshot is current.
+     * @throws IOException if the LUT file could not be read.
+     */
+    static boolean isCurrent(File snapshot, File source, int[] remapping) throws IOException {
+        if (!snapshot.isFile()) {
+            return false;
+        }
+        final Stamp stamp;
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 4096)).order(BYTE_ORDER);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // fill the buffer
+            }
+            buffer.flip();
+            stamp = Stamp.read(buffer);
+        } catch (RuntimeException e) {
+            // the snapshot is truncated or corrupt
+            return false;
+        }
+        if (stamp == null || stamp.sourceLength != source.length() || !Arrays.equals(stamp.remapping, remapping)) {
+            return false;
+        }
+        final long lastModified = source.lastModified();
+        if (stamp.sourceLastModified == lastModified) {
+            return true;
+        }
+        if (stamp.sourceChecksum != computeChecksum(source)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(BYTE_ORDER);
+            buffer.putLong(lastModified).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, Stamp.LAST_MODIFIED_POSITION + buffer.position());
+            }
+        } catch (IOException e) {
+            // the snapshot is read-only, so the checksum is computed again next time
+        }
+        return true;
+    }
+
+    /**
+     * Reads a snapshot file by mapping it into memory.
+     *
+     * @param snapshot the snapshot file.
+     * @return the preprocessed tables, whose values are backed by the mapped file.
+     * @throws IOException if the snapshot could not be read or is corrupt.
+     */
+    static LutSnapshot read(File snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(BYTE_ORDER);
+            final Stamp stamp = Stamp.read(buffer);
+            if (stamp == null) {
+                throw new IOException(MessageFormat.format("''{0}'' is not a LUT snapshot of version {1}.", snapshot, VERSION));
+            }
+            final double[] arrayMinMax = readDoubles(buffer);
+            final int[] vectorLengths = new int[TABLE_COUNT];
+            final IntervalPartition[][] dimensions = new IntervalPartition[TABLE_COUNT][];
+            final Array[] values = new Array[TABLE_COUNT];
+            for (int k = 0; k < TABLE_COUNT; k++) {
+                vectorLengths[k] = buffer.getInt();
+                dimensions[k] = new IntervalPartition[buffer.getInt()];
+                for (int i = 0; i < dimensions[k].length; i++) {
+                    dimensions[k][i] = new IntervalPartition(readDoubles(buffer));
+                }
+                final boolean isDouble = buffer.getInt() != 0;
+                final int length = buffer.getInt();
+                final int size = length * (isDouble ? Double.BYTES : Float.BYTES);
+                align(buffer);
+                final ByteBuffer slice = buffer.duplicate();
+                slice.limit(buffer.position() + size);
+                values[k] = Array.wrap(slice.slice().order(BYTE_ORDER), isDouble);
+                buffer.position(buffer.position() + size);
+            }
+            // the mapping remains valid after the channel is closed
+            return new LutSnapshot(arrayMinMax, stamp.remapping, vectorLengths, dimensions, values);
+        } catch (RuntimeException e) {
+            throw new IOException(MessageFormat.format("LUT snapshot ''{0}'' is corrupt.", snapshot), e);
+        }
+    }
+
+    /**
+     * Writes the tables to a snapshot file. The file is written under a temporary name and then
+     * renamed, so concurrent readers never see a partial snapshot.
+     *
+     * @param snapshot the snapshot file.
+     * @param source   the LUT file the tables were read from.
+     * @throws IOException if the snapshot could not be written, or a table contains NaN values.
+     */
+    void write(File snapshot, File source) throws IOException {
+        // mapped values are trusted not to be NaN, see Array#wrap, so they are checked before writing
+        for (int k = 0; k < TABLE_COUNT; k++) {
+            ensureNotNaN(k, values[k]);
+        }
+        final Stamp stamp = new Stamp(source.length(), source.lastModified(), computeChecksum(source), remapping);
+        final Path target = snapshot.toPath().toAbsolutePath();
+        final Path temp = Files.createTempFile(target.getParent(), snapshot.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final Output output = new Output(channel);
+                stamp.write(output);
+                output.putDoubles(arrayMinMax);
+                for (int k = 0; k < TABLE_COUNT; k++) {
+                    output.putInt(vectorLengths[k]);
+                    output.putInt(dimensions[k].length);
+                    for (IntervalPartition dimension : dimensions[k]) {
+                        output.putDoubles(dimension.getSequence());
+                    }
+                    final Array array = values[k] instanceof Array.View ? values[k].compacted() : values[k];
+                    final boolean isDouble = array instanceof Array.Double || array instanceof Array.DirectDouble;
+                    output.putInt(isDouble ? 1 : 0);
+                    output.putInt(array.getLength());
+                    output.align();
+                    output.putValues(array, isDouble);
+                }
+                output.flush();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void ensureNotNaN(int k, Array values) throws IOException {
+        final double[] chunk = new double[BUFFER_SIZE / Double.BYTES];
+        final int length = values.getLength();
+        for (int start = 0; start < length; start += chunk.length) {
+            final int count = Math.min(chunk.length, length - start);
+            values.getValues(start, chunk, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (Double.isNaN(chunk[i])) {
+                    throw new IOException(MessageFormat.format("Table {0} contains NaN at index {1}.", k, start + i));
+                }
+            }
+        }
+    }
+
+    private static long computeChecksum(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer) {
+        final double[] values = new double[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Advances the position of a mapped buffer to a multiple of eight bytes, where the values
+     * of a table start.
+     */
+    private static void align(ByteBuffer buffer) {
+        buffer.position((buffer.position() + Double.BYTES - 1) / Double.BYTES * Double.BYTES);
+    }
+
+    /**
+     * A buffered output to a file channel, which keeps track of the file position.
+     */
+    private static final class Output {
+
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(BYTE_ORDER);
+        long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        void putDouble(double value) throws IOException {
+            ensureRemaining(Double.BYTES);
+            buffer.putDouble(value);
+            position += Double.BYTES;
+        }
+
+        void putFloat(float value) throws IOException {
+            ensureRemaining(Float.BYTES);
+            buffer.putFloat(value);
+            position += Float.BYTES;
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            putInt(values.length);
+            for (double value : values) {
+                putDouble(value);
+            }
+        }
+
+        void putValues(Array values, boolean isDouble) throws IOException {
+            final double[] chunk = new double[BUFFER_SIZE / Double.BYTES];
+            final int length = values.getLength();
+            for (int start = 0; start < length; start += chunk.length) {
+                final int count = Math.min(chunk.length, length - start);
+                values.getValues(start, chunk, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (isDouble) {
+                        putDouble(chunk[i]);
+                    } else {
+                        putFloat((float) chunk[i]);
+                    }
+                }
+            }
+        }
+
+        void align() throws IOException {
+            while (position % Double.BYTES != 0) {
+                ensureRemaining(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int count) throws IOException {
+            if (buffer.remaining() < count) {
+                flush();
+            }
+        }
+    }
+
+    private static final class Stamp {
+
+        // the position of the modification time, after the magic number, the version and the length
+        static final long LAST_MODIFIED_POSITION = 2 * Integer.BYTES + Long.BYTES;
+
+        final long sourceLength;
+        final long sourceLastModified;
+        final long sourceChecksum;
+        final int[] remapping;
+
+        Stamp(long sourceLength, long sourceLastModified, long sourceChecksum, int[] remapping) {
+            this.sourceLength = sourceLength;
+            this.sourceLastModified = sourceLastModified;
+            this.sourceChecksum = sourceChecksum;
+            this.remapping = remapping;
+        }
+
+        /**
+         * Reads a stamp from a buffer.
+         *
+         * @return the stamp, or {@code null} if the buffer does not start with the stamp of a
+         * snapshot of the current version.
+         */
+        static Stamp read(ByteBuffer buffer) {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final long sourceLength = buffer.getLong();
+            final long sourceLastModified = buffer.getLong();
+            final long sourceChecksum = buffer.getLong();
+            final int[] remapping = new int[buffer.getInt()];
+            for (int i = 0; i < remapping.length; i++) {
+                remapping[i] = buffer.getInt();
+            }
+            return new Stamp(sourceLength, sourceLastModified, sourceChecksum, remapping);
+        }
+
+        void write(Output output) throws IOException {
+            output.putInt(MAGIC);
+            output.putInt(VERSION);
+            output.putLong(sourceLength);
+            output.putLong(sourceLastModified);
+            output.putLong(sourceChecksum);
+            output.putInt(remapping.length);
+            for (int index : remapping) {
+                output.putInt(index);
+            }
+        }
+    }
+}
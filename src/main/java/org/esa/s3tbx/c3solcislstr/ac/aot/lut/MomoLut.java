@@ -6,14 +6,16 @@ package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
 
 import org.esa.s3tbx.c3solcislstr.ac.aot.InputPixelData;
 import org.esa.s3tbx.c3solcislstr.ac.aot.util.PixelGeometry;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.FusedLookupTable;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
 import org.esa.snap.core.util.Guardian;
-import org.esa.snap.core.util.math.ColumnMajorMatrixFactory;
-import org.esa.snap.core.util.math.MatrixLookupTable;
-import org.esa.snap.core.util.math.VectorLookupTable;
 
 import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -26,14 +28,26 @@ import java.util.Map;
  * 4 - ratio diff / total downward radiation
  * 5 - ratio diff / total upward radiation
  * <p/>
+ * Only the parameters 1 to 4 are used by the retrieval, so parameter 5 is skipped when
+ * reading. The parameters and the gaseous transmission are fused into a single lookup
+ * table, so a lookup interpolates all values needed for a pixel in one pass.
+ * <p/>
  * Surface pressure values outside the LUT range are allowed
  * the routines rely on the feature of LookupTable class that values
  * outside the range are treated as equal to the highest or lowest values.
+ * <p/>
+ * Instances are immutable once constructed and all methods are reentrant. Lookups use the
+ * {@link Buffers} supplied by the caller, and results are written into the given
+ * {@link InputPixelData}, which is confined to the thread retrieving its super-pixel. Hence,
+ * a single instance is shared by all tile threads without locking.
  *
  * @author akheckel
  */
 public class MomoLut {
 
+    private static final int N_PARAMETER = 5;
+    private static final int N_PARAMETER_USED = 4;
+
     private final int nWvl;
     private final float[] vza;
     private final float[] sza;
@@ -41,7 +55,11 @@ public class MomoLut {
     private final float[] hsf;
     private final float[] aot;
 
-    private final MatrixLookupTable sdrLut;
+    // dimensions hsf, vza, sza, azi, aot, amf, cwv, ozo
+    private final FusedLookupTable sdrLut;
+    // the path reflectance of the first wavelength, dimensions hsf, vza, sza, azi, aot
+    private final VectorLookupTable pathLut;
+    // dimensions amf, cwv, ozo
     private final VectorLookupTable gasTransLut;
     private final Map<DimSelector, LutLimits> lutLimits;
 
@@ -55,8 +73,8 @@ public class MomoLut {
      * @param nWvl   - number of spectral channels
      */
     public MomoLut(ImageInputStream aotIis, ImageInputStream gasIis, int nWvl) throws IOException {
-        final int nParameter = 5;
         this.nWvl = nWvl;
+        final float[] values;
         try {
             // read LUT dimensions and values
             this.vza = Luts.readDimension(aotIis);
@@ -72,47 +90,76 @@ public class MomoLut {
             }
             this.aot = Luts.readDimension(aotIis);
 
-            float[] values = readValues(aotIis, aot.length, hsf.length, azi.length, sza.length, vza.length);
-
-            float[][] dimensions = new float[][]{hsf, vza, sza, azi, aot};
-            sdrLut = new MatrixLookupTable(nWvl, nParameter, new ColumnMajorMatrixFactory(), values, dimensions);
+            values = readValues(aotIis, aot.length, hsf.length, azi.length, sza.length, vza.length);
             lutLimits = getLutLimits();
         } finally {
             aotIis.close();
         }
 
         gasTransLut = readGasTransTable(gasIis);
+
+        final IntervalPartition[] sdrDimensions = IntervalPartition.createArray(hsf, vza, sza, azi, aot);
+        final VectorLookupTable parameterLut = new VectorLookupTable(N_PARAMETER_USED * nWvl, values, sdrDimensions);
+        final IntervalPartition[] dimensions = new IntervalPartition[]{
+                sdrDimensions[0], sdrDimensions[1], sdrDimensions[2], sdrDimensions[3], sdrDimensions[4],
+                gasTransLut.getDimension(0), gasTransLut.getDimension(1), gasTransLut.getDimension(2)
+        };
+        sdrLut = new FusedLookupTable(dimensions, new VectorLookupTable[]{parameterLut, gasTransLut},
+                                      new int[][]{{0, 1, 2, 3, 4}, {5, 6, 7}});
+        pathLut = new VectorLookupTable(1, getPathValues(values), sdrDimensions);
     }
 
     /**
-     * todo add Javadoc
+     * Creates the buffers used by the lookups of this LUT. Buffers are not thread safe,
+     * each thread must use its own buffers.
+     *
+     * @return the buffers.
+     */
+    public Buffers createBuffers() {
+        return new Buffers(nWvl);
+    }
+
+    /**
+     * Computes the surface reflectance and the diffuse fraction of the downward radiation of a
+     * pixel for the given aerosol optical thickness. The results are written into the
+     * surface reflectance and diffuse fraction arrays of the pixel.
      *
-     * @param inPix -
-     * @param tau -
+     * @param inPix - the pixel data, not shared with other threads
+     * @param tau - the aerosol optical thickness
+     * @param buffers - the buffers of the calling thread
      */
-    public synchronized void getSdrAndDiffuseFrac(InputPixelData inPix, double tau) {
+    public void getSdrAndDiffuseFrac(InputPixelData inPix, double tau, Buffers buffers) {
         Guardian.assertEquals("InputPixelData.nSpecWvl", inPix.nSpecWvl, nWvl);
         Guardian.assertNotNull("InputPixelData.diffuseFrac[][]", inPix.diffuseFrac);
         Guardian.assertNotNull("InputPixelData.surfReflec[][]", inPix.surfReflec);
-        PixelGeometry geom;
-            geom =  inPix.geomOlci;
-            final double[] toaR =  inPix.toaReflec;
+        final PixelGeometry geom = inPix.geomOlci;
+        final double[] toaR = inPix.toaReflec;
         final double cosSza = Math.cos(Math.toRadians(geom.sza));
         final float geomAMF = (float) ((1 / cosSza
-                    + 1 / Math.cos(Math.toRadians(geom.vza))));
-            final double[] gasT = getGasTransmission(geomAMF, (float) inPix.wvCol, (float) (inPix.o3du / 1000));
-            double[][] lutValues = sdrLut.getValues(inPix.surfPressure, geom.vza, geom.sza, geom.razi, tau);
-
-            for (int iWvl = 0; iWvl < inPix.nSpecWvl; iWvl++) {
-                double rhoPath = lutValues[iWvl][0] * Math.PI / cosSza;
-                double tupTdown = lutValues[iWvl][1] / cosSza;
-                double spherAlb = lutValues[iWvl][2];
-                //double tgO3 = Math.exp(inPix.o3du * o3corr[i] * geomAMF/2); // my o3 correction scheme uses AMF=SC/VC not AMF=SC
-                double toaCorr = toaR[iWvl] / gasT[iWvl];
-                double a = (toaCorr - rhoPath) / tupTdown;
-                inPix.surfReflec[iWvl] = a / (1 + spherAlb * a);
-                inPix.diffuseFrac[iWvl] = 1.0 - lutValues[iWvl][3];
-            }
+                + 1 / Math.cos(Math.toRadians(geom.vza))));
+        final double[] coordinates = buffers.coordinates;
+        coordinates[0] = inPix.surfPressure;
+        coordinates[1] = geom.vza;
+        coordinates[2] = geom.sza;
+        coordinates[3] = geom.razi;
+        coordinates[4] = tau;
+        coordinates[5] = geomAMF;
+        coordinates[6] = (float) inPix.wvCol;
+        coordinates[7] = (float) (inPix.o3du / 1000);
+        final double[] lutValues = buffers.values;
+        sdrLut.getValues(coordinates, lutValues, buffers.workspace);
+
+        final int gasOffset = N_PARAMETER_USED * nWvl;
+        for (int iWvl = 0; iWvl < inPix.nSpecWvl; iWvl++) {
+            double rhoPath = lutValues[iWvl] * Math.PI / cosSza;
+            double tupTdown = lutValues[nWvl + iWvl] / cosSza;
+            double spherAlb = lutValues[2 * nWvl + iWvl];
+            //double tgO3 = Math.exp(inPix.o3du * o3corr[i] * geomAMF/2); // my o3 correction scheme uses AMF=SC/VC not AMF=SC
+            double toaCorr = toaR[iWvl] / lutValues[gasOffset + iWvl];
+            double a = (toaCorr - rhoPath) / tupTdown;
+            inPix.surfReflec[iWvl] = a / (1 + spherAlb * a);
+            inPix.diffuseFrac[iWvl] = 1.0 - lutValues[3 * nWvl + iWvl];
+        }
     }
 
     /**
@@ -134,27 +181,36 @@ public class MomoLut {
     }
 
     /**
-     * todo add Javadoc
+     * Returns the aerosol optical thickness whose path reflectance matches the TOA reflectance
+     * of the first wavelength of a pixel, which is an upper bound of the retrieval.
      *
-     * @param ipd -
+     * @param ipd - the pixel data
+     * @param buffers - the buffers of the calling thread
      *
-     * @return -
+     * @return - the maximum aerosol optical thickness
      */
-    public synchronized double getMaxAOT(InputPixelData ipd) {
+    public double getMaxAOT(InputPixelData ipd, Buffers buffers) {
         final double cosSza = Math.cos(Math.toRadians(ipd.geomOlci.sza));
         final float geomAMF = (float) ((1 / cosSza
                 + 1 / Math.cos(Math.toRadians(ipd.geomOlci.vza))));
-        final double[] gasT = getGasTransmission(geomAMF, (float) ipd.wvCol, (float) (ipd.o3du / 1000));
-        final double toa = ipd.toaReflec[0] / gasT[0];
+        final double[] gasCoordinates = buffers.gasCoordinates;
+        gasCoordinates[0] = geomAMF;
+        gasCoordinates[1] = (float) ipd.wvCol;
+        gasCoordinates[2] = (float) (ipd.o3du / 1000);
+        gasTransLut.getValues(gasCoordinates, buffers.gasValues, buffers.workspace);
+        final double toa = ipd.toaReflec[0] / buffers.gasValues[0];
+        final double[] coordinates = buffers.pathCoordinates;
+        coordinates[0] = ipd.surfPressure;
+        coordinates[1] = ipd.geomOlci.vza;
+        coordinates[2] = ipd.geomOlci.sza;
+        coordinates[3] = ipd.geomOlci.razi;
         int iAot = 0;
-        double[][] lutValues = sdrLut.getValues(ipd.surfPressure, ipd.geomOlci.vza, ipd.geomOlci.sza, ipd.geomOlci.razi, aot[iAot]);
-        double rhoPath1 = lutValues[0][0] * Math.PI / cosSza;
+        double rhoPath1 = getPathReflectance(iAot, cosSza, buffers);
         double rhoPath0 = rhoPath1;
         while (iAot < aot.length - 1 && rhoPath1 < toa) {
             rhoPath0 = rhoPath1;
             iAot++;
-            lutValues = sdrLut.getValues(ipd.surfPressure, ipd.geomOlci.vza, ipd.geomOlci.sza, ipd.geomOlci.razi, aot[iAot]);
-            rhoPath1 = lutValues[0][0] * Math.PI / cosSza;
+            rhoPath1 = getPathReflectance(iAot, cosSza, buffers);
         }
         if (iAot == 0) return 0.005;
         if (rhoPath1 < toa) return 2.0;
@@ -163,14 +219,20 @@ public class MomoLut {
 
     // private methods
 
+    private double getPathReflectance(int iAot, double cosSza, Buffers buffers) {
+        buffers.pathCoordinates[4] = aot[iAot];
+        pathLut.getValues(buffers.pathCoordinates, buffers.pathValue, buffers.workspace);
+        return buffers.pathValue[0] * Math.PI / cosSza;
+    }
+
     private Map<DimSelector, LutLimits> getLutLimits() {
-        Map<DimSelector, LutLimits> limits = new HashMap<>(5);
+        Map<DimSelector, LutLimits> limits = new EnumMap<>(DimSelector.class);
         limits.put(DimSelector.VZA, new LutLimits(vza[0], vza[vza.length - 1]));
         limits.put(DimSelector.SZA, new LutLimits(sza[0], sza[sza.length - 1]));
         limits.put(DimSelector.AZI, new LutLimits(azi[0], azi[azi.length - 1]));
         limits.put(DimSelector.HSF, new LutLimits(hsf[0], hsf[hsf.length - 1]));
         limits.put(DimSelector.AOT, new LutLimits(aot[0], aot[aot.length - 1]));
-        return limits;
+        return Collections.unmodifiableMap(limits);
     }
 
     private int calcPosition(int[] indices, int[] sizes) {
@@ -181,12 +243,9 @@ public class MomoLut {
         return pos;
     }
 
-    private double[] getGasTransmission(float geomAmf, float wvCol, float o3AtmCm) {
-        return gasTransLut.getValues(geomAmf, wvCol, o3AtmCm);
-    }
-
+    // the values are stored parameter by parameter for each grid vertex, parameter 5 is skipped
     private float[] readValues(ImageInputStream iis, int nAot, int nHsf, int nAzi, int nSza, int nVza) throws IOException {
-        int len = nWvl * nAot * nHsf * nAzi * nSza * nVza * 5;
+        int len = nWvl * nAot * nHsf * nAzi * nSza * nVza * N_PARAMETER_USED;
         float[] val = new float[len];
         for (int iWvl = 0; iWvl < nWvl; iWvl++) {
             for (int iAot = 0; iAot < nAot; iAot++) {
@@ -194,10 +253,13 @@ public class MomoLut {
                     for (int iAzi = 0; iAzi < nAzi; iAzi++) {
                         for (int iSza = 0; iSza < nSza; iSza++) {
                             for (int iVza = 0; iVza < nVza; iVza++) {
-                                for (int iPar = 0; iPar < 5; iPar++) {
-                                    int pos = calcPosition(new int[]{iHsf, iVza, iSza, iAzi, iAot, iPar, iWvl},
-                                                           new int[]{nHsf, nVza, nSza, nAzi, nAot, 5, nWvl});
-                                    val[pos] = iis.readFloat();
+                                for (int iPar = 0; iPar < N_PARAMETER; iPar++) {
+                                    final float value = iis.readFloat();
+                                    if (iPar < N_PARAMETER_USED) {
+                                        int pos = calcPosition(new int[]{iHsf, iVza, iSza, iAzi, iAot, iPar, iWvl},
+                                                               new int[]{nHsf, nVza, nSza, nAzi, nAot, N_PARAMETER_USED, nWvl});
+                                        val[pos] = value;
+                                    }
                                 }
                             }
                         }
@@ -208,6 +270,15 @@ public class MomoLut {
         return val;
     }
 
+    private float[] getPathValues(float[] values) {
+        final int stride = N_PARAMETER_USED * nWvl;
+        final float[] pathValues = new float[values.length / stride];
+        for (int i = 0; i < pathValues.length; i++) {
+            pathValues[i] = values[i * stride];
+        }
+        return pathValues;
+    }
+
     private VectorLookupTable readGasTransTable(ImageInputStream iis) throws IOException {
         try {
             int nAng = iis.readInt();
@@ -228,6 +299,33 @@ public class MomoLut {
         }
     }
 
+    /**
+     * The per-thread buffers of a MOMO LUT, which receive the coordinates and the interpolated
+     * values of the lookups.
+     */
+    public static final class Buffers {
+
+        private final LookupWorkspace workspace;
+        private final double[] coordinates;
+        private final double[] values;
+        private final double[] gasCoordinates;
+        private final double[] gasValues;
+        private final double[] pathCoordinates;
+        private final double[] pathValue;
+
+        private Buffers(int nWvl) {
+            // the pixels of a super-pixel and the AOT of subsequent lookups are close,
+            // so the interval searches start from the previous hit
+            workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+            coordinates = new double[8];
+            values = new double[(N_PARAMETER_USED + 1) * nWvl];
+            gasCoordinates = new double[3];
+            gasValues = new double[nWvl];
+            pathCoordinates = new double[5];
+            pathValue = new double[1];
+        }
+    }
+
     private enum DimSelector {
         VZA, SZA, AZI, HSF, AOT
     }
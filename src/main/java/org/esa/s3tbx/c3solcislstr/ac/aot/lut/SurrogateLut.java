@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.PolynomialSurrogate;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Atmospheric parameter LUT which evaluates piecewise polynomial surrogates of the tables of a
+ * {@link HyLut}, instead of interpolating the tables. Each of path reflectance, total transmission,
+ * spherical albedo, downward and upward diffuse to global ratio and gaseous transmission is
+ * approximated over its own dimensions, see {@link PolynomialSurrogate}. The surrogates are tested
+ * against the LUT at random points when they are fitted, and do not refer to the LUT afterwards.
+ */
+public class SurrogateLut implements Lut {
+
+    /**
+     * The maximum number of patches of a surrogate.
+     */
+    static final int MAX_PATCH_COUNT = 4096;
+
+    private static final String[] PARAMETER_NAMES = {"RP", "TD*TU", "SA", "DD", "DU", "TG"};
+    private static final int TG = 5;
+    // the aot is the second dimension of all atmospheric parameters returned by getRT
+    private static final int AOT_AXIS = 1;
+    private static final int TEST_POINT_COUNT = 100000;
+
+    private final PolynomialSurrogate[] surrogates;
+    private final int wavelengthCount;
+    private final double[] testErrors;
+
+    private SurrogateLut(PolynomialSurrogate[] surrogates, int wavelengthCount, double[] testErrors) {
+        this.surrogates = surrogates;
+        this.wavelengthCount = wavelengthCount;
+        this.testErrors = testErrors;
+    }
+
+    /**
+     * Fits the surrogates of the tables of an atmospheric parameter LUT.
+     *
+     * @param lut      the LUT.
+     * @param degree   the maximum total degree of the polynomials.
+     * @param maxError the maximum absolute error permitted at the vertices, the cell centres and the random
+     *                 points of the patches, and at random test points within the ranges of the tables.
+     * @return the surrogate LUT.
+     * @throws IllegalArgumentException if the error bound cannot be met, or is exceeded at a test point.
+     */
+    public static SurrogateLut fit(HyLut lut, int degree, double maxError) throws IllegalArgumentException {
+        final PolynomialSurrogate[] surrogates = new PolynomialSurrogate[PARAMETER_NAMES.length];
+        for (int k = 0; k < TG; k++) {
+            surrogates[k] = PolynomialSurrogate.fit(lut.getRTParameterTable(k), degree, maxError, MAX_PATCH_COUNT);
+        }
+        surrogates[TG] = PolynomialSurrogate.fit(lut.getTGTable(), degree, maxError, MAX_PATCH_COUNT);
+        final SurrogateLut untested = new SurrogateLut(surrogates, lut.getWavelengthCount(), null);
+        final double[] testErrors = untested.computeTestErrors(lut, TEST_POINT_COUNT, 5489);
+        for (int k = 0; k < testErrors.length; k++) {
+            if (testErrors[k] > maxError) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "The error {0} of the {1} surrogate at a test point exceeds the bound {2}",
+                        testErrors[k], PARAMETER_NAMES[k], maxError));
+            }
+        }
+        return new SurrogateLut(surrogates, untested.wavelengthCount, testErrors);
+    }
+
+    /**
+     * Returns the memory occupied by the polynomial coefficients of the surrogates in bytes.
+     *
+     * @return the memory footprint in bytes.
+     */
+    public long getMemoryFootprint() {
+        long count = 0;
+        for (PolynomialSurrogate surrogate : surrogates) {
+            count += surrogate.getCoefficientCount();
+        }
+        return count * Double.BYTES;
+    }
+
+    @Override
+    public int getWavelengthCount() {
+        return wavelengthCount;
+    }
+
+    @Override
+    public double[][] getRT(double aot, double sza, double vza, double raa, double hsf) {
+        final double[][] matrix = new double[5][wavelengthCount];
+        getRT(aot, sza, vza, raa, hsf, matrix, new LookupWorkspace());
+        return matrix;
+    }
+
+    @Override
+    public void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, int offset,
+                      LookupWorkspace workspace) {
+        final double[] values = workspace.getValues(wavelengthCount);
+        for (int k = 0; k < TG; k++) {
+            final double[] coordinates = getCoordinates(k, aot, sza, vza, raa, hsf, workspace);
+            surrogates[k].getValues(coordinates, values, workspace);
+            System.arraycopy(values, 0, rt[k], offset, wavelengthCount);
+        }
+    }
+
+    @Override
+    public void getRT(double aot, double sza, double vza, double raa, double hsf, double[][] rt, double[][] rtDerivatives,
+                      int offset, LookupWorkspace workspace) {
+        final double[] values = workspace.getValues(wavelengthCount);
+        final double[] derivatives = workspace.getDerivatives(wavelengthCount);
+        for (int k = 0; k < TG; k++) {
+            final double[] coordinates = getCoordinates(k, aot, sza, vza, raa, hsf, workspace);
+            surrogates[k].getValues(coordinates, values, AOT_AXIS, derivatives, workspace);
+            System.arraycopy(values, 0, rt[k], offset, wavelengthCount);
+            System.arraycopy(derivatives, 0, rtDerivatives[k], offset, wavelengthCount);
+        }
+    }
+
+    @Override
+    public double[] getTG(double cwv, double ozo, double amf) {
+        return surrogates[TG].getValues(cwv, ozo, amf);
+    }
+
+    @Override
+    public void getTG(double cwv, double ozo, double amf, double[] tg, LookupWorkspace workspace) {
+        final double[] c3 = workspace.getCoordinates(3);
+        c3[0] = cwv;
+        c3[1] = ozo;
+        c3[2] = amf;
+        surrogates[TG].getValues(c3, tg, workspace);
+    }
+
+    /**
+     * Writes a report on the accuracy of the surrogates, followed by the coefficients of the surrogates.
+     * The accuracy is given by the maximum absolute error at the vertices, cell centres and random points
+     * of the patches, and by the maximum absolute error with respect to the LUT at the random test points
+     * the surrogates were tested at when they were fitted.
+     *
+     * @param writer the writer.
+     */
+    public void writeReport(Writer writer) {
+        final PrintWriter printWriter = new PrintWriter(writer);
+        printWriter.printf(Locale.ENGLISH, "# LUT surrogate accuracy (maximum absolute error, %d random test points)%n",
+                           TEST_POINT_COUNT);
+        printWriter.printf(Locale.ENGLISH, "# %-6s %6s %8s %12s %10s %10s%n",
+                           "param", "degree", "patches", "coefficients", "fit", "test");
+        for (int k = 0; k < surrogates.length; k++) {
+            final PolynomialSurrogate surrogate = surrogates[k];
+            printWriter.printf(Locale.ENGLISH, "# %-6s %6d %8d %12d %10.3e %10.3e%n",
+                               PARAMETER_NAMES[k], surrogate.getDegree(), surrogate.getPatchCount(),
+                               surrogate.getCoefficientCount(), surrogate.getMaxError(), testErrors[k]);
+        }
+        for (int k = 0; k < surrogates.length; k++) {
+            printWriter.println();
+            printWriter.print("[" + PARAMETER_NAMES[k] + "]");
+            for (IntervalPartition dimension : surrogates[k].getDimensions()) {
+                printWriter.printf(Locale.ENGLISH, " [%s, %s]", dimension.getMin(), dimension.getMax());
+            }
+            printWriter.println();
+            surrogates[k].writeCoefficients(printWriter);
+        }
+        printWriter.flush();
+    }
+
+    private double[] computeTestErrors(HyLut lut, int count, long seed) {
+        final Random random = new Random(seed);
+        final double[] errors = new double[surrogates.length];
+        final double[][] expected = new double[5][wavelengthCount];
+        final double[][] actual = new double[5][wavelengthCount];
+        final double[] expectedTG = new double[wavelengthCount];
+        final double[] actualTG = new double[wavelengthCount];
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final IntervalPartition[] rtDimensions = surrogates[0].getDimensions();
+        final IntervalPartition[] tgDimensions = surrogates[TG].getDimensions();
+
+        for (int i = 0; i < count; i++) {
+            final double hsf = uniform(random, rtDimensions[0]);
+            final double aot = uniform(random, rtDimensions[1]);
+            final double raa = uniform(random, rtDimensions[2]);
+            final double vza = uniform(random, rtDimensions[3]);
+            final double sza = uniform(random, rtDimensions[4]);
+            lut.getRT(aot, sza, vza, raa, hsf, expected, workspace);
+            getRT(aot, sza, vza, raa, hsf, actual, workspace);
+            for (int k = 0; k < TG; k++) {
+                errors[k] = Math.max(errors[k], computeError(expected[k], actual[k]));
+            }
+
+            final double cwv = uniform(random, tgDimensions[0]);
+            final double ozo = uniform(random, tgDimensions[1]);
+            final double amf = uniform(random, tgDimensions[2]);
+            lut.getTG(cwv, ozo, amf, expectedTG, workspace);
+            getTG(cwv, ozo, amf, actualTG, workspace);
+            errors[TG] = Math.max(errors[TG], computeError(expectedTG, actualTG));
+        }
+        return errors;
+    }
+
+    private static double[] getCoordinates(int k, double aot, double sza, double vza, double raa, double hsf,
+                                           LookupWorkspace workspace) {
+        final int[] axes = HyLut.RT_PARAMETER_AXES[k];
+        final double[] coordinates = workspace.getCoordinates(axes.length);
+        for (int i = 0; i < axes.length; i++) {
+            switch (axes[i]) {
+                case 0:
+                    coordinates[i] = hsf;
+                    break;
+                case 1:
+                    coordinates[i] = aot;
+                    break;
+                case 2:
+                    coordinates[i] = raa;
+                    break;
+                case 3:
+                    coordinates[i] = vza;
+                    break;
+                default:
+                    coordinates[i] = sza;
+            }
+        }
+        return coordinates;
+    }
+
+    private static double computeError(double[] expected, double[] actual) {
+        double error = 0.0;
+        for (int w = 0; w < expected.length; w++) {
+            error = Math.max(error, Math.abs(actual[w] - expected[w]));
+        }
+        return error;
+    }
+
+    private static double uniform(Random random, IntervalPartition partition) {
+        return partition.getMin() + (partition.getMax() - partition.getMin()) * random.nextDouble();
+    }
+}
@@ -10,6 +10,10 @@ import org.esa.s3tbx.c3solcislstr.ac.aot.lut.MomoLut;
 import org.esa.snap.core.gpf.OperatorException;
 
 /**
+ * The cost function of the AOT retrieval for the pixels of a super-pixel.
+ * An instance is created per super-pixel and is confined to the thread retrieving
+ * it, as evaluating the function modifies the surface reflectance of the pixels.
+ *
  * @author akheckel
  */
 public class BrentFitFunction implements Function {
@@ -24,21 +28,24 @@ public class BrentFitFunction implements Function {
     private final int model;
     private final InputPixelData[] inPixField;
     private final MomoLut lut;
+    private final MomoLut.Buffers lutBuffers;
     private final double[] specWeights;
     private final double[] specSoil;
     private final double[] specVeg;
 
-    public BrentFitFunction(int modelType, InputPixelData[] inPixField, MomoLut lut, double[] specWeights, double[] specSoil, double[] specVeg) {
+    public BrentFitFunction(int modelType, InputPixelData[] inPixField, MomoLut lut, MomoLut.Buffers lutBuffers,
+                            double[] specWeights, double[] specSoil, double[] specVeg) {
         this.model = modelType;
         this.inPixField = inPixField;
         this.lut = lut;
+        this.lutBuffers = lutBuffers;
         this.specWeights = specWeights;
         this.specSoil = specSoil;
         this.specVeg = specVeg;
     }
 
     @Override
-    public synchronized double f(double tau) {
+    public double f(double tau) {
         double fmin = 0;
         for (InputPixelData anInPixField : inPixField) {
             fmin += fPix(tau, anInPixField);
@@ -46,20 +53,20 @@ public class BrentFitFunction implements Function {
         return fmin;
     }
 
-    public synchronized double getMaxAOT() {
+    public double getMaxAOT() {
         int min = 0;
         for (int i = 0; i < inPixField.length; i++) {
             if (inPixField[i].getToaReflec()[0] < inPixField[min].getToaReflec()[0]) {
                 min = i;
             }
         }
-        return lut.getMaxAOT(inPixField[min]);
+        return lut.getMaxAOT(inPixField[min], lutBuffers);
     }
 
     //private methods
 
     private double fPix(double tau, InputPixelData inPixData) {
-        lut.getSdrAndDiffuseFrac(inPixData, tau);
+        lut.getSdrAndDiffuseFrac(inPixData, tau, lutBuffers);
         double fmin = isSdrNegativ(inPixData.getSurfReflec());
 
         if (!(fmin > 0)) {
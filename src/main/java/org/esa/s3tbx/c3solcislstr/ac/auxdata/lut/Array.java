@@ -17,10 +17,14 @@
 package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
 
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
-import static org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.ArrayUtilities.degrade;
-
 /**
  * Interface for wrapping primitive arrays.
  *
@@ -45,6 +49,23 @@ public interface Array {
         throw new IllegalArgumentException("Data object must be an array of type 'double[]' or 'float[]''.");
     }
 
+    /**
+     * Creates a new instance of this class wrapping values stored in a byte buffer, e.g. a buffer
+     * mapped from a file. The values are not copied. The values are trusted not to be NaN, so
+     * lookup tables do not scan them, which would touch every page of a mapped buffer.
+     *
+     * @param buffer   the byte buffer. Its byte order is used.
+     * @param isDouble if {@code true}, the buffer stores {@code double} values, otherwise
+     *                 {@code float} values.
+     * @return the array created.
+     */
+    static Array wrap(ByteBuffer buffer, boolean isDouble) {
+        if (isDouble) {
+            return new DirectDouble(buffer.asDoubleBuffer(), true);
+        }
+        return new DirectFloat(buffer.asFloatBuffer(), true);
+    }
+
     /**
      * Returns the length of the primitive array wrapped.
      *
@@ -68,6 +89,17 @@ public interface Array {
      */
     void getValues(int start, double[] slice);
 
+    /**
+     * Gets a slice of values from the primitive array wrapped, starting at a given index,
+     * and stores them into a section of the target array.
+     *
+     * @param start  The start index.
+     * @param slice  The target array (on return).
+     * @param offset The index of the first slice element written.
+     * @param length The number of values to get.
+     */
+    void getValues(int start, double[] slice, int offset, int length);
+
     /**
      * Sets the ith value of the primitive array wrapped to a new value.
      *
@@ -78,15 +110,95 @@ public interface Array {
 
     Array append(Array array);
 
+    /**
+     * Returns a view of the hyperslab of this array where the coordinate of a given
+     * dimension is fixed. No values are copied.
+     *
+     * @param dimensionIndex  the index of the dimension removed.
+     * @param coordinateIndex the coordinate index of the hyperslab in the dimension removed.
+     * @param cardinals       the cardinal numbers of the dimensions of this array.
+     * @return the view of the hyperslab.
+     */
     Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals);
 
+    /**
+     * Returns a view of this array with reordered dimensions. No values are copied.
+     *
+     * @param reordering the reordering, i.e. dimension {@code i} of the view is dimension
+     *                   {@code reordering[i]} of this array.
+     * @param cardinals  the cardinal numbers of the dimensions of this array.
+     * @return the reordered view.
+     */
     Array reordered(int[] reordering, int[] cardinals);
 
+    /**
+     * Returns an array which stores its values contiguously, in the order of this array.
+     * Views are copied, all other arrays return themselves.
+     *
+     * @return the compacted array.
+     */
+    Array compacted();
+
+    /**
+     * The storage used for the values of an array.
+     */
+    enum Storage {
+        /**
+         * Values are stored in primitive arrays on the Java heap.
+         */
+        HEAP,
+        /**
+         * Values are stored in direct buffers outside of the Java heap, where they
+         * are not copied or scanned by the garbage collector.
+         */
+        DIRECT;
+
+        /**
+         * Returns an array with the same values as a given array, which uses this storage
+         * and stores its values contiguously.
+         *
+         * @param array the array.
+         * @return the array using this storage. May be the given array itself.
+         */
+        public Array store(Array array) {
+            if (of(array) == this && !(array instanceof View)) {
+                return array;
+            }
+            return View.copy(array, allocate(array, array.getLength()));
+        }
+
+        /**
+         * Allocates a new array of given length in this storage. The element type of the
+         * array allocated is the element type of a prototype array.
+         *
+         * @param prototype the prototype array.
+         * @param length    the length of the array allocated.
+         * @return the array allocated.
+         */
+        public Array allocate(Array prototype, int length) {
+            while (prototype instanceof View) {
+                prototype = ((View) prototype).base;
+            }
+            final boolean isDouble = prototype instanceof Double || prototype instanceof DirectDouble;
+            if (this == DIRECT) {
+                return isDouble ? new DirectDouble(length) : new DirectFloat(length);
+            }
+            return isDouble ? new Double(new double[length]) : new Float(new float[length]);
+        }
+
+        static Storage of(Array array) {
+            while (array instanceof View) {
+                array = ((View) array).base;
+            }
+            return array instanceof DirectFloat || array instanceof DirectDouble ? DIRECT : HEAP;
+        }
+    }
+
         /**
          * Class for wrapping {@code double} primitive arrays.
          */
     final class Double implements Array {
-        private final double[] values;
+        final double[] values;
 
         public Double(double[] values) {
             if (values == null) {
@@ -110,18 +222,29 @@ public interface Array {
             System.arraycopy(this.values, start, slice, 0, slice.length);
         }
 
+        @Override
+        public final void getValues(int start, double[] slice, int offset, int length) {
+            System.arraycopy(this.values, start, slice, offset, length);
+        }
+
         @Override
         public void setValue(int i, double d) {
             values[i] = d;
         }
 
+        @Override
         public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
-            return degrade(dimensionIndex, coordinateIndex, cardinals, this, newArray(getLength() / cardinals[dimensionIndex]));
+            return View.of(this, cardinals).degraded(dimensionIndex, coordinateIndex, cardinals);
         }
 
         @Override
         public Array reordered(int[] reordering, int[] cardinals) {
-            return ArrayUtilities.reorder(reordering, cardinals, this, newArray(getLength()));
+            return View.of(this, cardinals).reordered(reordering, cardinals);
+        }
+
+        @Override
+        public Array compacted() {
+            return this;
         }
 
         @Override
@@ -144,7 +267,7 @@ public interface Array {
      * Class for wrapping {@code float} primitive arrays.
      */
     final class Float implements Array {
-        private final float[] values;
+        final float[] values;
 
         public Float(float[] values) {
             if (values == null) {
@@ -170,6 +293,13 @@ public interface Array {
             }
         }
 
+        @Override
+        public final void getValues(int start, double[] slice, int offset, int length) {
+            for (int i = 0; i < length; ++i) {
+                slice[offset + i] = values[start + i];
+            }
+        }
+
         @Override
         public void setValue(int i, double d) {
             values[i] = (float) d;
@@ -177,12 +307,17 @@ public interface Array {
 
         @Override
         public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
-            return degrade(dimensionIndex, coordinateIndex, cardinals, this, newArray(getLength() / cardinals[dimensionIndex]));
+            return View.of(this, cardinals).degraded(dimensionIndex, coordinateIndex, cardinals);
         }
 
         @Override
         public Array reordered(int[] reordering, int[] cardinals) {
-            return ArrayUtilities.reorder(reordering, cardinals, this, newArray(getLength()));
+            return View.of(this, cardinals).reordered(reordering, cardinals);
+        }
+
+        @Override
+        public Array compacted() {
+            return this;
         }
 
         @Override
@@ -201,4 +336,463 @@ public interface Array {
         }
 
     }
+
+    /**
+     * Class for wrapping {@code float} values stored in a direct buffer.
+     */
+    final class DirectFloat implements Array {
+        private final FloatBuffer values;
+        final boolean trusted;
+
+        public DirectFloat(int length) {
+            this(ByteBuffer.allocateDirect(length * java.lang.Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer(), false);
+        }
+
+        private DirectFloat(FloatBuffer values, boolean trusted) {
+            this.values = values;
+            this.trusted = trusted;
+        }
+
+        @Override
+        public final int getLength() {
+            return values.capacity();
+        }
+
+        @Override
+        public final double getValue(int i) {
+            return values.get(i);
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice) {
+            for (int i = 0; i < slice.length; ++i) {
+                slice[i] = values.get(start + i);
+            }
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice, int offset, int length) {
+            for (int i = 0; i < length; ++i) {
+                slice[offset + i] = values.get(start + i);
+            }
+        }
+
+        @Override
+        public void setValue(int i, double d) {
+            values.put(i, (float) d);
+        }
+
+        @Override
+        public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
+            return View.of(this, cardinals).degraded(dimensionIndex, coordinateIndex, cardinals);
+        }
+
+        @Override
+        public Array reordered(int[] reordering, int[] cardinals) {
+            return View.of(this, cardinals).reordered(reordering, cardinals);
+        }
+
+        @Override
+        public Array compacted() {
+            return this;
+        }
+
+        @Override
+        public Array append(Array that) {
+            final int thisLength = this.getLength();
+            final int thatLength = that.getLength();
+            final Array mergedArray = new DirectFloat(thisLength + thatLength);
+            IntStream.range(0, thisLength).forEach(i -> mergedArray.setValue(i, getValue(i)));
+            IntStream.range(0, thatLength).forEach(i -> mergedArray.setValue(i + thisLength, that.getValue(i)));
+
+            return mergedArray;
+        }
+    }
+
+    /**
+     * Class for wrapping {@code double} values stored in a direct buffer.
+     */
+    final class DirectDouble implements Array {
+        private final DoubleBuffer values;
+        final boolean trusted;
+
+        public DirectDouble(int length) {
+            this(ByteBuffer.allocateDirect(length * java.lang.Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer(), false);
+        }
+
+        private DirectDouble(DoubleBuffer values, boolean trusted) {
+            this.values = values;
+            this.trusted = trusted;
+        }
+
+        @Override
+        public final int getLength() {
+            return values.capacity();
+        }
+
+        @Override
+        public final double getValue(int i) {
+            return values.get(i);
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice) {
+            for (int i = 0; i < slice.length; ++i) {
+                slice[i] = values.get(start + i);
+            }
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice, int offset, int length) {
+            for (int i = 0; i < length; ++i) {
+                slice[offset + i] = values.get(start + i);
+            }
+        }
+
+        @Override
+        public void setValue(int i, double d) {
+            values.put(i, d);
+        }
+
+        @Override
+        public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
+            return View.of(this, cardinals).degraded(dimensionIndex, coordinateIndex, cardinals);
+        }
+
+        @Override
+        public Array reordered(int[] reordering, int[] cardinals) {
+            return View.of(this, cardinals).reordered(reordering, cardinals);
+        }
+
+        @Override
+        public Array compacted() {
+            return this;
+        }
+
+        @Override
+        public Array append(Array that) {
+            final int thisLength = this.getLength();
+            final int thatLength = that.getLength();
+            final Array mergedArray = new DirectDouble(thisLength + thatLength);
+            IntStream.range(0, thisLength).forEach(i -> mergedArray.setValue(i, getValue(i)));
+            IntStream.range(0, thatLength).forEach(i -> mergedArray.setValue(i + thisLength, that.getValue(i)));
+
+            return mergedArray;
+        }
+    }
+
+    /**
+     * Class for values quantized to unsigned 16-bit integers. The array is partitioned into
+     * consecutive vectors of a fixed period, e.g. the wavelengths of a lookup table, and each
+     * element of the period has its own scale and offset, so the quantization step adapts to
+     * the range of the element.
+     */
+    final class Quantized implements Array {
+        private static final int LEVELS = 0xFFFF;
+
+        final short[] values;
+        final double[] scales;
+        final double[] offsets;
+        private final double maxError;
+
+        private Quantized(short[] values, double[] scales, double[] offsets, double maxError) {
+            this.values = values;
+            this.scales = scales;
+            this.offsets = offsets;
+            this.maxError = maxError;
+        }
+
+        /**
+         * Quantizes the values of an array.
+         *
+         * @param source   the array.
+         * @param period   the period of the scales and offsets, i.e. the vector length.
+         * @param maxError the maximum absolute quantization error permitted.
+         * @return the quantized array.
+         * @throws IllegalArgumentException if the length of the array is not a multiple of the period,
+         *                                  the array contains values which are not finite, or the
+         *                                  quantization error exceeds the maximum permitted.
+         */
+        public static Quantized of(Array source, int period, double maxError) throws IllegalArgumentException {
+            final int length = source.getLength();
+            if (period < 1 || length % period != 0) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "array length {0} is not a multiple of the period {1}", length, period));
+            }
+            final double[] min = new double[period];
+            final double[] max = new double[period];
+            Arrays.fill(min, java.lang.Double.POSITIVE_INFINITY);
+            Arrays.fill(max, java.lang.Double.NEGATIVE_INFINITY);
+            for (int i = 0; i < length; i++) {
+                final double value = source.getValue(i);
+                if (java.lang.Double.isNaN(value) || java.lang.Double.isInfinite(value)) {
+                    throw new IllegalArgumentException(MessageFormat.format("value at index {0} is not finite", i));
+                }
+                final int k = i % period;
+                min[k] = Math.min(min[k], value);
+                max[k] = Math.max(max[k], value);
+            }
+            final double[] scales = new double[period];
+            for (int k = 0; k < period; k++) {
+                scales[k] = (max[k] - min[k]) / LEVELS;
+            }
+            final Quantized quantized = new Quantized(new short[length], scales, min, 0.0);
+            double error = 0.0;
+            for (int i = 0; i < length; i++) {
+                final double value = source.getValue(i);
+                quantized.setValue(i, value);
+                error = Math.max(error, Math.abs(quantized.getValue(i) - value));
+            }
+            if (error > maxError) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "quantization error {0} exceeds the maximum error {1}", error, maxError));
+            }
+            return new Quantized(quantized.values, scales, min, error);
+        }
+
+        /**
+         * Returns the maximum absolute quantization error of the values this array was created from.
+         *
+         * @return the maximum absolute quantization error.
+         */
+        public double getMaxError() {
+            return maxError;
+        }
+
+        /**
+         * Returns the period of the scales and offsets.
+         *
+         * @return the period.
+         */
+        public int getPeriod() {
+            return scales.length;
+        }
+
+        @Override
+        public final int getLength() {
+            return values.length;
+        }
+
+        @Override
+        public final double getValue(int i) {
+            final int k = i % scales.length;
+            return offsets[k] + scales[k] * (values[i] & LEVELS);
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice) {
+            getValues(start, slice, 0, slice.length);
+        }
+
+        @Override
+        public final void getValues(int start, double[] slice, int offset, int length) {
+            for (int i = 0, k = start % scales.length; i < length; ++i) {
+                slice[offset + i] = offsets[k] + scales[k] * (values[start + i] & LEVELS);
+                if (++k == scales.length) {
+                    k = 0;
+                }
+            }
+        }
+
+        /**
+         * Sets the ith value to the nearest quantization level. Values outside the range
+         * of the quantization levels are clamped.
+         *
+         * @param i the array index.
+         * @param d the new value.
+         */
+        @Override
+        public void setValue(int i, double d) {
+            final int k = i % scales.length;
+            final long level = scales[k] > 0.0 ? Math.round((d - offsets[k]) / scales[k]) : 0;
+            values[i] = (short) Math.max(0, Math.min(LEVELS, level));
+        }
+
+        @Override
+        public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
+            return View.of(this, cardinals).degraded(dimensionIndex, coordinateIndex, cardinals);
+        }
+
+        @Override
+        public Array reordered(int[] reordering, int[] cardinals) {
+            return View.of(this, cardinals).reordered(reordering, cardinals);
+        }
+
+        @Override
+        public Array compacted() {
+            return this;
+        }
+
+        @Override
+        public Array append(Array that) {
+            final int thisLength = this.getLength();
+            final int thatLength = that.getLength();
+            final Array mergedArray = new Double(new double[thisLength + thatLength]);
+            IntStream.range(0, thisLength).forEach(i -> mergedArray.setValue(i, getValue(i)));
+            IntStream.range(0, thatLength).forEach(i -> mergedArray.setValue(i + thisLength, that.getValue(i)));
+
+            return mergedArray;
+        }
+    }
+
+    /**
+     * A strided view of another array. Views are created by {@link #degraded} and
+     * {@link #reordered}, and are composed without copying any values.
+     */
+    final class View implements Array {
+        final Array base;
+        final int offset;
+        final int[] cardinals;
+        final int[] strides;
+        private final int length;
+
+        private View(Array base, int offset, int[] cardinals, int[] strides) {
+            this.base = base;
+            this.offset = offset;
+            this.cardinals = cardinals;
+            this.strides = strides;
+            int n = 1;
+            for (int cardinal : cardinals) {
+                n *= cardinal;
+            }
+            this.length = n;
+        }
+
+        static View of(Array array, int[] cardinals) {
+            if (array instanceof View) {
+                final View view = (View) array;
+                if (!Arrays.equals(view.cardinals, cardinals)) {
+                    throw new IllegalArgumentException("Cardinal numbers are not compatible with the view.");
+                }
+                return view;
+            }
+            final View view = new View(array, 0, cardinals.clone(),
+                                       ArrayUtilities.computeStrides(cardinals, new int[cardinals.length]));
+            if (view.length != array.getLength()) {
+                throw new IllegalArgumentException("Cardinal numbers are not compatible with the length of the array.");
+            }
+            return view;
+        }
+
+        static Array copy(Array source, Array target) {
+            if (source instanceof View) {
+                final View view = (View) source;
+                ArrayUtilities.copy(view.base, view.offset, view.cardinals, view.strides, target);
+                return target;
+            }
+            final double[] buffer = new double[Math.min(source.getLength(), 1 << 16)];
+            for (int start = 0; start < source.getLength(); start += buffer.length) {
+                final int n = Math.min(buffer.length, source.getLength() - start);
+                source.getValues(start, buffer, 0, n);
+                for (int i = 0; i < n; i++) {
+                    target.setValue(start + i, buffer[i]);
+                }
+            }
+            return target;
+        }
+
+        /**
+         * Returns the index into the base array, which corresponds to the ith element of the view.
+         *
+         * @param i the index of the element of the view.
+         * @return the index into the base array.
+         */
+        int resolve(int i) {
+            int index = offset;
+            for (int j = cardinals.length; j-- > 0; ) {
+                index += (i % cardinals[j]) * strides[j];
+                i /= cardinals[j];
+            }
+            return index;
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+
+        @Override
+        public double getValue(int i) {
+            return base.getValue(resolve(i));
+        }
+
+        @Override
+        public void getValues(int start, double[] slice) {
+            getValues(start, slice, 0, slice.length);
+        }
+
+        @Override
+        public void getValues(int start, double[] slice, int offset, int length) {
+            final int n = cardinals.length;
+            final int[] mi = new int[n];
+            int index = this.offset;
+            for (int j = n, i = start; j-- > 0; ) {
+                mi[j] = i % cardinals[j];
+                index += mi[j] * strides[j];
+                i /= cardinals[j];
+            }
+            final int last = n - 1;
+            for (int k = 0; k < length; ) {
+                if (strides[last] == 1) {
+                    final int run = Math.min(length - k, cardinals[last] - mi[last]);
+                    base.getValues(index, slice, offset + k, run);
+                    k += run;
+                    mi[last] += run;
+                    index += run;
+                } else {
+                    slice[offset + k] = base.getValue(index);
+                    k++;
+                    mi[last]++;
+                    index += strides[last];
+                }
+                // carry
+                for (int j = last; j > 0 && mi[j] == cardinals[j]; j--) {
+                    index -= mi[j] * strides[j];
+                    mi[j] = 0;
+                    mi[j - 1]++;
+                    index += strides[j - 1];
+                }
+            }
+        }
+
+        @Override
+        public void setValue(int i, double d) {
+            base.setValue(resolve(i), d);
+        }
+
+        @Override
+        public Array append(Array array) {
+            return compacted().append(array);
+        }
+
+        @Override
+        public Array degraded(int dimensionIndex, int coordinateIndex, int[] cardinals) {
+            of(this, cardinals);
+            final int n = this.cardinals.length - 1;
+            final int[] c = new int[n];
+            final int[] s = new int[n];
+            for (int i = 0, j = 0; i <= n; i++) {
+                if (i != dimensionIndex) {
+                    c[j] = this.cardinals[i];
+                    s[j] = this.strides[i];
+                    j++;
+                }
+            }
+            return new View(base, offset + coordinateIndex * strides[dimensionIndex], c, s);
+        }
+
+        @Override
+        public Array reordered(int[] reordering, int[] cardinals) {
+            of(this, cardinals);
+            final int n = reordering.length;
+            return new View(base, offset,
+                            ArrayUtilities.reorder(reordering, this.cardinals, new int[n]),
+                            ArrayUtilities.reorder(reordering, this.strides, new int[n]));
+        }
+
+        @Override
+        public Array compacted() {
+            return copy(this, Storage.of(base).allocate(base, length));
+        }
+    }
 }
@@ -16,10 +16,20 @@
 
 package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
 public class ArrayUtilities {
 
+    /**
+     * The edge length of the square tiles used for cache-blocked transposition.
+     */
+    private static final int TILE_SIZE = 32;
+    /**
+     * The minimum number of elements copied in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+
     public static Array degrade(int dimensionIndex, int coordinateIndex, int[] cardinals, Array source, Array result) {
         if (source.getLength() % result.getLength() != 0) {
             throw new IllegalArgumentException("Length of the source must be a multiple of the length of the result.");
@@ -38,11 +48,17 @@ public class ArrayUtilities {
             throw new IllegalArgumentException("Illegal arguments.");
         }
 
-        for (int s = coordinateIndex * sliceLength, r = 0; s < source.getLength(); s += sliceStride, r += sliceLength) {
-            for (int i = 0; i < sliceLength; i++) {
-                result.setValue(r + i, source.getValue(s + i));
+        final int n = cardinals.length - 1;
+        final int[] resultCardinals = new int[n];
+        final int[] sourceStrides = new int[n];
+        for (int i = 0, j = 0; i <= n; i++) {
+            if (i != dimensionIndex) {
+                resultCardinals[j] = cardinals[i];
+                sourceStrides[j] = strides[i];
+                j++;
             }
         }
+        copy(source, coordinateIndex * sliceLength, resultCardinals, sourceStrides, result);
 
         return result;
     }
@@ -50,28 +66,144 @@ public class ArrayUtilities {
     public static Array reorder(int[] reordering, int[] cardinals, Array source, Array result) {
         final int n = reordering.length;
         final int[] sourceStrides = computeStrides(cardinals, new int[n]);
-        final int[] resultStrides = computeStrides(reorder(reordering, cardinals, new int[n]), new int[n]);
 
-        reorder(reordering, sourceStrides, source, resultStrides, result);
+        copy(source, 0, reorder(reordering, cardinals, new int[n]), reorder(reordering, sourceStrides, new int[n]), result);
 
         return result;
     }
 
-    static void reorder(int[] reordering, int[] sourceStrides, Array source, int[] resultStrides, Array result) {
-        final int n = reordering.length;
-        final int[] mi = new int[n];
-        final int[] mj = new int[n];
-
-        final int elementCount = source.getLength();
-        for (int i = 0; i < elementCount; i++) {
-            iToMi(sourceStrides, i, mi);
-            reorder(reordering, mi, mj);
-            result.setValue(miToI(resultStrides, mj), source.getValue(i));
+    /**
+     * Copies the elements of a strided view of a source array into a result array,
+     * where they are stored contiguously in row-major order.
+     * <p>
+     * The view is traversed with an odometer over all but two axes. The plane spanned by
+     * the last axis of the result and the axis along which the source is contiguous is
+     * transposed in square tiles, so reads and writes stay within the cache. Large arrays
+     * are copied in parallel.
+     *
+     * @param source    the source array.
+     * @param offset    the index of the first element of the view in the source array.
+     * @param cardinals the cardinal numbers of the axes of the view.
+     * @param strides   the strides of the axes of the view in the source array.
+     * @param result    the result array.
+     */
+    static void copy(Array source, int offset, int[] cardinals, int[] strides, Array result) {
+        final TileCopier copier;
+        if (source instanceof Array.Double && result instanceof Array.Double) {
+            final double[] s = ((Array.Double) source).values;
+            final double[] r = ((Array.Double) result).values;
+            copier = (si, sRowStride, sColStride, ri, rRowStride, rows, cols) -> {
+                for (int i = 0; i < rows; i++, si += sRowStride, ri += rRowStride) {
+                    for (int j = 0, k = si; j < cols; j++, k += sColStride) {
+                        r[ri + j] = s[k];
+                    }
+                }
+            };
+        } else if (source instanceof Array.Float && result instanceof Array.Float) {
+            final float[] s = ((Array.Float) source).values;
+            final float[] r = ((Array.Float) result).values;
+            copier = (si, sRowStride, sColStride, ri, rRowStride, rows, cols) -> {
+                for (int i = 0; i < rows; i++, si += sRowStride, ri += rRowStride) {
+                    for (int j = 0, k = si; j < cols; j++, k += sColStride) {
+                        r[ri + j] = s[k];
+                    }
+                }
+            };
+        } else {
+            copier = (si, sRowStride, sColStride, ri, rRowStride, rows, cols) -> {
+                for (int i = 0; i < rows; i++, si += sRowStride, ri += rRowStride) {
+                    for (int j = 0, k = si; j < cols; j++, k += sColStride) {
+                        result.setValue(ri + j, source.getValue(k));
+                    }
+                }
+            };
         }
+        copy(offset, cardinals, strides, copier);
+    }
+
+    private static void copy(int offset, int[] cardinals, int[] strides, TileCopier copier) {
+        final int n = cardinals.length;
+        final int[] resultStrides = computeStrides(cardinals, new int[n]);
+        final int length = n == 0 ? 1 : resultStrides[0] * cardinals[0];
+        if (length == 0) {
+            return;
+        }
+        if (n == 0) {
+            copier.copy(offset, 0, 0, 0, 0, 1, 1);
+            return;
+        }
+        final int col = n - 1;
+        // the row axis of the tiles is the axis along which the source is densest, unless it is the last axis
+        int row = -1;
+        if (Math.abs(strides[col]) != 1) {
+            for (int i = 0; i < col; i++) {
+                if (row == -1 || Math.abs(strides[i]) < Math.abs(strides[row])) {
+                    row = i;
+                }
+            }
+        }
+        final int[] outerAxes = new int[row == -1 ? n - 1 : n - 2];
+        for (int i = 0, j = 0; i < col; i++) {
+            if (i != row) {
+                outerAxes[j++] = i;
+            }
+        }
+        final int planeLength = row == -1 ? cardinals[col] : cardinals[col] * cardinals[row];
+        final int outerCount = length / planeLength;
+        final int r = row;
+
+        final IntStream tasks;
+        final int taskSize;
+        if (length >= PARALLEL_THRESHOLD && outerCount > 1) {
+            final int taskCount = Math.min(outerCount, 4 * ForkJoinPool.getCommonPoolParallelism());
+            taskSize = (outerCount + taskCount - 1) / taskCount;
+            tasks = IntStream.range(0, (outerCount + taskSize - 1) / taskSize).parallel();
+        } else {
+            taskSize = outerCount;
+            tasks = IntStream.range(0, 1);
+        }
+        tasks.forEach(t -> {
+            final int[] mi = new int[outerAxes.length];
+            final int first = t * taskSize;
+            final int last = Math.min(first + taskSize, outerCount);
+            for (int j = outerAxes.length, k = first; j-- > 0; ) {
+                mi[j] = k % cardinals[outerAxes[j]];
+                k /= cardinals[outerAxes[j]];
+            }
+            for (int k = first; k < last; k++) {
+                int si = offset;
+                int ri = 0;
+                for (int j = 0; j < outerAxes.length; j++) {
+                    si += mi[j] * strides[outerAxes[j]];
+                    ri += mi[j] * resultStrides[outerAxes[j]];
+                }
+                if (r == -1) {
+                    copier.copy(si, 0, strides[col], ri, 0, 1, cardinals[col]);
+                } else {
+                    for (int i0 = 0; i0 < cardinals[r]; i0 += TILE_SIZE) {
+                        final int rows = Math.min(TILE_SIZE, cardinals[r] - i0);
+                        for (int j0 = 0; j0 < cardinals[col]; j0 += TILE_SIZE) {
+                            final int cols = Math.min(TILE_SIZE, cardinals[col] - j0);
+                            copier.copy(si + i0 * strides[r] + j0 * strides[col], strides[r], strides[col],
+                                        ri + i0 * resultStrides[r] + j0, resultStrides[r], rows, cols);
+                        }
+                    }
+                }
+                // advance the odometer
+                for (int j = outerAxes.length; j-- > 0; ) {
+                    if (++mi[j] < cardinals[outerAxes[j]]) {
+                        break;
+                    }
+                    mi[j] = 0;
+                }
+            }
+        });
     }
 
     static int[] reorder(int[] reordering, int[] source, int[] target) {
-        IntStream.range(0, reordering.length).forEach(i -> target[i] = source[reordering[i]]);
+        for (int i = 0; i < reordering.length; i++) {
+            target[i] = source[reordering[i]];
+        }
         return target;
     }
 
@@ -82,15 +214,12 @@ public class ArrayUtilities {
         return strides;
     }
 
-    private static int miToI(int[] strides, int[] mi) {
-        return IntStream.range(0, strides.length).map(i -> mi[i] * strides[i]).sum();
-    }
+    /**
+     * Copies a tile of {@code rows} times {@code cols} elements from a strided source into a result.
+     */
+    private interface TileCopier {
 
-    private static void iToMi(int[] strides, int i, int[] mi) {
-        for (int j = 0; j < strides.length; ++j) {
-            mi[j] = i / strides[j];
-            i = i - mi[j] * strides[j];
-        }
+        void copy(int sourceIndex, int sourceRowStride, int sourceColStride,
+                  int resultIndex, int resultRowStride, int rows, int cols);
     }
-
 }
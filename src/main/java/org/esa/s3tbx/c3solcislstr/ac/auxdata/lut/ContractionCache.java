@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the contractions of a fused lookup table over its leading dimensions, see
+ * {@link FusedLookupTable#contracted(int, double...)}.
+ * <p>
+ * The coordinates of the leading dimensions are rounded to the nearest multiple of a step,
+ * and the rounded coordinates are used as cache key, so lookups for nearby coordinates are
+ * served by the same contracted table. The cache is striped to reduce lock contention, and
+ * each stripe evicts its least recently used table when it is full. Each thread remembers
+ * the table it got last, so coherent lookups do not lock. The cache is thread safe.
+ */
+public class ContractionCache {
+
+    private static final int STRIPE_COUNT = 16;
+
+    private final FusedLookupTable table;
+    private final double[] steps;
+    private final Stripe[] stripes;
+    private final ThreadLocal<Memo> memo;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final AtomicLong valueCount = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param table    the fused lookup table.
+     * @param steps    the steps used for rounding the coordinates of the leading dimensions.
+     *                 The number of steps is the number of leading dimensions fixed.
+     * @param capacity the maximum number of contracted tables held.
+     * @throws IllegalArgumentException if a step is not positive, or the capacity is less than one.
+     */
+    public ContractionCache(FusedLookupTable table, double[] steps, int capacity) throws IllegalArgumentException {
+        for (final double step : steps) {
+            if (!(step > 0.0)) {
+                throw new IllegalArgumentException(MessageFormat.format("step = {0} is not positive", step));
+            }
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        this.table = table;
+        this.steps = steps.clone();
+        this.memo = ThreadLocal.withInitial(() -> new Memo(steps.length));
+        this.stripes = new Stripe[Math.min(STRIPE_COUNT, capacity)];
+        // the remainder of the capacity is distributed over the first stripes
+        final int stripeCapacity = capacity / stripes.length;
+        final int remainder = capacity % stripes.length;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i < remainder ? stripeCapacity + 1 : stripeCapacity);
+        }
+    }
+
+    /**
+     * Returns the contraction of the fused lookup table at the rounded coordinates of the
+     * leading dimensions. The contracted table is computed on a cache miss.
+     *
+     * @param coordinates the coordinates of the leading dimensions.
+     * @return the contracted lookup table.
+     * @throws IllegalArgumentException if the number of coordinates is not equal to the number
+     *                                  of steps, or any coordinate is NaN.
+     */
+    public FusedLookupTable get(double... coordinates) throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(coordinates, steps.length);
+        final Memo m = memo.get();
+        boolean same = m.table != null;
+        for (int i = 0; i < steps.length; i++) {
+            final long index = Math.round(coordinates[i] / steps[i]);
+            same = same && index == m.indexes[i];
+            m.indexes[i] = index;
+        }
+        if (same) {
+            hitCount.increment();
+            return m.table;
+        }
+        m.table = get(m.indexes.clone());
+        return m.table;
+    }
+
+    private FusedLookupTable get(long[] indexes) {
+        final Key key = new Key(indexes);
+        final Stripe stripe = stripes[(key.hashCode() & 0x7FFFFFFF) % stripes.length];
+
+        FusedLookupTable contracted;
+        synchronized (stripe) {
+            contracted = stripe.get(key);
+        }
+        if (contracted != null) {
+            hitCount.increment();
+            return contracted;
+        }
+        missCount.increment();
+        final double[] rounded = new double[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            rounded[i] = indexes[i] * steps[i];
+        }
+        contracted = table.contracted(steps.length, rounded);
+        synchronized (stripe) {
+            final FusedLookupTable present = stripe.get(key);
+            if (present != null) {
+                return present;
+            }
+            stripe.put(key, contracted);
+        }
+        return contracted;
+    }
+
+    /**
+     * Returns the number of lookups served by a cached table.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups which required a table to be contracted.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups served by a cached table.
+     *
+     * @return the hit rate, or zero if there were no lookups.
+     */
+    public double getHitRate() {
+        final long hits = getHitCount();
+        final long lookups = hits + getMissCount();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * Returns the number of contracted tables held.
+     *
+     * @return the number of tables.
+     */
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the memory occupied by the values of the contracted tables held, in bytes.
+     *
+     * @return the memory footprint.
+     */
+    public long getMemoryFootprint() {
+        return valueCount.get() * Double.BYTES;
+    }
+
+    /**
+     * A stripe of the cache, which holds its tables in access order and evicts the least recently used
+     * table when its capacity is exceeded. Stripes are guarded by their own monitor.
+     */
+    private final class Stripe {
+
+        private final LinkedHashMap<Key, FusedLookupTable> tables = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        FusedLookupTable get(Key key) {
+            return tables.get(key);
+        }
+
+        void put(Key key, FusedLookupTable table) {
+            tables.put(key, table);
+            valueCount.addAndGet(table.getValueCount());
+            if (tables.size() > capacity) {
+                final Iterator<FusedLookupTable> eldest = tables.values().iterator();
+                valueCount.addAndGet(-eldest.next().getValueCount());
+                eldest.remove();
+            }
+        }
+
+        int size() {
+            return tables.size();
+        }
+    }
+
+    private static final class Memo {
+
+        private final long[] indexes;
+        private FusedLookupTable table;
+
+        Memo(int length) {
+            indexes = new long[length];
+        }
+    }
+
+    private static final class Key {
+
+        private final long[] indexes;
+        private final int hash;
+
+        Key(long[] indexes) {
+            this.indexes = indexes;
+            this.hash = Arrays.hashCode(indexes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(indexes, ((Key) o).indexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * A lookup table which combines several vector lookup tables defined on subsets of a
+ * common set of dimensions. A lookup computes the fractional index of each common
+ * dimension once, and then interpolates all member tables, whose value vectors are
+ * concatenated in the order of the members.
+ * <p>
+ * Tables which share all of their dimensions are best interleaved into a single member,
+ * whose value vector at each vertex is the concatenation of their value vectors, so the
+ * corner vectors of all of them are fetched at once.
+ */
+public class FusedLookupTable implements MultivariateLookupTable {
+
+    private final IntervalPartition[] dimensions;
+    private final VectorLookupTable[] tables;
+    private final int[][] axes;
+    private final int[] offsets;
+    private final int vectorLength;
+    private final int maxDimensionCount;
+
+    /**
+     * Creates a new instance of this class.
+     *
+     * @param dimensions the common dimensions.
+     * @param tables     the member tables.
+     * @param axes       the axes of the member tables, i.e. dimension {@code i} of member {@code k}
+     *                   is the common dimension {@code axes[k][i]}.
+     * @throws IllegalArgumentException if the number of axes does not match the number of members,
+     *                                  or a dimension of a member is not equal to the common
+     *                                  dimension it is associated with.
+     */
+    public FusedLookupTable(IntervalPartition[] dimensions, VectorLookupTable[] tables, int[][] axes)
+            throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(dimensions);
+        VectorLookupTable.ensureLegalArray(tables);
+        if (axes.length != tables.length) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "axes.length = {0} is not equal to the number of tables {1}", axes.length, tables.length));
+        }
+        this.dimensions = dimensions;
+        this.tables = tables;
+        this.axes = axes;
+        this.offsets = new int[tables.length];
+
+        int length = 0;
+        int maxCount = 0;
+        for (int k = 0; k < tables.length; k++) {
+            final VectorLookupTable table = tables[k];
+            if (axes[k].length != table.getDimensionCount()) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "axes[{0}].length = {1} is not equal to the number of dimensions {2}",
+                        k, axes[k].length, table.getDimensionCount()));
+            }
+            for (int i = 0; i < axes[k].length; i++) {
+                final int axis = axes[k][i];
+                if (axis < 0 || axis >= dimensions.length) {
+                    throw new IllegalArgumentException(MessageFormat.format("axes[{0}][{1}] = {2} is out of range", k, i, axis));
+                }
+                if (!Arrays.equals(dimensions[axis].getSequence(), table.getDimension(i).getSequence())) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "dimension {0} of table {1} is not equal to dimension {2}", i, k, axis));
+                }
+            }
+            offsets[k] = length;
+            length += table.getVectorLength();
+            maxCount = Math.max(maxCount, table.getDimensionCount());
+        }
+        this.vectorLength = length;
+        this.maxDimensionCount = maxCount;
+    }
+
+    @Override
+    public final int getDimensionCount() {
+        return dimensions.length;
+    }
+
+    @Override
+    public final IntervalPartition[] getDimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public final IntervalPartition getDimension(int i) {
+        return dimensions[i];
+    }
+
+    @Override
+    public final int getVectorLength() {
+        return vectorLength;
+    }
+
+    /**
+     * Returns the index of the first element of the value vector of a member table
+     * within the concatenated value vector.
+     *
+     * @param k the index of the member table.
+     * @return the index of the first element.
+     */
+    public final int getOffset(int k) {
+        return offsets[k];
+    }
+
+    /**
+     * Returns a fused lookup table whose leading dimensions are fixed at given coordinates,
+     * see {@link VectorLookupTable#contracted(int, double...)}. The dimensions of each member
+     * table which are associated with the leading dimensions must precede its other dimensions.
+     *
+     * @param count       the number of leading dimensions fixed. Must be less than the number
+     *                    of dimensions.
+     * @param coordinates the coordinates of the leading dimensions.
+     * @return the contracted lookup table.
+     * @throws IllegalArgumentException if {@code count} is not in the range {@code [0, n)}, where
+     *                                  {@code n} is the number of dimensions, the number of
+     *                                  coordinates is not equal to {@code count}, or a member table
+     *                                  cannot be contracted.
+     */
+    public final FusedLookupTable contracted(int count, double... coordinates) throws IllegalArgumentException {
+        if (count < 0 || count >= dimensions.length) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "count = {0} is not in the range [0, {1})", count, dimensions.length));
+        }
+        VectorLookupTable.ensureLegalArray(coordinates, count);
+        final VectorLookupTable[] contractedTables = new VectorLookupTable[tables.length];
+        final int[][] contractedAxes = new int[tables.length][];
+        for (int k = 0; k < tables.length; k++) {
+            final int[] a = axes[k];
+            int fixedCount = 0;
+            while (fixedCount < a.length && a[fixedCount] < count) {
+                fixedCount++;
+            }
+            final double[] fixedCoordinates = new double[fixedCount];
+            for (int i = 0; i < fixedCount; i++) {
+                fixedCoordinates[i] = coordinates[a[i]];
+            }
+            contractedAxes[k] = new int[a.length - fixedCount];
+            for (int i = fixedCount; i < a.length; i++) {
+                if (a[i] < count) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "the fixed dimensions of table {0} do not precede its other dimensions", k));
+                }
+                contractedAxes[k][i - fixedCount] = a[i] - count;
+            }
+            contractedTables[k] = tables[k].contracted(fixedCount, fixedCoordinates);
+        }
+        return new FusedLookupTable(Arrays.copyOfRange(dimensions, count, dimensions.length),
+                                    contractedTables, contractedAxes);
+    }
+
+    /**
+     * Returns the number of lookup values stored by the member tables.
+     *
+     * @return the number of lookup values.
+     */
+    public final long getValueCount() {
+        long count = 0;
+        for (VectorLookupTable table : tables) {
+            count += table.getValueCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        long footprint = 0;
+        for (VectorLookupTable table : tables) {
+            footprint += table.getMemoryFootprint();
+        }
+        return footprint;
+    }
+
+    @Override
+    public final double[] getValues(double... coordinates) throws IllegalArgumentException {
+        final double[] values = new double[vectorLength];
+        getValues(coordinates, values, new LookupWorkspace());
+        return values;
+    }
+
+    @Override
+    public final void getValues(double[] coordinates, double[] values, LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        getValues(coordinates, null, values, workspace);
+    }
+
+    /**
+     * Interpolates the value vector like {@link #getValues(double[], double[], LookupWorkspace)}, but
+     * takes the fractional indexes of the leading dimensions from the caller, who may have computed
+     * them once for several tables over the same leading dimensions, see
+     * {@link LookupWorkspace#computeFracIndex(IntervalPartition, double, FracIndex)}.
+     *
+     * @param coordinates the coordinates of the lookup point. The coordinates of the leading
+     *                    dimensions are not used.
+     * @param leading     the fractional indexes of the leading dimensions, or {@code null}.
+     * @param values      the array receiving the interpolated value vector.
+     * @param workspace   the workspace used for intermediate results.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is not equal
+     *                                  to the number of dimensions, there are more fractional indexes
+     *                                  than dimensions, or the {@code values} array is shorter than
+     *                                  the vector length.
+     */
+    public final void getValues(double[] coordinates, FracIndex[] leading, double[] values, LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(coordinates, dimensions.length);
+        if (values.length < vectorLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "values.length = {0} is less than the vector length {1}", values.length, vectorLength));
+        }
+        final FracIndex[] fracIndexes = getFracIndexes(coordinates, leading, workspace);
+        final FracIndex[] selection = workspace.getFracIndexSelection(maxDimensionCount);
+        for (int k = 0; k < tables.length; k++) {
+            final int[] a = axes[k];
+            for (int i = 0; i < a.length; ++i) {
+                selection[i] = fracIndexes[a[i]];
+            }
+            tables[k].interpolate(selection, values, offsets[k], workspace);
+        }
+    }
+
+    @Override
+    public final void getValues(double[] coordinates, double[] values, int axis, double[] derivatives,
+                                LookupWorkspace workspace) throws IllegalArgumentException {
+        getValues(coordinates, null, values, axis, derivatives, workspace);
+    }
+
+    /**
+     * Interpolates the value vector and its partial derivative like {@link #getValues(double[], double[],
+     * int, double[], LookupWorkspace)}, but takes the fractional indexes of the leading dimensions from
+     * the caller, see {@link #getValues(double[], FracIndex[], double[], LookupWorkspace)}.
+     *
+     * @param coordinates the coordinates of the lookup point. The coordinates of the leading
+     *                    dimensions are used for the slope of the derivative only.
+     * @param leading     the fractional indexes of the leading dimensions, or {@code null}.
+     * @param values      the array receiving the interpolated value vector.
+     * @param axis        the index of the dimension of the derivative.
+     * @param derivatives the array receiving the partial derivatives of the value vector.
+     * @param workspace   the workspace used for intermediate results.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is not equal
+     *                                  to the number of dimensions, there are more fractional indexes
+     *                                  than dimensions, the axis is not a dimension index, or an array
+     *                                  receiving results is shorter than the vector length.
+     */
+    public final void getValues(double[] coordinates, FracIndex[] leading, double[] values, int axis,
+                                double[] derivatives, LookupWorkspace workspace) throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(coordinates, dimensions.length);
+        VectorLookupTable.ensureLegalAxis(axis, dimensions.length);
+        if (values.length < vectorLength || derivatives.length < vectorLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "values.length = {0} or derivatives.length = {1} is less than the vector length {2}",
+                    values.length, derivatives.length, vectorLength));
+        }
+        final FracIndex[] fracIndexes = getFracIndexes(coordinates, leading, workspace);
+        final double scale = VectorLookupTable.getSlopeScale(dimensions[axis], coordinates[axis], fracIndexes[axis].i);
+        final FracIndex[] selection = workspace.getFracIndexSelection(maxDimensionCount);
+        for (int k = 0; k < tables.length; k++) {
+            final int[] a = axes[k];
+            int memberAxis = -1;
+            for (int i = 0; i < a.length; ++i) {
+                selection[i] = fracIndexes[a[i]];
+                if (a[i] == axis) {
+                    memberAxis = i;
+                }
+            }
+            if (memberAxis >= 0) {
+                tables[k].interpolate(selection, values, offsets[k], memberAxis, scale, derivatives, offsets[k], workspace);
+            } else {
+                // the member does not depend on the coordinate
+                tables[k].interpolate(selection, values, offsets[k], workspace);
+                Arrays.fill(derivatives, offsets[k], offsets[k] + tables[k].getVectorLength(), 0.0);
+            }
+        }
+    }
+
+    private FracIndex[] getFracIndexes(double[] coordinates, FracIndex[] leading, LookupWorkspace workspace) {
+        final int leadingCount = leading != null ? leading.length : 0;
+        if (leadingCount > dimensions.length) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "leading.length = {0} is greater than the number of dimensions {1}",
+                    leadingCount, dimensions.length));
+        }
+        final FracIndex[] fracIndexes = workspace.getFracIndexes(dimensions.length);
+        for (int i = 0; i < leadingCount; ++i) {
+            fracIndexes[i].i = leading[i].i;
+            fracIndexes[i].f = leading[i].f;
+        }
+        for (int i = leadingCount; i < dimensions.length; ++i) {
+            VectorLookupTable.setFracIndex(dimensions[i], coordinates[i],
+                                           workspace.findInterval(dimensions[i], coordinates[i]), fracIndexes[i]);
+        }
+        return fracIndexes;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
 
+
 /**
  * The class {@code IntervalPartition} is a representation of an interval partition,
  * i.e. a strictly monotonous sequence of real numbers.
@@ -25,8 +26,29 @@ package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
  */
 public class IntervalPartition {
 
+    /**
+     * The relative tolerance used for detecting equidistant partitions.
+     */
+    private static final double UNIFORMITY_TOLERANCE = 1.0E-3;
+    /**
+     * The number of acceleration buckets per interval used for non-equidistant partitions.
+     */
+    private static final int BUCKETS_PER_INTERVAL = 4;
     private final double[] sequence;
     private final int monotonicity;
+    /**
+     * The sequence multiplied by the sign of the monotonicity, so the keys are strictly increasing.
+     */
+    private final double[] keys;
+    /**
+     * Maps a coordinate key onto its acceleration bucket, i.e. {@code (key - keys[0]) * bucketScale}.
+     */
+    private final double bucketScale;
+    /**
+     * The index of the interval containing the lower bound of each bucket, or {@code null}
+     * if the partition is equidistant and the bucket index is the interval index.
+     */
+    private final int[] buckets;
 
     /**
      * Constructs an interval partition from a sequence of real numbers.
@@ -64,6 +86,27 @@ public class IntervalPartition {
 
         this.sequence = new double[sequence.getLength()];
         sequence.getValues(0, this.sequence);
+
+        final int n = this.sequence.length;
+        keys = new double[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = monotonicity > 0 ? this.sequence[i] : -this.sequence[i];
+        }
+        if (isUniform(keys)) {
+            bucketScale = (n - 1) / (keys[n - 1] - keys[0]);
+            buckets = null;
+        } else {
+            final int bucketCount = BUCKETS_PER_INTERVAL * (n - 1);
+            bucketScale = bucketCount / (keys[n - 1] - keys[0]);
+            buckets = new int[bucketCount];
+            for (int b = 0, i = 0; b < bucketCount; b++) {
+                final double lowerBound = keys[0] + b / bucketScale;
+                while (i < n - 2 && keys[i + 1] <= lowerBound) {
+                    i++;
+                }
+                buckets[b] = i;
+            }
+        }
     }
 
     /**
@@ -194,6 +237,128 @@ public class IntervalPartition {
         return mesh;
     }
 
+    /**
+     * Returns {@code true} if the numbers in the partition are equidistant, within
+     * a small relative tolerance. The interval of an equidistant partition containing
+     * a given coordinate is found by arithmetic alone, see {@link #findInterval(double)}.
+     *
+     * @return {@code true} if the partition is equidistant, {@code false} otherwise.
+     */
+    public final boolean isUniform() {
+        return buckets == null;
+    }
+
+    /**
+     * Returns the index of the interval containing a given coordinate value, i.e. the
+     * index of the maximum partition member which is less than or equal to (for a
+     * decreasing partition: greater than or equal to) the coordinate value.
+     * <p>
+     * The result is the same as that of a binary search, but is found in constant
+     * time. For an equidistant partition the index is computed arithmetically, else
+     * a precomputed table maps the coordinate onto a start interval. Either guess is
+     * corrected by comparison with the adjacent partition members.
+     *
+     * @param coordinate the coordinate value.
+     *
+     * @return the interval index, which is in the range {@code [0, getCardinal() - 2]}.
+     *         Coordinates outside the partition are mapped onto the first or last interval.
+     */
+    public final int findInterval(final double coordinate) {
+        final int last = keys.length - 2;
+        final double key = monotonicity > 0 ? coordinate : -coordinate;
+        if (Double.isNaN(key)) {
+            return last;
+        }
+        final double position = (key - keys[0]) * bucketScale;
+        int i;
+        if (position <= 0.0) {
+            return 0;
+        } else if (buckets == null) {
+            i = position >= last ? last : (int) position;
+        } else {
+            i = position >= buckets.length ? last : buckets[(int) position];
+        }
+        while (i < last && keys[i + 1] <= key) {
+            i++;
+        }
+        while (i > 0 && key < keys[i]) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the interval containing a given coordinate value, starting the
+     * search from a guessed interval. If the guess is wrong, the search hunts outward from
+     * the guess with doubling steps until the coordinate is bracketed, and then bisects the
+     * bracket (see Press et al., Numerical Recipes, Sect. 3.4). When coordinates change
+     * smoothly, the guess is usually right or off by one, so the search takes constant time.
+     * <p>
+     * The result is the same as the result of {@link #findInterval(double)}.
+     *
+     * @param coordinate the coordinate value.
+     * @param guess      the guessed interval index, e.g. the result of a previous search.
+     *                   An index outside the range {@code [0, getCardinal() - 2]} is ignored.
+     *
+     * @return the interval index, which is in the range {@code [0, getCardinal() - 2]}.
+     */
+    public final int findInterval(final double coordinate, final int guess) {
+        final int last = keys.length - 2;
+        if (guess < 0 || guess > last) {
+            return findInterval(coordinate);
+        }
+        final double key = monotonicity > 0 ? coordinate : -coordinate;
+        if (Double.isNaN(key)) {
+            return last;
+        }
+        // invariant: keys[lo] <= key, and key < keys[hi] unless hi = last + 1
+        int lo;
+        int hi;
+        if (key < keys[guess]) {
+            if (guess == 0) {
+                return 0;
+            }
+            hi = guess;
+            lo = guess - 1;
+            for (int step = 2; lo > 0 && key < keys[lo]; step <<= 1) {
+                hi = lo;
+                lo = Math.max(guess - step, 0);
+            }
+            if (key < keys[lo]) {
+                return 0;
+            }
+        } else {
+            if (guess == last || key < keys[guess + 1]) {
+                return guess;
+            }
+            lo = guess + 1;
+            hi = lo + 1;
+            for (int step = 2; hi <= last && keys[hi] <= key; step <<= 1) {
+                lo = hi;
+                hi = Math.min(guess + 1 + step, last + 1);
+            }
+        }
+        while (hi > lo + 1) {
+            final int m = (lo + hi) >>> 1;
+            if (key < keys[m]) {
+                hi = m;
+            } else {
+                lo = m;
+            }
+        }
+        return Math.min(lo, last);
+    }
+
+    private static boolean isUniform(final double[] keys) {
+        final double step = (keys[keys.length - 1] - keys[0]) / (keys.length - 1);
+        for (int i = 1; i < keys.length; ++i) {
+            if (Math.abs(keys[i] - keys[i - 1] - step) > UNIFORMITY_TOLERANCE * step) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static int ensureStrictMonotonicity(final Array sequence) throws IllegalArgumentException {
         int monotonicity = 0;
         for (int i = 1; i < sequence.getLength(); ++i) {
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+/**
+ * Scratch memory used by the allocation-free lookup methods of {@link MultivariateLookupTable}.
+ * <p>
+ * A workspace grows on demand, so a single instance can serve lookup tables of any
+ * dimension and vector length. Once it has grown to the size required by the tables
+ * it is used with, lookups do not allocate any memory.
+ * <p>
+ * Workspaces are not thread safe. Each thread must use its own instance, e.g. by
+ * means of a {@link ThreadLocal}.
+ * <p>
+ * A workspace created with {@link Search#HUNT} remembers the last interval found
+ * for each dimension, and starts the next search from there. This pays off when
+ * consecutive lookups are coherent, e.g. for adjacent pixels. Statistics on how
+ * often the remembered interval is hit are recorded. The intervals are remembered
+ * in a fixed number of slots, one for each table axis, i.e. interval partition, which
+ * are reassigned when the workspace is used with more partitions than it has slots.
+ */
+public final class LookupWorkspace {
+
+    /**
+     * The search modes used for finding the intervals containing the lookup coordinates.
+     */
+    public enum Search {
+        /**
+         * Each search is independent of previous searches, see {@link IntervalPartition#findInterval(double)}.
+         */
+        DIRECT,
+        /**
+         * Each search starts from the interval found by the previous search in the same
+         * dimension, see {@link IntervalPartition#findInterval(double, int)}.
+         */
+        HUNT
+    }
+
+    /**
+     * The number of slots remembering the last intervals found, a power of two.
+     */
+    private static final int SLOT_COUNT = 64;
+    /**
+     * The number of slots probed for the slot of a partition, starting at the slot given by its identity hash.
+     */
+    private static final int PROBE_COUNT = 4;
+
+    private final Search search;
+    private final IntervalPartition[] slotPartitions;
+    private final int[] slotIntervals;
+    private long hitCount;
+    private long adjacentCount;
+    private long missCount;
+
+    private double[][] coordinates = new double[0][];
+    private FracIndex[] fracIndexes = new FracIndex[0];
+    private FracIndex[] fracIndexSelection = new FracIndex[0];
+    private double[][] slices = new double[0][0];
+    private double[] corners = new double[0];
+    private float[] floatCorners = new float[0];
+    private int[] vertexOffsets = new int[0];
+    private double[] buffer = new double[0];
+    private double[] values = new double[0];
+    private double[] derivatives = new double[0];
+    private double[][] matrix = new double[0][0];
+
+    /**
+     * Creates a new workspace using the direct search mode.
+     */
+    public LookupWorkspace() {
+        this(Search.DIRECT);
+    }
+
+    /**
+     * Creates a new workspace.
+     *
+     * @param search the search mode.
+     */
+    public LookupWorkspace(Search search) {
+        if (search == null) {
+            throw new IllegalArgumentException("search == null");
+        }
+        this.search = search;
+        this.slotPartitions = search == Search.HUNT ? new IntervalPartition[SLOT_COUNT] : null;
+        this.slotIntervals = search == Search.HUNT ? new int[SLOT_COUNT] : null;
+    }
+
+    /**
+     * Returns the search mode.
+     *
+     * @return the search mode.
+     */
+    public Search getSearch() {
+        return search;
+    }
+
+    /**
+     * Returns the number of hunting searches which found the same interval as the
+     * previous search in the same dimension.
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of hunting searches which found an interval adjacent to the
+     * interval found by the previous search in the same dimension.
+     *
+     * @return the number of adjacent hits.
+     */
+    public long getAdjacentCount() {
+        return adjacentCount;
+    }
+
+    /**
+     * Returns the number of hunting searches which found neither the same nor an adjacent
+     * interval, including the first search in each dimension.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns a coordinate array of the given length, which may be used for
+     * passing lookup coordinates without allocating a new array for each lookup.
+     * The same array is returned for the same length.
+     *
+     * @param dimensionCount the number of dimensions of the lookup table.
+     * @return the coordinate array.
+     */
+    public double[] getCoordinates(int dimensionCount) {
+        if (dimensionCount >= coordinates.length) {
+            final double[][] grown = new double[dimensionCount + 1][];
+            System.arraycopy(coordinates, 0, grown, 0, coordinates.length);
+            coordinates = grown;
+        }
+        if (coordinates[dimensionCount] == null) {
+            coordinates[dimensionCount] = new double[dimensionCount];
+        }
+        return coordinates[dimensionCount];
+    }
+
+    /**
+     * Returns an array of at least the given length, which may be used for receiving the
+     * value vector of a lookup without allocating a new array for each lookup. The same
+     * array is returned until a greater length is requested. The array is never used by
+     * the lookup tables themselves.
+     *
+     * @param length the minimum length of the array.
+     * @return the value array.
+     */
+    public double[] getValues(int length) {
+        if (values.length < length) {
+            values = new double[length];
+        }
+        return values;
+    }
+
+    /**
+     * Returns an array of at least the given length, which may be used for receiving the
+     * partial derivatives of a lookup without allocating a new array for each lookup. The
+     * array is distinct from the array returned by {@link #getValues(int)}.
+     *
+     * @param length the minimum length of the array.
+     * @return the derivative array.
+     */
+    public double[] getDerivatives(int length) {
+        if (derivatives.length < length) {
+            derivatives = new double[length];
+        }
+        return derivatives;
+    }
+
+    /**
+     * Computes the fractional index of a coordinate with respect to an interval partition, see
+     * {@link VectorLookupTable#computeFracIndex(IntervalPartition, double, FracIndex)}, using the
+     * search mode of this workspace. Callers may compute the fractional indexes of dimensions shared
+     * by several tables once, see {@link FusedLookupTable#getValues(double[], FracIndex[], double[], LookupWorkspace)}.
+     *
+     * @param partition  the interval partition.
+     * @param coordinate the coordinate.
+     * @param fracIndex  the fractional index (on return).
+     */
+    public void computeFracIndex(IntervalPartition partition, double coordinate, FracIndex fracIndex) {
+        VectorLookupTable.setFracIndex(partition, coordinate, findInterval(partition, coordinate), fracIndex);
+    }
+
+    int findInterval(IntervalPartition partition, double coordinate) {
+        if (search == Search.DIRECT) {
+            return partition.findInterval(coordinate);
+        }
+        final int slot = getSlot(partition);
+        final int guess = slotIntervals[slot];
+        final int interval = partition.findInterval(coordinate, guess);
+        if (interval == guess) {
+            hitCount++;
+        } else if (guess >= 0 && Math.abs(interval - guess) == 1) {
+            adjacentCount++;
+        } else {
+            missCount++;
+        }
+        slotIntervals[slot] = interval;
+        return interval;
+    }
+
+    /**
+     * Returns the slot remembering the last interval found in a partition. If the partition has
+     * no slot, the first free slot probed is assigned to it, or the first slot probed if none is
+     * free, and the last interval is unknown.
+     */
+    private int getSlot(IntervalPartition partition) {
+        final int first = System.identityHashCode(partition) & (SLOT_COUNT - 1);
+        int slot = first;
+        for (int p = 0; p < PROBE_COUNT; p++) {
+            final int s = (first + p) & (SLOT_COUNT - 1);
+            final IntervalPartition owner = slotPartitions[s];
+            if (owner == partition) {
+                return s;
+            }
+            if (owner == null) {
+                slot = s;
+                break;
+            }
+        }
+        slotPartitions[slot] = partition;
+        slotIntervals[slot] = -1;
+        return slot;
+    }
+
+    FracIndex[] getFracIndexes(int dimensionCount) {
+        if (fracIndexes.length < dimensionCount) {
+            fracIndexes = FracIndex.createArray(dimensionCount);
+        }
+        return fracIndexes;
+    }
+
+    /**
+     * Returns an array for referencing a selection of the fractional indexes
+     * returned by {@link #getFracIndexes(int)}. The elements are set by the caller.
+     */
+    FracIndex[] getFracIndexSelection(int dimensionCount) {
+        if (fracIndexSelection.length < dimensionCount) {
+            fracIndexSelection = new FracIndex[dimensionCount];
+        }
+        return fracIndexSelection;
+    }
+
+    double[][] getSlices(int sliceCount, int vectorLength) {
+        final int sliceLength = slices.length == 0 ? 0 : slices[0].length;
+        if (slices.length < sliceCount || sliceLength < vectorLength) {
+            slices = new double[Math.max(sliceCount, slices.length)][Math.max(vectorLength, sliceLength)];
+        }
+        return slices;
+    }
+
+    double[] getCorners(int length) {
+        if (corners.length < length) {
+            corners = new double[length];
+        }
+        return corners;
+    }
+
+    float[] getFloatCorners(int length) {
+        if (floatCorners.length < length) {
+            floatCorners = new float[length];
+        }
+        return floatCorners;
+    }
+
+    int[] getVertexOffsets(int vertexCount) {
+        if (vertexOffsets.length < vertexCount) {
+            vertexOffsets = new int[vertexCount];
+        }
+        return vertexOffsets;
+    }
+
+    double[][] getMatrix(int rowCount, int columnCount) {
+        final int length = matrix.length == 0 ? 0 : matrix[0].length;
+        if (matrix.length < rowCount || length < columnCount) {
+            matrix = new double[Math.max(rowCount, matrix.length)][Math.max(columnCount, length)];
+        }
+        return matrix;
+    }
+
+    double[] getBuffer(int length) {
+        if (buffer.length < length) {
+            buffer = new double[length];
+        }
+        return buffer;
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
 
+import java.util.Arrays;
+
 public interface MultivariateLookupTable {
     int getDimensionCount();
 
@@ -23,5 +25,109 @@ public interface MultivariateLookupTable {
 
     IntervalPartition getDimension(int i);
 
+    /**
+     * Returns the length of the value vector returned by a lookup.
+     *
+     * @return the length of the value vector.
+     */
+    int getVectorLength();
+
     double[] getValues(double... coordinates) throws IllegalArgumentException;
+
+    /**
+     * Returns an estimate of the memory occupied by the lookup values in bytes.
+     * <p>
+     * The default implementation returns zero.
+     *
+     * @return the memory footprint in bytes.
+     */
+    default long getMemoryFootprint() {
+        return 0L;
+    }
+
+    /**
+     * Interpolates the value vector for the given coordinates into a caller-supplied array.
+     * Apart from growing the workspace on first use, this method does not allocate memory.
+     *
+     * @param coordinates the coordinates of the lookup point.
+     * @param values      the array receiving the interpolated value vector. Its length must
+     *                    not be less than the {@link #getVectorLength() vector length}.
+     * @param workspace   the workspace used for intermediate results. Must not be shared
+     *                    between threads.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is
+     *                                  not equal to the number of dimensions associated
+     *                                  with the lookup table.
+     */
+    void getValues(double[] coordinates, double[] values, LookupWorkspace workspace) throws IllegalArgumentException;
+
+    /**
+     * Interpolates the value vectors for a batch of lookup points, e.g. the pixels of a tile
+     * row, into a caller-supplied matrix. The coordinates are passed as a structure of arrays,
+     * i.e. {@code coordinates[i][p]} is the coordinate of point {@code p} in dimension {@code i}.
+     * <p>
+     * The default implementation performs one lookup per point. Implementations are
+     * encouraged to override this method.
+     *
+     * @param coordinates the coordinates of the lookup points, one array per dimension.
+     * @param count       the number of lookup points.
+     * @param values      the matrix receiving the interpolated value vectors, one row per point.
+     * @param workspace   the workspace used for intermediate results. Must not be shared
+     *                    between threads.
+     * @throws IllegalArgumentException if the number of coordinate arrays is not equal to the
+     *                                  number of dimensions associated with the lookup table,
+     *                                  or any coordinate array or the value matrix has less than
+     *                                  {@code count} elements.
+     */
+    default void getValues(double[][] coordinates, int count, double[][] values, LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalBatch(coordinates, count, values, getDimensionCount());
+        final double[] point = workspace.getCoordinates(coordinates.length);
+        for (int p = 0; p < count; p++) {
+            for (int i = 0; i < coordinates.length; i++) {
+                point[i] = coordinates[i][p];
+            }
+            getValues(point, values[p], workspace);
+        }
+    }
+
+    /**
+     * Interpolates the value vector for the given coordinates and its partial derivative with
+     * respect to the coordinate of a given dimension into caller-supplied arrays. The derivative
+     * is the exact slope of the piecewise multilinear interpolant. Where the coordinate is outside
+     * the range of the dimension, the interpolant is constant and the derivative is zero.
+     * <p>
+     * The default implementation performs two additional lookups at the vertices bracketing
+     * the coordinate. Implementations are encouraged to override this method.
+     *
+     * @param coordinates the coordinates of the lookup point.
+     * @param values      the array receiving the interpolated value vector.
+     * @param axis        the index of the dimension of the derivative.
+     * @param derivatives the array receiving the partial derivatives of the value vector.
+     * @param workspace   the workspace used for intermediate results. Must not be shared
+     *                    between threads.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is not
+     *                                  equal to the number of dimensions associated with the
+     *                                  lookup table, or the axis is not a dimension index.
+     */
+    default void getValues(double[] coordinates, double[] values, int axis, double[] derivatives,
+                           LookupWorkspace workspace) throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalAxis(axis, getDimensionCount());
+        getValues(coordinates, values, workspace);
+        final IntervalPartition partition = getDimension(axis);
+        final double coordinate = coordinates[axis];
+        final int lo = partition.findInterval(coordinate);
+        final double scale = VectorLookupTable.getSlopeScale(partition, coordinate, lo);
+        if (scale == 0.0) {
+            Arrays.fill(derivatives, 0, getVectorLength(), 0.0);
+            return;
+        }
+        final double[] vertex = coordinates.clone();
+        vertex[axis] = partition.get(lo);
+        final double[] lower = getValues(vertex);
+        vertex[axis] = partition.get(lo + 1);
+        final double[] upper = getValues(vertex);
+        for (int k = 0; k < lower.length; k++) {
+            derivatives[k] = scale * (upper[k] - lower[k]);
+        }
+    }
 }
@@ -0,0 +1,650 @@
+/*
+ * Copyright (C) 2021 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/.
+ */
+
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import java.io.PrintWriter;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A piecewise polynomial approximation of a lookup table, which may be used as a surrogate
+ * for the lookup table.
+ * <p>
+ * The domain of the lookup table is recursively bisected at its vertices into patches. On each
+ * patch, each element of the value vector is approximated by a sum of products of Chebyshev
+ * polynomials of the coordinates, with a total degree not exceeding a given degree. The
+ * coefficients are fitted to the values at the vertices of the patch by least squares, and a
+ * patch is bisected further until the approximation error at the vertices, the cell centres and
+ * a number of random points of the patch does not exceed a given bound. The bound is verified at
+ * these points, and the lookup table interpolates linearly between its vertices, so the error
+ * elsewhere exceeds the bound only where the approximation deviates between sample points.
+ * <p>
+ * Coordinates outside the range of a dimension are clamped to the range, like for
+ * {@link VectorLookupTable}. Instances are immutable and thread safe.
+ */
+public final class PolynomialSurrogate implements MultivariateLookupTable {
+
+    // the number of random points the error is checked at on each patch, besides vertices and cell centres
+    private static final int RANDOM_POINT_COUNT = 64;
+
+    private final IntervalPartition[] dimensions;
+    private final int vectorLength;
+    private final int degree;
+    private final Node root;
+    private final int patchCount;
+    private final int coefficientCount;
+    private final double maxError;
+
+    private PolynomialSurrogate(IntervalPartition[] dimensions, int vectorLength, int degree, Node root,
+                                int patchCount, int coefficientCount, double maxError) {
+        this.dimensions = dimensions;
+        this.vectorLength = vectorLength;
+        this.degree = degree;
+        this.root = root;
+        this.patchCount = patchCount;
+        this.coefficientCount = coefficientCount;
+        this.maxError = maxError;
+    }
+
+    /**
+     * Fits a piecewise polynomial approximation to a lookup table.
+     *
+     * @param table         the lookup table.
+     * @param degree        the maximum total degree of the polynomials.
+     * @param maxError      the maximum absolute error permitted at the vertices, the cell centres and
+     *                      the random points of each patch.
+     * @param maxPatchCount the maximum number of patches.
+     * @return the approximation.
+     * @throws IllegalArgumentException if the table has no dimensions, if the degree or the number
+     *                                  of patches is less than one, if the error bound is not positive,
+     *                                  or if the error bound cannot be met with the given number of
+     *                                  patches.
+     */
+    public static PolynomialSurrogate fit(MultivariateLookupTable table, int degree, double maxError, int maxPatchCount)
+            throws IllegalArgumentException {
+        if (degree < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("degree = {0} is less than one", degree));
+        }
+        if (!(maxError > 0.0)) {
+            throw new IllegalArgumentException(MessageFormat.format("maxError = {0} is not positive", maxError));
+        }
+        if (maxPatchCount < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("maxPatchCount = {0} is less than one", maxPatchCount));
+        }
+        VectorLookupTable.ensureLegalArray(table.getDimensions());
+        final Fitter fitter = new Fitter(table, degree, maxError, maxPatchCount);
+        final Node root = fitter.fit();
+        return new PolynomialSurrogate(table.getDimensions(), table.getVectorLength(), degree, root,
+                                       fitter.patchCount, fitter.coefficientCount, fitter.foundError);
+    }
+
+    @Override
+    public int getDimensionCount() {
+        return dimensions.length;
+    }
+
+    @Override
+    public IntervalPartition[] getDimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public IntervalPartition getDimension(int i) {
+        return dimensions[i];
+    }
+
+    @Override
+    public int getVectorLength() {
+        return vectorLength;
+    }
+
+    /**
+     * Returns the maximum total degree of the polynomials.
+     *
+     * @return the maximum total degree.
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * Returns the number of patches.
+     *
+     * @return the number of patches.
+     */
+    public int getPatchCount() {
+        return patchCount;
+    }
+
+    /**
+     * Returns the total number of polynomial coefficients of all patches and vector elements.
+     *
+     * @return the number of coefficients.
+     */
+    public int getCoefficientCount() {
+        return coefficientCount;
+    }
+
+    /**
+     * Returns the maximum absolute error of the approximation at the vertices, the cell centres and
+     * the random points of the patches, with respect to the lookup table it was fitted to. The error
+     * does not exceed the bound used for fitting.
+     *
+     * @return the maximum absolute error.
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    @Override
+    public double[] getValues(double... coordinates) throws IllegalArgumentException {
+        final double[] values = new double[vectorLength];
+        getValues(coordinates, values, new LookupWorkspace());
+        return values;
+    }
+
+    @Override
+    public void getValues(double[] coordinates, double[] values, LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(coordinates, dimensions.length);
+        ensureLegalLength(values);
+        final Patch patch = findPatch(coordinates);
+        final double[][] polynomials = workspace.getMatrix(dimensions.length, degree + 1);
+        patch.computePolynomials(coordinates, polynomials);
+        patch.evaluate(polynomials, values);
+    }
+
+    /**
+     * Evaluates the approximation for the given coordinates and its partial derivative with
+     * respect to the coordinate of a given dimension into caller-supplied arrays. The derivative
+     * is the exact derivative of the polynomial of the patch containing the coordinates. Where
+     * the coordinate is outside the range of the dimension, the derivative is zero.
+     */
+    @Override
+    public void getValues(double[] coordinates, double[] values, int axis, double[] derivatives,
+                          LookupWorkspace workspace) throws IllegalArgumentException {
+        VectorLookupTable.ensureLegalArray(coordinates, dimensions.length);
+        VectorLookupTable.ensureLegalAxis(axis, dimensions.length);
+        ensureLegalLength(values);
+        ensureLegalLength(derivatives);
+        final Patch patch = findPatch(coordinates);
+        final double[][] polynomials = workspace.getMatrix(dimensions.length + 1, degree + 1);
+        patch.computePolynomials(coordinates, polynomials);
+        final IntervalPartition partition = dimensions[axis];
+        final double coordinate = coordinates[axis];
+        final boolean inside = coordinate >= partition.getMin() && coordinate <= partition.getMax();
+        patch.computeSlopes(axis, inside ? patch.scales[axis] : 0.0, polynomials);
+        patch.evaluate(polynomials, values, axis, derivatives);
+    }
+
+    /**
+     * Writes the patches and their polynomial coefficients in a human-readable format. For each
+     * patch, the ranges of the coordinates are written, followed by one line per polynomial term
+     * giving the degrees of the Chebyshev polynomials of the normalized coordinates, and the
+     * coefficients of the term for all elements of the value vector.
+     *
+     * @param writer the writer.
+     */
+    public void writeCoefficients(PrintWriter writer) {
+        writeCoefficients(root, writer, new int[]{0});
+    }
+
+    private void writeCoefficients(Node node, PrintWriter writer, int[] count) {
+        if (node.patch == null) {
+            writeCoefficients(node.lower, writer, count);
+            writeCoefficients(node.upper, writer, count);
+            return;
+        }
+        final Patch patch = node.patch;
+        final int n = dimensions.length;
+        writer.print("patch " + count[0]++);
+        for (int i = 0; i < n; i++) {
+            writer.printf(Locale.ENGLISH, " [%s, %s]", dimensions[i].get(patch.lo[i]), dimensions[i].get(patch.hi[i]));
+        }
+        writer.println();
+        for (int j = 0; j < patch.termCount; j++) {
+            writer.print(' ');
+            for (int i = 0; i < n; i++) {
+                writer.print(" " + patch.exponents[j * n + i]);
+            }
+            writer.print(" :");
+            for (int k = 0; k < vectorLength; k++) {
+                writer.printf(Locale.ENGLISH, " %.17g", patch.coefficients[j * vectorLength + k]);
+            }
+            writer.println();
+        }
+    }
+
+    private Patch findPatch(double[] coordinates) {
+        Node node = root;
+        while (node.patch == null) {
+            node = (coordinates[node.axis] - node.split) * node.monotonicity < 0.0 ? node.lower : node.upper;
+        }
+        return node.patch;
+    }
+
+    private void ensureLegalLength(double[] values) throws IllegalArgumentException {
+        if (values.length < vectorLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "values.length = {0} is less than the vector length {1}", values.length, vectorLength));
+        }
+    }
+
+    private static boolean next(int[] index, int[] lo, int[] hi) {
+        for (int i = index.length; i-- > 0; ) {
+            if (index[i] < hi[i]) {
+                index[i]++;
+                return true;
+            }
+            index[i] = lo[i];
+        }
+        return false;
+    }
+
+    /**
+     * A node of the binary tree partitioning the domain into patches. A node is either a leaf,
+     * which holds a patch, or is split at a vertex of one dimension.
+     */
+    private static final class Node {
+
+        final Patch patch;
+        final int axis;
+        final double split;
+        final int monotonicity;
+        final Node lower;
+        final Node upper;
+
+        Node(Patch patch) {
+            this.patch = patch;
+            this.axis = -1;
+            this.split = 0.0;
+            this.monotonicity = 0;
+            this.lower = null;
+            this.upper = null;
+        }
+
+        Node(int axis, double split, int monotonicity, Node lower, Node upper) {
+            this.patch = null;
+            this.axis = axis;
+            this.split = split;
+            this.monotonicity = monotonicity;
+            this.lower = lower;
+            this.upper = upper;
+        }
+    }
+
+    /**
+     * The polynomial approximation on a patch, which is the box spanned by a range of vertex
+     * indexes in each dimension. The coordinates are normalized to [-1, 1] on the patch.
+     */
+    private static final class Patch {
+
+        final int[] lo;
+        final int[] hi;
+        final double[] centers;
+        final double[] scales;
+        final int[] degrees;
+        final int termCount;
+        final int[] exponents;
+        final double[] coefficients;
+        final int vectorLength;
+
+        Patch(IntervalPartition[] dimensions, int[] lo, int[] hi, int degree, int vectorLength) {
+            final int n = dimensions.length;
+            this.lo = lo.clone();
+            this.hi = hi.clone();
+            this.centers = new double[n];
+            this.scales = new double[n];
+            this.degrees = new int[n];
+            for (int i = 0; i < n; i++) {
+                final double a = dimensions[i].get(lo[i]);
+                final double b = dimensions[i].get(hi[i]);
+                centers[i] = 0.5 * (a + b);
+                scales[i] = hi[i] > lo[i] ? 2.0 / (b - a) : 0.0;
+                // the vertices of the patch determine a polynomial of this degree uniquely
+                degrees[i] = Math.min(degree, hi[i] - lo[i]);
+            }
+            this.exponents = createExponents(degrees, degree);
+            this.termCount = exponents.length / n;
+            this.coefficients = new double[termCount * vectorLength];
+            this.vectorLength = vectorLength;
+        }
+
+        private static int[] createExponents(int[] degrees, int degree) {
+            final int n = degrees.length;
+            final int[] zero = new int[n];
+            final int[] exponent = new int[n];
+            int[] exponents = new int[n * 16];
+            int count = 0;
+            do {
+                int sum = 0;
+                for (int e : exponent) {
+                    sum += e;
+                }
+                if (sum <= degree) {
+                    if ((count + 1) * n > exponents.length) {
+                        exponents = Arrays.copyOf(exponents, 2 * exponents.length);
+                    }
+                    System.arraycopy(exponent, 0, exponents, count * n, n);
+                    count++;
+                }
+            } while (next(exponent, zero, degrees));
+            return Arrays.copyOf(exponents, count * n);
+        }
+
+        void computePolynomials(double[] coordinates, double[][] polynomials) {
+            for (int i = 0; i < degrees.length; i++) {
+                final double t = Math.max(-1.0, Math.min(1.0, (coordinates[i] - centers[i]) * scales[i]));
+                final double[] p = polynomials[i];
+                p[0] = 1.0;
+                if (degrees[i] > 0) {
+                    p[1] = t;
+                }
+                for (int k = 2; k <= degrees[i]; k++) {
+                    p[k] = 2.0 * t * p[k - 1] - p[k - 2];
+                }
+            }
+        }
+
+        /**
+         * Computes the derivatives of the Chebyshev polynomials of the given dimension into the
+         * row following the rows of the polynomials, scaled by the given factor.
+         */
+        void computeSlopes(int axis, double scale, double[][] polynomials) {
+            final double[] p = polynomials[axis];
+            final double[] s = polynomials[degrees.length];
+            s[0] = 0.0;
+            if (degrees[axis] > 0) {
+                s[1] = scale;
+            }
+            for (int k = 2; k <= degrees[axis]; k++) {
+                s[k] = 2.0 * (scale * p[k - 1] + p[1] * s[k - 1]) - s[k - 2];
+            }
+        }
+
+        void evaluate(double[][] polynomials, double[] values) {
+            final int n = degrees.length;
+            Arrays.fill(values, 0, vectorLength, 0.0);
+            for (int j = 0, e = 0, c = 0; j < termCount; j++, c += vectorLength) {
+                double b = 1.0;
+                for (int i = 0; i < n; i++, e++) {
+                    b *= polynomials[i][exponents[e]];
+                }
+                for (int k = 0; k < vectorLength; k++) {
+                    values[k] += b * coefficients[c + k];
+                }
+            }
+        }
+
+        void evaluate(double[][] polynomials, double[] values, int axis, double[] derivatives) {
+            final int n = degrees.length;
+            Arrays.fill(values, 0, vectorLength, 0.0);
+            Arrays.fill(derivatives, 0, vectorLength, 0.0);
+            for (int j = 0, c = 0; j < termCount; j++, c += vectorLength) {
+                double b = 1.0;
+                double d = 1.0;
+                for (int i = 0; i < n; i++) {
+                    final int e = exponents[j * n + i];
+                    b *= polynomials[i][e];
+                    d *= i == axis ? polynomials[n][e] : polynomials[i][e];
+                }
+                for (int k = 0; k < vectorLength; k++) {
+                    values[k] += b * coefficients[c + k];
+                    derivatives[k] += d * coefficients[c + k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Fits the patches. The values of the lookup table at the vertices, cell centres and random points
+     * of a patch are looked up whenever the patch is fitted or validated, so no copy of the lookup table is
+     * held, at the expense of looking up the values again for each level of bisection.
+     */
+    private static final class Fitter {
+
+        final MultivariateLookupTable table;
+        final IntervalPartition[] dimensions;
+        final int vectorLength;
+        final int degree;
+        final double maxError;
+        final int maxPatchCount;
+
+        final int[] cellCardinals;
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expected;
+        // the random points are drawn from a fixed seed, so fitting is reproducible
+        final Random random = new Random(5489);
+
+        int patchCount;
+        int coefficientCount;
+        double foundError;
+
+        Fitter(MultivariateLookupTable table, int degree, double maxError, int maxPatchCount) {
+            this.table = table;
+            this.dimensions = table.getDimensions();
+            this.vectorLength = table.getVectorLength();
+            this.degree = degree;
+            this.maxError = maxError;
+            this.maxPatchCount = maxPatchCount;
+            this.expected = new double[vectorLength];
+
+            final int n = dimensions.length;
+            cellCardinals = new int[n];
+            for (int i = 0; i < n; i++) {
+                cellCardinals[i] = Math.max(dimensions[i].getCardinal() - 1, 1);
+            }
+        }
+
+        Node fit() {
+            final int n = dimensions.length;
+            final int[] lo = new int[n];
+            final int[] hi = new int[n];
+            for (int i = 0; i < n; i++) {
+                hi[i] = dimensions[i].getCardinal() - 1;
+            }
+            return fit(lo, hi);
+        }
+
+        private Node fit(int[] lo, int[] hi) {
+            final Patch patch = new Patch(dimensions, lo, hi, degree, vectorLength);
+            fitCoefficients(patch);
+            final double error = computeError(patch);
+            if (error <= maxError) {
+                if (++patchCount > maxPatchCount) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "cannot approximate the table with error {0} by {1} patches", maxError, maxPatchCount));
+                }
+                coefficientCount += patch.coefficients.length;
+                foundError = Math.max(foundError, error);
+                return new Node(patch);
+            }
+
+            int axis = 0;
+            for (int i = 1; i < lo.length; i++) {
+                if (hi[i] - lo[i] > hi[axis] - lo[axis]) {
+                    axis = i;
+                }
+            }
+            if (hi[axis] - lo[axis] < 2) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "cannot approximate the table with error {0}, the error of a single cell is {1}", maxError, error));
+            }
+            final int mid = (lo[axis] + hi[axis]) >>> 1;
+            final int[] lowerHi = hi.clone();
+            lowerHi[axis] = mid;
+            final int[] upperLo = lo.clone();
+            upperLo[axis] = mid;
+            final Node lower = fit(lo, lowerHi);
+            final Node upper = fit(upperLo, hi);
+            return new Node(axis, dimensions[axis].get(mid), dimensions[axis].getMonotonicity(), lower, upper);
+        }
+
+        /**
+         * Fits the coefficients of a patch to the values at its vertices by solving the normal
+         * equations of the least squares problem.
+         */
+        private void fitCoefficients(Patch patch) {
+            final int n = dimensions.length;
+            final int m = patch.termCount;
+            final double[] normal = new double[m * m];
+            final double[] rhs = new double[m * vectorLength];
+            final double[] basis = new double[m];
+            final double[][] polynomials = new double[n][degree + 1];
+            final double[] coordinates = new double[n];
+            final int[] index = patch.lo.clone();
+            do {
+                for (int i = 0; i < n; i++) {
+                    coordinates[i] = dimensions[i].get(index[i]);
+                }
+                patch.computePolynomials(coordinates, polynomials);
+                for (int j = 0, e = 0; j < m; j++) {
+                    double b = 1.0;
+                    for (int i = 0; i < n; i++, e++) {
+                        b *= polynomials[i][patch.exponents[e]];
+                    }
+                    basis[j] = b;
+                }
+                table.getValues(coordinates, expected, workspace);
+                for (int j = 0; j < m; j++) {
+                    final double b = basis[j];
+                    for (int l = j; l < m; l++) {
+                        normal[j * m + l] += b * basis[l];
+                    }
+                    for (int k = 0; k < vectorLength; k++) {
+                        rhs[j * vectorLength + k] += b * expected[k];
+                    }
+                }
+            } while (next(index, patch.lo, patch.hi));
+
+            for (int j = 0; j < m; j++) {
+                for (int l = 0; l < j; l++) {
+                    normal[j * m + l] = normal[l * m + j];
+                }
+            }
+            solve(normal, m, rhs, vectorLength);
+            System.arraycopy(rhs, 0, patch.coefficients, 0, rhs.length);
+        }
+
+        private double computeError(Patch patch) {
+            final int n = dimensions.length;
+            final double[][] polynomials = new double[n][degree + 1];
+            final double[] coordinates = new double[n];
+            final double[] vector = new double[vectorLength];
+            double error = 0.0;
+
+            final int[] index = patch.lo.clone();
+            do {
+                for (int i = 0; i < n; i++) {
+                    coordinates[i] = dimensions[i].get(index[i]);
+                }
+                patch.computePolynomials(coordinates, polynomials);
+                patch.evaluate(polynomials, vector);
+                table.getValues(coordinates, expected, workspace);
+                error = Math.max(error, computeError(vector, expected));
+            } while (next(index, patch.lo, patch.hi));
+
+            final int[] cellLo = new int[n];
+            final int[] cellHi = new int[n];
+            for (int i = 0; i < n; i++) {
+                cellLo[i] = Math.min(patch.lo[i], cellCardinals[i] - 1);
+                cellHi[i] = Math.max(patch.hi[i] - 1, cellLo[i]);
+            }
+            System.arraycopy(cellLo, 0, index, 0, n);
+            do {
+                getCellCenter(index, coordinates);
+                patch.computePolynomials(coordinates, polynomials);
+                patch.evaluate(polynomials, vector);
+                table.getValues(coordinates, expected, workspace);
+                error = Math.max(error, computeError(vector, expected));
+            } while (next(index, cellLo, cellHi));
+
+            for (int j = 0; j < RANDOM_POINT_COUNT; j++) {
+                for (int i = 0; i < n; i++) {
+                    final double a = dimensions[i].get(patch.lo[i]);
+                    final double b = dimensions[i].get(patch.hi[i]);
+                    coordinates[i] = a + (b - a) * random.nextDouble();
+                }
+                patch.computePolynomials(coordinates, polynomials);
+                patch.evaluate(polynomials, vector);
+                table.getValues(coordinates, expected, workspace);
+                error = Math.max(error, computeError(vector, expected));
+            }
+            return error;
+        }
+
+        private double computeError(double[] vector, double[] expected) {
+            double error = 0.0;
+            for (int k = 0; k < vectorLength; k++) {
+                error = Math.max(error, Math.abs(vector[k] - expected[k]));
+            }
+            return error;
+        }
+
+        private void getCellCenter(int[] index, double[] coordinates) {
+            for (int i = 0; i < index.length; i++) {
+                final IntervalPartition partition = dimensions[i];
+                coordinates[i] = partition.getCardinal() > 1
+                        ? 0.5 * (partition.get(index[i]) + partition.get(index[i] + 1))
+                        : partition.get(0);
+            }
+        }
+
+        /**
+         * Solves a symmetric positive definite system of linear equations with multiple right-hand
+         * sides by Cholesky decomposition. The solution replaces the right-hand sides.
+         */
+        private static void solve(double[] a, int m, double[] b, int columnCount) {
+            for (int j = 0; j < m; j++) {
+                double d = a[j * m + j];
+                for (int k = 0; k < j; k++) {
+                    d -= a[j * m + k] * a[j * m + k];
+                }
+                if (!(d > 0.0)) {
+                    throw new IllegalArgumentException("the normal equations of the polynomial fit are singular");
+                }
+                d = Math.sqrt(d);
+                a[j * m + j] = d;
+                for (int i = j + 1; i < m; i++) {
+                    double s = a[i * m + j];
+                    for (int k = 0; k < j; k++) {
+                        s -= a[i * m + k] * a[j * m + k];
+                    }
+                    a[i * m + j] = s / d;
+                }
+            }
+            for (int c = 0; c < columnCount; c++) {
+                for (int i = 0; i < m; i++) {
+                    double s = b[i * columnCount + c];
+                    for (int k = 0; k < i; k++) {
+                        s -= a[i * m + k] * b[k * columnCount + c];
+                    }
+                    b[i * columnCount + c] = s / a[i * m + i];
+                }
+                for (int i = m; i-- > 0; ) {
+                    double s = b[i * columnCount + c];
+                    for (int k = i + 1; k < m; k++) {
+                        s -= a[k * m + i] * b[k * columnCount + c];
+                    }
+                    b[i * columnCount + c] = s / a[i * m + i];
+                }
+            }
+        }
+    }
+}
@@ -16,16 +16,41 @@ package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
  */
 
 
-import java.util.Arrays;
-
 public class Remapped implements MultivariateLookupTable {
 
     private final MultivariateLookupTable t;
     private final int[] remapping;
+    private final boolean identity;
 
     public Remapped(MultivariateLookupTable t, int[] remapping) {
-        this.t = t;
-        this.remapping = remapping;
+        if (t instanceof Remapped) {
+            // compose the remappings, so that lookups never go through a chain of remapped tables
+            final Remapped r = (Remapped) t;
+            final int[] composed = new int[remapping.length];
+            for (int i = 0; i < remapping.length; i++) {
+                composed[i] = r.remapping[remapping[i]];
+            }
+            this.t = r.t;
+            this.remapping = composed;
+        } else {
+            this.t = t;
+            this.remapping = remapping;
+        }
+        this.identity = isIdentity(this.remapping, this.t.getVectorLength());
+    }
+
+    /**
+     * Returns a lookup table with remapped value vectors. An identity remapping
+     * is compiled away, i.e. the given table is returned.
+     *
+     * @param t         the lookup table.
+     * @param remapping the remapping, i.e. element {@code i} of the remapped value
+     *                  vector is element {@code remapping[i]} of the original one.
+     * @return the remapped lookup table.
+     */
+    public static MultivariateLookupTable of(MultivariateLookupTable t, int[] remapping) {
+        final Remapped r = new Remapped(t, remapping);
+        return r.identity ? r.t : r;
     }
 
     @Override
@@ -43,9 +68,78 @@ public class Remapped implements MultivariateLookupTable {
         return t.getDimension(i);
     }
 
+    @Override
+    public int getVectorLength() {
+        return remapping.length;
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        return t.getMemoryFootprint();
+    }
+
     @Override
     public double[] getValues(final double... coordinates) throws IllegalArgumentException {
-        final double[] values = t.getValues(coordinates);
-        return Arrays.stream(remapping).mapToDouble(j -> values[j]).toArray();
+        final double[] values = new double[remapping.length];
+        getValues(coordinates, values, new LookupWorkspace());
+        return values;
+    }
+
+    @Override
+    public void getValues(double[] coordinates, double[] values, LookupWorkspace workspace) throws IllegalArgumentException {
+        if (identity) {
+            t.getValues(coordinates, values, workspace);
+            return;
+        }
+        final double[] buffer = workspace.getBuffer(t.getVectorLength());
+        t.getValues(coordinates, buffer, workspace);
+        for (int i = 0; i < remapping.length; i++) {
+            values[i] = buffer[remapping[i]];
+        }
+    }
+
+    @Override
+    public void getValues(double[][] coordinates, int count, double[][] values, LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        if (identity) {
+            t.getValues(coordinates, count, values, workspace);
+            return;
+        }
+        final double[][] buffer = workspace.getMatrix(count, t.getVectorLength());
+        t.getValues(coordinates, count, buffer, workspace);
+        for (int p = 0; p < count; p++) {
+            final double[] row = buffer[p];
+            final double[] target = values[p];
+            for (int i = 0; i < remapping.length; i++) {
+                target[i] = row[remapping[i]];
+            }
+        }
+    }
+
+    @Override
+    public void getValues(double[] coordinates, double[] values, int axis, double[] derivatives,
+                          LookupWorkspace workspace) throws IllegalArgumentException {
+        if (identity) {
+            t.getValues(coordinates, values, axis, derivatives, workspace);
+            return;
+        }
+        final double[][] buffer = workspace.getMatrix(2, t.getVectorLength());
+        t.getValues(coordinates, buffer[0], axis, buffer[1], workspace);
+        for (int i = 0; i < remapping.length; i++) {
+            values[i] = buffer[0][remapping[i]];
+            derivatives[i] = buffer[1][remapping[i]];
+        }
+    }
+
+    private static boolean isIdentity(int[] remapping, int length) {
+        if (remapping.length != length) {
+            return false;
+        }
+        for (int i = 0; i < remapping.length; i++) {
+            if (remapping[i] != i) {
+                return false;
+            }
+        }
+        return true;
     }
 }
\ No newline at end of file
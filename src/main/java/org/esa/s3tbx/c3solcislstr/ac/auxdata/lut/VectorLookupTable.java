@@ -17,13 +17,129 @@
 package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
 
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Locale;
 
 public class VectorLookupTable implements MultivariateLookupTable {
 
     /**
-     * The lookup values.
+     * The name of the system property used for selecting the layout of the lookup values.
+     */
+    public static final String LAYOUT_PROPERTY = "s3tbx.c3s.lut.layout";
+
+    /**
+     * The arithmetic precision used for interpolation.
+     */
+    public enum Precision {
+        /**
+         * Corner values are widened to {@code double} and blended in {@code double} arithmetic.
+         */
+        DOUBLE,
+        /**
+         * Corner values are blended in {@code float} arithmetic, which halves the memory traffic
+         * for tables with {@code float} values. All corner slices of a dimension are blended in a
+         * single contiguous loop.
+         */
+        FLOAT
+    }
+
+    /**
+     * The layouts of the lookup values.
+     */
+    public enum Layout {
+        /**
+         * The vertices are stored in row-major order, so the last dimension varies fastest.
+         */
+        ROW_MAJOR,
+        /**
+         * The vertices are stored in hyper-blocks with an edge length of {@link #BLOCK_EDGE}
+         * vertices. The blocks and the vertices within a block are stored in row-major order.
+         * The corners of a grid cell are at most one block apart in each dimension, so a lookup
+         * touches fewer memory pages than with the row-major layout, where the corners of a cell
+         * are spread over the whole array along the outer dimensions. Vectors spanning several
+         * cache lines each touch about as many cache lines with either layout. Dimensions are
+         * padded to a multiple of the edge length by repeating the last vertex.
+         */
+        BLOCKED;
+
+        /**
+         * The edge length of the hyper-blocks of the {@link #BLOCKED} layout.
+         */
+        public static final int BLOCK_EDGE = 2;
+
+        /**
+         * Returns the layout selected by the {@link #LAYOUT_PROPERTY} system property.
+         * Defaults to {@link #ROW_MAJOR}.
+         *
+         * @return the selected layout.
+         * @throws IllegalArgumentException if the property value does not name a layout.
+         */
+        public static Layout getDefault() {
+            return valueOf(System.getProperty(LAYOUT_PROPERTY, ROW_MAJOR.name()).trim().toUpperCase(Locale.ENGLISH));
+        }
+
+        /**
+         * Arranges lookup values given in row-major order in this layout.
+         *
+         * @param length     the length of the lookup vector.
+         * @param values     the lookup values in row-major order.
+         * @param dimensions the dimensions associated with the lookup table.
+         * @return the lookup values in this layout. For {@link #ROW_MAJOR} the given values.
+         * @throws IllegalArgumentException if the length of {@code values} is not equal to
+         *                                  {@code length} times the number of grid vertices.
+         */
+        public Array arrange(int length, Array values, IntervalPartition... dimensions) {
+            ensureLegalArray(values, length * getVertexCount(dimensions));
+            if (this == ROW_MAJOR) {
+                return values;
+            }
+            final int n = dimensions.length;
+            final int[][] addresses = computeAddresses(this, length, dimensions);
+            final int[] cardinals = new int[n];
+            final int[] paddedCardinals = new int[n];
+            int paddedCount = 1;
+            for (int i = 0; i < n; i++) {
+                cardinals[i] = dimensions[i].getCardinal();
+                paddedCardinals[i] = addresses[i].length;
+                paddedCount *= paddedCardinals[i];
+            }
+            final Array result = Array.Storage.of(values).allocate(values, paddedCount * length);
+            final double[] vector = new double[length];
+            final int[] j = new int[n];
+            for (int v = 0; v < paddedCount; v++) {
+                int source = 0;
+                int target = 0;
+                for (int i = 0; i < n; i++) {
+                    source = source * cardinals[i] + Math.min(j[i], cardinals[i] - 1);
+                    target += addresses[i][j[i]];
+                }
+                values.getValues(source * length, vector);
+                for (int k = 0; k < length; k++) {
+                    result.setValue(target + k, vector[k]);
+                }
+                for (int i = n; i-- > 0; ) {
+                    if (++j[i] < paddedCardinals[i]) {
+                        break;
+                    }
+                    j[i] = 0;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The lookup values. If the lookup values are given by a view, the base array of the view.
      */
     private final Array values;
+    /**
+     * The index of the first lookup value in the value array.
+     */
+    private final int valueOffset;
+    /**
+     * The stride between the elements of a lookup vector.
+     */
+    private final int vectorStride;
     /**
      * The dimensions associated with the lookup table.
      */
@@ -36,10 +152,32 @@ public class VectorLookupTable implements MultivariateLookupTable {
      * The relative array offsets of the lookup values for the vertices of a coordinate grid cell.
      */
     private final int[] o;
+    /**
+     * The array offsets of the vertex coordinate indexes in each dimension, if the lookup values
+     * are not stored in row-major order.
+     */
+    private final int[][] addresses;
     /**
      * the length of the lookup vector.
      */
     private final int vectorLength;
+    /**
+     * The primitive lookup values, if the value array wraps a {@code float} array on the heap.
+     */
+    private final float[] floatValues;
+    /**
+     * The primitive lookup values, if the value array wraps a {@code double} array on the heap.
+     */
+    private final double[] doubleValues;
+    /**
+     * The quantized lookup values, if the value array is quantized with a period equal to the vector
+     * length and the lookup vectors are aligned with the period.
+     */
+    private final Array.Quantized quantizedValues;
+    /**
+     * The arithmetic precision used for interpolation.
+     */
+    private Precision precision = Precision.DOUBLE;
 
     /**
      * Constructs an array lookup table for the lookup values and dimensions supplied as arguments.
@@ -118,25 +256,75 @@ public class VectorLookupTable implements MultivariateLookupTable {
     }
 
     public VectorLookupTable(int length, final Array values, final IntervalPartition... dimensions) {
+        this(length, values, Layout.ROW_MAJOR, dimensions);
+    }
+
+    /**
+     * Constructs an array lookup table for the lookup values, layout and dimensions supplied as arguments.
+     *
+     * @param length     the length of the lookup vector.
+     * @param values     the lookup values, arranged in the given layout, see {@link Layout#arrange}.
+     * @param layout     the layout of the lookup values.
+     * @param dimensions the interval partitions defining the dimensions associated with the lookup
+     *                   table. If there are no dimensions, the table holds a single constant vector.
+     * @throws IllegalArgumentException if {@code length} is less than {@code 1} or the length of
+     *                                  {@code values} does not match the layout.
+     */
+    public VectorLookupTable(int length, final Array values, final Layout layout, final IntervalPartition... dimensions) {
         if (length < 1) {
             throw new IllegalArgumentException("length < 1");
         }
         vectorLength = length;
 
-        ensureLegalArray(dimensions);
-        ensureLegalArray(values, vectorLength * getVertexCount(dimensions));
+        if (dimensions.length != 0) {
+            ensureLegalArray(dimensions);
+        }
 
-        this.values = values;
         this.dimensions = dimensions;
 
         final int n = dimensions.length;
 
         strides = new int[n];
-        // Compute strides
-        for (int i = n, stride = vectorLength; i-- > 0; stride *= dimensions[i].getCardinal()) {
-            strides[i] = stride;
+        if (layout != Layout.ROW_MAJOR) {
+            addresses = computeAddresses(layout, vectorLength, dimensions);
+            int paddedCount = 1;
+            for (final int[] a : addresses) {
+                paddedCount *= a.length;
+            }
+            ensureLegalArray(values, vectorLength * paddedCount);
+            this.values = values.compacted();
+            valueOffset = 0;
+            vectorStride = 1;
+            for (int i = 0; i < n; i++) {
+                strides[i] = addresses[i][1] - addresses[i][0];
+            }
+        } else if (isResolvableView(values, dimensions, vectorLength)) {
+            ensureLegalArray(values, vectorLength * getVertexCount(dimensions));
+            addresses = null;
+            // views are resolved here, so lookups index into the base array directly
+            final Array.View view = (Array.View) values;
+            this.values = view.base;
+            valueOffset = view.offset;
+            vectorStride = view.strides[n];
+            System.arraycopy(view.strides, 0, strides, 0, n);
+        } else {
+            ensureLegalArray(values, vectorLength * getVertexCount(dimensions));
+            addresses = null;
+            this.values = values;
+            valueOffset = 0;
+            vectorStride = 1;
+            // Compute strides
+            for (int i = n, stride = vectorLength; i-- > 0; stride *= dimensions[i].getCardinal()) {
+                strides[i] = stride;
+            }
         }
 
+        // primitive arrays are accessed directly, so lookups do not dispatch through the Array interface
+        floatValues = this.values instanceof Array.Float ? ((Array.Float) this.values).values : null;
+        doubleValues = this.values instanceof Array.Double ? ((Array.Double) this.values).values : null;
+        quantizedValues = isAlignedQuantized(this.values, valueOffset, vectorStride, strides, vectorLength) ?
+                (Array.Quantized) this.values : null;
+
         o = new int[1 << n];
         computeVertexOffsets(strides, o);
     }
@@ -172,6 +360,130 @@ public class VectorLookupTable implements MultivariateLookupTable {
         return dimensions[i];
     }
 
+    /**
+     * Returns the length of the lookup vector.
+     *
+     * @return the length of the lookup vector.
+     */
+    @Override
+    public final int getVectorLength() {
+        return vectorLength;
+    }
+
+    /**
+     * Returns the arithmetic precision used for interpolation.
+     *
+     * @return the arithmetic precision.
+     */
+    public final Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Sets the arithmetic precision used for interpolation.
+     *
+     * @param precision the arithmetic precision.
+     */
+    public final void setPrecision(Precision precision) {
+        if (precision == null) {
+            throw new IllegalArgumentException("precision == null");
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * Returns a lookup table whose leading dimensions are fixed at given coordinates. The values
+     * of the returned table are the values of this table interpolated along the leading dimensions,
+     * so a lookup in the returned table equals a lookup in this table, up to rounding, and
+     * interpolates over the remaining dimensions only. The returned table stores its values in
+     * {@code double} precision and uses the kernel and precision of this table.
+     *
+     * @param count       the number of leading dimensions fixed.
+     * @param coordinates the coordinates of the leading dimensions.
+     * @return the contracted lookup table.
+     * @throws IllegalArgumentException if {@code count} is negative or greater than the number of
+     *                                  dimensions, or the number of coordinates is not equal to
+     *                                  {@code count}.
+     */
+    public final VectorLookupTable contracted(final int count, final double... coordinates)
+            throws IllegalArgumentException {
+        if (count < 0 || count > dimensions.length) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "count = {0} is not in the range [0, {1}]", count, dimensions.length));
+        }
+        ensureLegalArray(coordinates, count);
+        final IntervalPartition[] remaining = Arrays.copyOfRange(dimensions, count, dimensions.length);
+
+        // the offsets and interpolation weights of the vertices of the cell spanned by the leading dimensions
+        final int cornerCount = 1 << count;
+        final int[] cornerOffsets = new int[cornerCount];
+        final double[] weights = new double[cornerCount];
+        final FracIndex fracIndex = new FracIndex();
+        Arrays.fill(weights, 1.0);
+        Arrays.fill(cornerOffsets, valueOffset);
+        for (int i = 0; i < count; ++i) {
+            computeFracIndex(dimensions[i], coordinates[i], fracIndex);
+            for (int c = 0; c < cornerCount; ++c) {
+                final int bit = c >> i & 1;
+                cornerOffsets[c] += getVertexOffset(i, fracIndex.i + bit);
+                weights[c] *= bit == 1 ? fracIndex.f : 1.0 - fracIndex.f;
+            }
+        }
+
+        final int vertexCount = getVertexCount(remaining);
+        final double[] result = new double[vertexCount * vectorLength];
+        final double[] vector = new double[vectorLength];
+        final int[] j = new int[remaining.length];
+        for (int v = 0, r = 0; v < vertexCount; ++v, r += vectorLength) {
+            int offset = 0;
+            for (int i = 0; i < remaining.length; ++i) {
+                offset += getVertexOffset(count + i, j[i]);
+            }
+            for (int c = 0; c < cornerCount; ++c) {
+                getVector(cornerOffsets[c] + offset, vector, 0);
+                for (int k = 0; k < vectorLength; ++k) {
+                    result[r + k] += weights[c] * vector[k];
+                }
+            }
+            for (int i = remaining.length; i-- > 0; ) {
+                if (++j[i] < remaining[i].getCardinal()) {
+                    break;
+                }
+                j[i] = 0;
+            }
+        }
+
+        final VectorLookupTable table = new VectorLookupTable(vectorLength, new Array.Double(result), remaining);
+        table.setPrecision(precision);
+        return table;
+    }
+
+    /**
+     * Returns the number of lookup values stored by this table, including any padding.
+     *
+     * @return the number of lookup values.
+     */
+    final int getValueCount() {
+        return values.getLength();
+    }
+
+    @Override
+    public long getMemoryFootprint() {
+        final long elementSize;
+        if (values instanceof Array.Quantized) {
+            elementSize = Short.BYTES;
+        } else if (values instanceof Array.Float || values instanceof Array.DirectFloat) {
+            elementSize = Float.BYTES;
+        } else {
+            elementSize = Double.BYTES;
+        }
+        return elementSize * values.getLength();
+    }
+
+    private int getVertexOffset(final int dimension, final int index) {
+        return addresses == null ? index * strides[dimension] : addresses[dimension][index];
+    }
+
     /**
      * Returns an interpolated value array for the given coordinates.
      *
@@ -184,23 +496,247 @@ public class VectorLookupTable implements MultivariateLookupTable {
      */
     @Override
     public final double[] getValues(final double... coordinates) throws IllegalArgumentException {
+        final double[] values = new double[vectorLength];
+        getValues(coordinates, values, new LookupWorkspace());
+
+        return values;
+    }
+
+    /**
+     * Interpolates the value array for the given coordinates into a caller-supplied array.
+     *
+     * @param coordinates the coordinates of the lookup point.
+     * @param values      the interpolated value array (on return).
+     * @param workspace   the workspace used for intermediate results.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is
+     *                                  not equal to the number of dimensions associated
+     *                                  with the lookup table, or the length of the
+     *                                  {@code values} array is less than the vector length.
+     * @throws NullPointerException     if the {@code coordinates} array is {@code null}.
+     */
+    @Override
+    public final void getValues(final double[] coordinates, final double[] values, final LookupWorkspace workspace)
+            throws IllegalArgumentException {
+        ensureLegalArray(coordinates, dimensions.length);
+        if (values.length < vectorLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "values.length = {0} is less than the vector length {1}", values.length, vectorLength));
+        }
+        final FracIndex[] fracIndexes = workspace.getFracIndexes(dimensions.length);
+        for (int i = 0; i < dimensions.length; ++i) {
+            setFracIndex(dimensions[i], coordinates[i], workspace.findInterval(dimensions[i], coordinates[i]),
+                         fracIndexes[i]);
+        }
+
+        interpolate(fracIndexes, values, workspace);
+    }
+
+    /**
+     * Interpolates the value vector and its partial derivative with respect to the coordinate
+     * of a given dimension in a single pass, see {@link MultivariateLookupTable#getValues(double[],
+     * double[], int, double[], LookupWorkspace)}. The interpolation uses {@code double} precision.
+     *
+     * @param coordinates the coordinates of the lookup point.
+     * @param values      the array receiving the interpolated value vector.
+     * @param axis        the index of the dimension of the derivative.
+     * @param derivatives the array receiving the partial derivatives of the value vector.
+     * @param workspace   the workspace used for intermediate results.
+     * @throws IllegalArgumentException if the length of the {@code coordinates} array is not
+     *                                  equal to the number of dimensions, the axis is not a
+     *                                  dimension index, or an array receiving results is shorter
+     *                                  than the vector length.
+     */
+    @Override
+    public final void getValues(final double[] coordinates, final double[] values, final int axis,
+                                final double[] derivatives, final LookupWorkspace workspace)
+            throws IllegalArgumentException {
         ensureLegalArray(coordinates, dimensions.length);
-        final FracIndex[] fracIndices = FracIndex.createArray(dimensions.length);
+        ensureLegalAxis(axis, dimensions.length);
+        if (values.length < vectorLength || derivatives.length < vectorLength) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "values.length = {0} or derivatives.length = {1} is less than the vector length {2}",
+                    values.length, derivatives.length, vectorLength));
+        }
+        final FracIndex[] fracIndexes = workspace.getFracIndexes(dimensions.length);
         for (int i = 0; i < dimensions.length; ++i) {
-            computeFracIndex(dimensions[i], coordinates[i], fracIndices[i]);
+            setFracIndex(dimensions[i], coordinates[i], workspace.findInterval(dimensions[i], coordinates[i]),
+                         fracIndexes[i]);
+        }
+        final double scale = getSlopeScale(dimensions[axis], coordinates[axis], fracIndexes[axis].i);
+
+        interpolate(fracIndexes, values, 0, axis, scale, derivatives, 0, workspace);
+    }
+
+    /**
+     * Interpolates the value vectors for a batch of lookup points into a caller-supplied matrix.
+     *
+     * @param coordinates the coordinates of the lookup points, one array per dimension.
+     * @param count       the number of lookup points.
+     * @param values      the matrix receiving the interpolated value vectors, one row per point.
+     * @param workspace   the workspace used for intermediate results.
+     * @throws IllegalArgumentException if the number of coordinate arrays is not equal to the
+     *                                  number of dimensions associated with the lookup table,
+     *                                  any coordinate array or the value matrix has less than
+     *                                  {@code count} elements, a row of the value matrix is
+     *                                  shorter than the vector length or any coordinate is NaN.
+     */
+    @Override
+    public final void getValues(final double[][] coordinates, final int count, final double[][] values,
+                                final LookupWorkspace workspace) throws IllegalArgumentException {
+        ensureLegalBatch(coordinates, count, values, dimensions.length);
+        final FracIndex[] fracIndexes = workspace.getFracIndexes(dimensions.length);
+        for (int p = 0; p < count; p++) {
+            if (values[p].length < vectorLength) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "values[{0}].length = {1} is less than the vector length {2}", p, values[p].length, vectorLength));
+            }
+            for (int i = 0; i < dimensions.length; ++i) {
+                final double coordinate = coordinates[i][p];
+                if (Double.isNaN(coordinate)) {
+                    throw new IllegalArgumentException("element is NaN");
+                }
+                setFracIndex(dimensions[i], coordinate, workspace.findInterval(dimensions[i], coordinate),
+                             fracIndexes[i]);
+            }
+            interpolate(fracIndexes, values[p], workspace);
         }
+    }
+
+    private void interpolate(final FracIndex[] fracIndexes, final double[] values, final LookupWorkspace workspace) {
+        interpolate(fracIndexes, values, 0, workspace);
+    }
 
-        return getValues(fracIndices);
+    /**
+     * Interpolates the value vector for given fractional indexes into a section of a caller-supplied array.
+     *
+     * @param fracIndexes  the fractional indexes of the lookup point, one for each dimension.
+     * @param values       the array receiving the interpolated value vector.
+     * @param valuesOffset the index of the first element written.
+     * @param workspace    the workspace used for intermediate results.
+     */
+    final void interpolate(final FracIndex[] fracIndexes, final double[] values, final int valuesOffset,
+                           final LookupWorkspace workspace) {
+        final int origin = getOrigin(fracIndexes);
+        final int[] offsets = getVertexOffsets(fracIndexes, workspace);
+        if (precision == Precision.FLOAT) {
+            getValues(fracIndexes, origin, offsets, values, valuesOffset, workspace.getFloatCorners((1 << dimensions.length) * vectorLength));
+        } else {
+            getValues(fracIndexes, origin, offsets, values, valuesOffset, workspace.getSlices(1 << dimensions.length, vectorLength));
+        }
     }
 
-    private double[] getValues(final FracIndex... fracIndexes) {
-        int origin = 0;
+    /**
+     * Interpolates the value vector and its partial derivative with respect to the coordinate
+     * of a given dimension for given fractional indexes into sections of caller-supplied arrays.
+     *
+     * @param fracIndexes       the fractional indexes of the lookup point, one for each dimension.
+     * @param values            the array receiving the interpolated value vector.
+     * @param valuesOffset      the index of the first value written.
+     * @param axis              the index of the dimension of the derivative.
+     * @param scale             the reciprocal width of the interval containing the coordinate,
+     *                          or zero if the coordinate is outside the dimension.
+     * @param derivatives       the array receiving the partial derivatives.
+     * @param derivativesOffset the index of the first derivative written.
+     * @param workspace         the workspace used for intermediate results.
+     */
+    final void interpolate(final FracIndex[] fracIndexes, final double[] values, final int valuesOffset,
+                           final int axis, final double scale, final double[] derivatives,
+                           final int derivativesOffset, final LookupWorkspace workspace) {
+        final int origin = getOrigin(fracIndexes);
+        final int[] offsets = getVertexOffsets(fracIndexes, workspace);
+        final int sliceCount = 1 << dimensions.length;
+        final double[] corners = workspace.getCorners(sliceCount * vectorLength);
+        for (int i = 0, offset = 0; i < sliceCount; ++i, offset += vectorLength) {
+            getVector(origin + offsets[i], corners, offset);
+        }
+        // the dimensions following the axis are blended as usual, the dimensions preceding
+        // the axis are blended separately for the lower and upper face of the cell
+        for (int i = dimensions.length; i-- > axis + 1; ) {
+            final int length = (1 << i) * vectorLength;
+            final double f = fracIndexes[i].f;
+
+            for (int k = 0; k < length; ++k) {
+                corners[k] += f * (corners[length + k] - corners[k]);
+            }
+        }
+        final int half = (1 << axis) * vectorLength;
+        for (int i = axis; i-- > 0; ) {
+            final int length = (1 << i) * vectorLength;
+            final double f = fracIndexes[i].f;
+
+            for (int k = 0; k < length; ++k) {
+                corners[k] += f * (corners[length + k] - corners[k]);
+                corners[half + k] += f * (corners[half + length + k] - corners[half + k]);
+            }
+        }
+        final double f = fracIndexes[axis].f;
+        for (int k = 0; k < vectorLength; ++k) {
+            final double lower = corners[k];
+            final double upper = corners[half + k];
+            values[valuesOffset + k] = lower + f * (upper - lower);
+            derivatives[derivativesOffset + k] = scale * (upper - lower);
+        }
+    }
+
+    private int getOrigin(final FracIndex[] fracIndexes) {
+        int origin = valueOffset;
+        if (addresses == null) {
+            for (int i = 0; i < dimensions.length; ++i) {
+                origin += fracIndexes[i].i * strides[i];
+            }
+        } else {
+            for (int i = 0; i < dimensions.length; ++i) {
+                origin += addresses[i][fracIndexes[i].i];
+            }
+        }
+        return origin;
+    }
+
+    private int[] getVertexOffsets(final FracIndex[] fracIndexes, final LookupWorkspace workspace) {
+        if (addresses == null) {
+            return o;
+        }
+        // the distance between adjacent vertices varies across block boundaries
+        final int[] offsets = workspace.getVertexOffsets(o.length);
         for (int i = 0; i < dimensions.length; ++i) {
-            origin += fracIndexes[i].i * strides[i];
+            final int[] a = addresses[i];
+            final int lo = fracIndexes[i].i;
+            final int k = 1 << i;
+            final int d = a[lo + 1] - a[lo];
+            for (int j = 0; j < k; ++j) {
+                offsets[k + j] = offsets[j] + d;
+            }
+        }
+        return offsets;
+    }
+
+    private void getValues(final FracIndex[] fracIndexes, final int origin, final int[] vertexOffsets,
+                           final double[] result, final int resultOffset, final float[] corners) {
+        final int sliceCount = 1 << dimensions.length;
+        for (int i = 0, offset = 0; i < sliceCount; ++i, offset += vectorLength) {
+            getVector(origin + vertexOffsets[i], corners, offset);
+        }
+        // the lower half of the corners is blended with the upper half, so the blend
+        // is a single loop over contiguous memory, with no dependency between iterations
+        for (int i = dimensions.length; i-- > 0;) {
+            final int length = (1 << i) * vectorLength;
+            final float f = (float) fracIndexes[i].f;
+
+            for (int k = 0; k < length; ++k) {
+                corners[k] += f * (corners[length + k] - corners[k]);
+            }
         }
-        final double[][] slices = new double[1 << dimensions.length][vectorLength];
-        for (int i = 0; i < slices.length; ++i) {
-            values.getValues(origin + o[i], slices[i]);
+
+        for (int k = 0; k < vectorLength; ++k) {
+            result[resultOffset + k] = corners[k];
+        }
+    }
+
+    private void getValues(final FracIndex[] fracIndexes, final int origin, final int[] vertexOffsets,
+                           final double[] result, final int resultOffset, final double[][] slices) {
+        final int sliceCount = 1 << dimensions.length;
+        for (int i = 0; i < sliceCount; ++i) {
+            getVector(origin + vertexOffsets[i], slices[i], 0);
         }
         for (int i = dimensions.length; i-- > 0;) {
             final int m = 1 << i;
@@ -213,7 +749,7 @@ public class VectorLookupTable implements MultivariateLookupTable {
             }
         }
 
-        return slices[0];
+        System.arraycopy(slices[0], 0, result, resultOffset, vectorLength);
     }
 
 
@@ -238,34 +774,103 @@ public class VectorLookupTable implements MultivariateLookupTable {
      */
     public static void computeFracIndex(final IntervalPartition partition, final double coordinate,
                                         final FracIndex fracIndex) {
-        int lo = 0;
-        int hi = partition.getCardinal() - 1;
+        setFracIndex(partition, coordinate, partition.findInterval(coordinate), fracIndex);
+    }
+
+    static void setFracIndex(final IntervalPartition partition, final double coordinate, final int lo,
+                                     final FracIndex fracIndex) {
+        final int hi = lo + 1;
 
-        if (partition.getMonotonicity() > 0) {  // partition is strictly increasing
-            while (hi > lo + 1) {
-                final int m = (lo + hi) >> 1;
+        fracIndex.i = lo;
+        fracIndex.f = (coordinate - partition.get(lo)) / (partition.get(hi) - partition.get(lo));
+        fracIndex.truncate();
+    }
 
-                if (coordinate < partition.get(m)) {
-                    hi = m;
-                } else {
-                    lo = m;
+    private void getVector(final int index, final double[] target, final int offset) {
+        if (floatValues != null) {
+            for (int k = 0, i = index; k < vectorLength; ++k, i += vectorStride) {
+                target[offset + k] = floatValues[i];
+            }
+        } else if (doubleValues != null) {
+            if (vectorStride == 1) {
+                System.arraycopy(doubleValues, index, target, offset, vectorLength);
+            } else {
+                for (int k = 0, i = index; k < vectorLength; ++k, i += vectorStride) {
+                    target[offset + k] = doubleValues[i];
                 }
             }
-        } else {  // partition is strictly decreasing
-            while (hi > lo + 1) {
-                final int m = (lo + hi) >> 1;
+        } else if (quantizedValues != null) {
+            final short[] levels = quantizedValues.values;
+            final double[] scales = quantizedValues.scales;
+            final double[] offsets = quantizedValues.offsets;
+            for (int k = 0; k < vectorLength; ++k) {
+                target[offset + k] = offsets[k] + scales[k] * (levels[index + k] & 0xFFFF);
+            }
+        } else if (vectorStride == 1) {
+            values.getValues(index, target, offset, vectorLength);
+        } else {
+            for (int k = 0; k < vectorLength; ++k) {
+                target[offset + k] = values.getValue(index + k * vectorStride);
+            }
+        }
+    }
 
-                if (coordinate > partition.get(m)) {
-                    hi = m;
-                } else {
-                    lo = m;
+    private void getVector(final int index, final float[] target, final int offset) {
+        if (floatValues != null) {
+            if (vectorStride == 1) {
+                System.arraycopy(floatValues, index, target, offset, vectorLength);
+            } else {
+                for (int k = 0, i = index; k < vectorLength; ++k, i += vectorStride) {
+                    target[offset + k] = floatValues[i];
                 }
             }
+        } else if (doubleValues != null) {
+            for (int k = 0, i = index; k < vectorLength; ++k, i += vectorStride) {
+                target[offset + k] = (float) doubleValues[i];
+            }
+        } else if (quantizedValues != null) {
+            final short[] levels = quantizedValues.values;
+            final double[] scales = quantizedValues.scales;
+            final double[] offsets = quantizedValues.offsets;
+            for (int k = 0; k < vectorLength; ++k) {
+                target[offset + k] = (float) (offsets[k] + scales[k] * (levels[index + k] & 0xFFFF));
+            }
+        } else {
+            for (int k = 0; k < vectorLength; ++k) {
+                target[offset + k] = (float) values.getValue(index + k * vectorStride);
+            }
         }
+    }
 
-        fracIndex.i = lo;
-        fracIndex.f = (coordinate - partition.get(lo)) / (partition.get(hi) - partition.get(lo));
-        fracIndex.truncate();
+    private static boolean isAlignedQuantized(final Array values, final int valueOffset, final int vectorStride,
+                                              final int[] strides, final int vectorLength) {
+        if (!(values instanceof Array.Quantized) || ((Array.Quantized) values).getPeriod() != vectorLength ||
+            vectorStride != 1 || valueOffset % vectorLength != 0) {
+            return false;
+        }
+        for (final int stride : strides) {
+            if (stride % vectorLength != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isResolvableView(final Array values, final IntervalPartition[] dimensions,
+                                            final int vectorLength) {
+        if (!(values instanceof Array.View)) {
+            return false;
+        }
+        final Array.View view = (Array.View) values;
+        if (view.cardinals.length != dimensions.length + 1 || view.cardinals[dimensions.length] != vectorLength) {
+            return false;
+        }
+        for (int i = 0; i < dimensions.length; i++) {
+            if (view.cardinals[i] != dimensions[i].getCardinal()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -285,6 +890,37 @@ public class VectorLookupTable implements MultivariateLookupTable {
         }
     }
 
+    /**
+     * Computes the array offsets of the vertex coordinate indexes in each dimension for
+     * a layout other than {@link Layout#ROW_MAJOR}. The array offset of a vertex is the
+     * sum of the offsets of its coordinate indexes.
+     *
+     * @param layout     the layout.
+     * @param length     the length of the lookup vector.
+     * @param dimensions the dimensions associated with the lookup table.
+     * @return the offsets, one array per dimension, padded to a multiple of the block edge.
+     */
+    static int[][] computeAddresses(final Layout layout, final int length, final IntervalPartition[] dimensions) {
+        final int n = dimensions.length;
+        final int edge = Layout.BLOCK_EDGE;
+        final int[][] addresses = new int[n][];
+        int innerStride = length;
+        int blockStride = length;
+        for (int i = 0; i < n; i++) {
+            blockStride *= edge;
+        }
+        for (int i = n; i-- > 0; ) {
+            final int blockCount = (dimensions[i].getCardinal() + edge - 1) / edge;
+            addresses[i] = new int[blockCount * edge];
+            for (int j = 0; j < addresses[i].length; j++) {
+                addresses[i][j] = (j / edge) * blockStride + (j % edge) * innerStride;
+            }
+            innerStride *= edge;
+            blockStride *= blockCount;
+        }
+        return addresses;
+    }
+
     /**
      * Returns the number of vertices in the coordinate grid defined by the given dimensions.
      *
@@ -302,6 +938,29 @@ public class VectorLookupTable implements MultivariateLookupTable {
         return count;
     }
 
+    /**
+     * Returns the factor converting the difference between the interpolated values on the upper
+     * and lower face of a grid cell into a partial derivative.
+     *
+     * @param partition  the dimension of the derivative.
+     * @param coordinate the coordinate.
+     * @param lo         the index of the interval containing the coordinate.
+     * @return the reciprocal width of the interval, or zero if the coordinate is outside the dimension.
+     */
+    static double getSlopeScale(final IntervalPartition partition, final double coordinate, final int lo) {
+        if (coordinate < partition.getMin() || coordinate > partition.getMax()) {
+            return 0.0;
+        }
+        return 1.0 / (partition.get(lo + 1) - partition.get(lo));
+    }
+
+    static void ensureLegalAxis(final int axis, final int dimensionCount) throws IllegalArgumentException {
+        if (axis < 0 || axis >= dimensionCount) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "axis = {0} is not in the range [0, {1})", axis, dimensionCount));
+        }
+    }
+
     static <T> void ensureLegalArray(final T[] array) throws IllegalArgumentException {
         if (array == null) {
             throw new IllegalArgumentException("array == null");
@@ -333,6 +992,26 @@ public class VectorLookupTable implements MultivariateLookupTable {
         }
     }
 
+    static void ensureLegalBatch(final double[][] coordinates, final int count, final double[][] values,
+                                 final int dimensionCount) throws IllegalArgumentException {
+        if (coordinates == null) {
+            throw new IllegalArgumentException("coordinates == null");
+        }
+        if (coordinates.length != dimensionCount) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "coordinates.length = {0} does not correspond to the expected length {1}",
+                    coordinates.length, dimensionCount));
+        }
+        for (final double[] c : coordinates) {
+            if (c == null || c.length < count) {
+                throw new IllegalArgumentException("coordinate array is null or shorter than count");
+            }
+        }
+        if (values == null || values.length < count) {
+            throw new IllegalArgumentException("value matrix is null or shorter than count");
+        }
+    }
+
     static void ensureLegalArray(Array array, final int length) throws
             IllegalArgumentException,
             NullPointerException {
@@ -343,10 +1022,24 @@ public class VectorLookupTable implements MultivariateLookupTable {
             throw new IllegalArgumentException(MessageFormat.format(
                     "array.length = {0} does not correspond to the expected length {1}", array.getLength(), length));
         }
+        if (isTrusted(array)) {
+            return;
+        }
         for (int i = 0; i < array.getLength(); i++) {
             if (Double.isNaN(array.getValue(i))) {
                 throw new IllegalArgumentException("element is NaN");
             }
         }
     }
+
+    /**
+     * Returns {@code true} if the values of an array are trusted not to be NaN, see {@link Array#wrap}.
+     */
+    private static boolean isTrusted(Array array) {
+        while (array instanceof Array.View) {
+            array = ((Array.View) array).base;
+        }
+        return array instanceof Array.DirectFloat && ((Array.DirectFloat) array).trusted ||
+               array instanceof Array.DirectDouble && ((Array.DirectDouble) array).trusted;
+    }
 }
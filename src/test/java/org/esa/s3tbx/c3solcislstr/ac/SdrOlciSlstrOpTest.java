@@ -0,0 +1,50 @@
+package org.esa.s3tbx.c3solcislstr.ac;
+
+import org.esa.snap.core.gpf.OperatorException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SdrOlciSlstrOpTest {
+
+    @Test
+    public void testGetRaaRange() {
+        assertArrayEquals(new double[]{10.0, 50.0}, SdrOlciSlstrOp.getRaaRange(10.0, 50.0), 0.0);
+        assertArrayEquals(new double[]{160.0, 170.0}, SdrOlciSlstrOp.getRaaRange(-200.0, -190.0), 0.0);
+        // the relative azimuth is limited to [1, 179] as in the pixel computation
+        assertArrayEquals(new double[]{1.0, 30.0}, SdrOlciSlstrOp.getRaaRange(-30.0, 20.0), 0.0);
+        assertArrayEquals(new double[]{160.0, 179.0}, SdrOlciSlstrOp.getRaaRange(170.0, 200.0), 0.0);
+        assertArrayEquals(new double[]{1.0, 10.0}, SdrOlciSlstrOp.getRaaRange(350.0, 370.0), 0.0);
+        assertArrayEquals(new double[]{1.0, 179.0}, SdrOlciSlstrOp.getRaaRange(0.0, 400.0), 0.0);
+    }
+
+    @Test
+    public void testSelectBands() {
+        final int[][] all = SdrOlciSlstrOp.selectBands(Sensor.OLCI_SLSTR_NOMINAL, null);
+        assertEquals(21, all[0].length);
+        assertArrayEquals(all[0], SdrOlciSlstrOp.selectBands(Sensor.OLCI_SLSTR_NOMINAL, new String[0])[0]);
+        assertEquals(15, all[0][12]);
+        assertEquals(12, all[1][12]);
+
+        // the bands are in sensor order, whatever the order requested
+        final int[][] subset = SdrOlciSlstrOp.selectBands(Sensor.OLCI_SLSTR_NOMINAL,
+                                                          new String[]{"sdr_Sl05", "sdr_Oa16", "sdr_Oa02"});
+        assertArrayEquals(new int[]{1, 15, 25}, subset[0]);
+        assertArrayEquals(new int[]{1, 12, 19}, subset[1]);
+    }
+
+    @Test(expected = OperatorException.class)
+    public void testSelectBandsRejectsUnknownBand() {
+        SdrOlciSlstrOp.selectBands(Sensor.OLCI_SLSTR_NOMINAL, new String[]{"sdr_Oa02", "sdr_Oa13"});
+    }
+
+    @Test
+    public void testGetLutWavelengths() {
+        assertArrayEquals(new int[]{1, 15}, SdrOlciSlstrOp.getLutWavelengths(new int[]{1, 15, 25}, false));
+        assertArrayEquals(new int[]{4}, SdrOlciSlstrOp.getLutWavelengths(new int[]{1, 15, 25}, true));
+        // the first wavelength is read for a sensor without bands written
+        assertArrayEquals(new int[]{0}, SdrOlciSlstrOp.getLutWavelengths(new int[]{1, 15}, true));
+        assertArrayEquals(new int[]{0}, SdrOlciSlstrOp.getLutWavelengths(new int[]{21, 25}, false));
+    }
+}
@@ -0,0 +1,83 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the hit rate of the LUT contraction cache for the pixels of a synthetic scene traversed row
+ * by row, as in an operator tile. The surface height varies smoothly, and the AOT is constant within
+ * super-pixels of 9 x 9 pixels, with noise.
+ */
+public class ContractionCacheHitRateTest {
+
+    private static final int TILE_SIZE = 128;
+    private static final int SUPER_PIXEL_SIZE = 9;
+    private static final int WAVELENGTH_COUNT = 3;
+
+    @Test
+    public void testHitRate() {
+        final HyLut lut = HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT);
+        final double[][] scene = createScene(new Random(5489));
+
+        final double smallHitRate = run(lut.withContractionCacheCapacity(16), scene);
+        final double largeHitRate = run(lut.withContractionCacheCapacity(1024), scene);
+        // the noise of the surface height causes misses even if the cache holds all tables
+        assertTrue(largeHitRate > 0.8);
+        assertTrue(largeHitRate > smallHitRate);
+    }
+
+    @Test
+    public void testCachedValues() {
+        final HyLut lut = HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT);
+        final HyLut cachedLut = lut.withContractionCacheCapacity(1024);
+        final double[][] scene = createScene(new Random(5489));
+        final LookupWorkspace workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[][] expected = new double[5][WAVELENGTH_COUNT];
+        final double[][] actual = new double[5][WAVELENGTH_COUNT];
+
+        // the cache rounds hsf and aot, which is within the error of the LUT
+        for (int i = 0; i < scene[0].length; i += 7) {
+            lut.getRT(scene[0][i], scene[1][i], scene[2][i], scene[3][i], scene[4][i], expected, workspace);
+            cachedLut.getRT(scene[0][i], scene[1][i], scene[2][i], scene[3][i], scene[4][i], actual, workspace);
+            for (int k = 0; k < expected.length; k++) {
+                assertArrayEquals(expected[k], actual[k], 1.0e-3);
+            }
+        }
+    }
+
+    private static double run(HyLut lut, double[][] scene) {
+        final LookupWorkspace workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[][] rt = new double[5][lut.getWavelengthCount()];
+        for (int i = 0; i < scene[0].length; i++) {
+            lut.getRT(scene[0][i], scene[1][i], scene[2][i], scene[3][i], scene[4][i], rt, workspace);
+        }
+        return lut.getContractionCache().getHitRate();
+    }
+
+    // the aot, sza, vza, raa and hsf of the pixels in row-major order
+    private static double[][] createScene(Random random) {
+        final int superPixelCount = (TILE_SIZE + SUPER_PIXEL_SIZE - 1) / SUPER_PIXEL_SIZE;
+        final double[][] superPixelAot = new double[superPixelCount][superPixelCount];
+        for (int j = 0; j < superPixelCount; j++) {
+            for (int i = 0; i < superPixelCount; i++) {
+                superPixelAot[j][i] = 0.1 + 0.05 * Math.sin(0.3 * i) * Math.cos(0.2 * j) + 0.01 * random.nextGaussian();
+            }
+        }
+        final double[][] scene = new double[5][TILE_SIZE * TILE_SIZE];
+        for (int y = 0, p = 0; y < TILE_SIZE; y++) {
+            for (int x = 0; x < TILE_SIZE; x++, p++) {
+                scene[0][p] = Math.max(superPixelAot[y / SUPER_PIXEL_SIZE][x / SUPER_PIXEL_SIZE], 0.0);
+                scene[1][p] = 40.0 + 5.0 * y / TILE_SIZE;
+                scene[2][p] = 30.0 * x / TILE_SIZE;
+                scene[3][p] = 60.0 + 20.0 * x / TILE_SIZE;
+                scene[4][p] = Math.max(0.8 + 0.6 * Math.sin(x / 40.0) * Math.cos(y / 60.0) + 0.02 * random.nextGaussian(), 0.0);
+            }
+        }
+        return scene;
+    }
+}
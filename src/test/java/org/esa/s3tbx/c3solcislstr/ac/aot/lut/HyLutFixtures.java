@@ -0,0 +1,83 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.FusedLookupTable;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.MultivariateLookupTable;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+
+/**
+ * Creates small LUTs for the tests of the LUT caches, which are told apart by their maximum AOT, and
+ * small smooth LUTs shaped like the atmospheric parameter LUTs.
+ */
+final class HyLutFixtures {
+
+    private HyLutFixtures() {
+    }
+
+    // the LUT occupies 3 * 4 * 8 bytes
+    static HyLut createLut(double aotMax) {
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(new double[]{0.0, 1.0});
+        final VectorLookupTable rt = new VectorLookupTable(2, new double[]{1.0, 2.0, 3.0, 4.0}, dimensions);
+        final FusedLookupTable fused = new FusedLookupTable(dimensions, new VectorLookupTable[]{rt, rt}, new int[][]{{0}, {0}});
+        final VectorLookupTable tg = new VectorLookupTable(2, new double[]{1.0, 1.0, 0.5, 0.5}, new double[]{0.0, 1.0});
+        final double[] minMax = new double[14];
+        minMax[7] = aotMax;
+        return new HyLut(new MultivariateLookupTable[]{fused, tg}, minMax);
+    }
+
+    // the hsf, aot, raa, vza and sza nodes of the smooth LUT
+    private static final double[][] RT_AXES = {
+            {0.0, 1.0, 2.0}, {0.0, 0.5, 1.0}, {0.0, 90.0, 180.0}, {0.0, 30.0, 60.0}, {0.0, 30.0, 60.0}};
+    // the cwv, ozo and amf nodes of the smooth LUT
+    private static final double[][] TG_AXES = {{0.0, 1.0, 2.0}, {0.0, 1.0}, {1.0, 2.0, 3.0}};
+
+    static HyLut createSmoothLut(int wavelengthCount) {
+        return createSmoothLut(wavelengthCount, VectorLookupTable.Precision.DOUBLE);
+    }
+
+    /**
+     * Creates a LUT whose values are smooth functions of the coordinates. The members of the RT table
+     * are fused like those of a LUT read, see {@link HyLut#read(String, LutReadOptions)}.
+     */
+    static HyLut createSmoothLut(int wavelengthCount, VectorLookupTable.Precision precision) {
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(RT_AXES);
+        final int[][] axes = {{0, 1, 2, 3, 4}, {0, 1, 4}, {0, 1, 3}, {0, 1}};
+        final int[] parameterCounts = {1, 2, 2, 1};
+        final VectorLookupTable[] members = new VectorLookupTable[axes.length];
+        for (int k = 0, parameter = 0; k < members.length; parameter += parameterCounts[k], k++) {
+            final double[][] memberAxes = new double[axes[k].length][];
+            for (int i = 0; i < memberAxes.length; i++) {
+                memberAxes[i] = RT_AXES[axes[k][i]];
+            }
+            final int length = parameterCounts[k] * wavelengthCount;
+            members[k] = new VectorLookupTable(length, createSmoothValues(memberAxes, length, parameter), memberAxes);
+            members[k].setPrecision(precision);
+        }
+        final FusedLookupTable fused = new FusedLookupTable(dimensions, members, axes);
+        final VectorLookupTable tg = new VectorLookupTable(wavelengthCount, createSmoothValues(TG_AXES, wavelengthCount, 6),
+                                                           TG_AXES);
+        tg.setPrecision(precision);
+        final double[] minMax = {0.0, 60.0, 0.0, 60.0, 0.0, 2.0, 0.0, 1.0, 0.0, 1.0, 0.0, 2.0, 1.0, 3.0};
+        return new HyLut(new MultivariateLookupTable[]{fused, tg}, minMax);
+    }
+
+    private static double[] createSmoothValues(double[][] axes, int length, int seed) {
+        int vertexCount = 1;
+        for (double[] axis : axes) {
+            vertexCount *= axis.length;
+        }
+        final double[] values = new double[vertexCount * length];
+        for (int v = 0; v < vertexCount; v++) {
+            double sum = 0.0;
+            for (int i = axes.length, rest = v; i-- > 0; rest /= axes[i].length) {
+                final double[] axis = axes[i];
+                final double x = axis[rest % axis.length] / axis[axis.length - 1];
+                sum += 0.1 * Math.sin(x + seed + i);
+            }
+            for (int w = 0; w < length; w++) {
+                values[v * length + w] = 0.5 + 0.01 * w + sum;
+            }
+        }
+        return values;
+    }
+}
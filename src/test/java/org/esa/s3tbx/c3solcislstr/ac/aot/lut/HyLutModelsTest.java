@@ -0,0 +1,68 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HyLutModelsTest {
+
+    @Test
+    public void testLazyLoading() throws IOException {
+        final AtomicInteger loads = new AtomicInteger();
+        final HyLutModels models = new HyLutModels(4, Long.MAX_VALUE, aerosolModel -> {
+            loads.incrementAndGet();
+            return HyLutFixtures.createLut(aerosolModel);
+        });
+
+        assertEquals(4, models.getModelCount());
+        assertEquals(0, loads.get());
+
+        final HyLut lut = models.getModel(2);
+        assertEquals(2.0, lut.getArrayMinMax()[7], 0.0);
+        assertSame(lut, models.getModel(2));
+        assertEquals(1, loads.get());
+        assertEquals(1, models.getHitCount());
+        assertArrayEquals(new int[]{2}, models.getCachedModels());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedModelIsEvicted() throws IOException {
+        final long footprint = HyLutFixtures.createLut(0).getMemoryFootprint();
+        final HyLutModels models = new HyLutModels(4, 2 * footprint, HyLutFixtures::createLut);
+
+        final HyLut lut0 = models.getModel(0);
+        models.getModel(1);
+        assertSame(lut0, models.getModel(0));
+        models.getModel(3);
+
+        assertArrayEquals(new int[]{0, 3}, models.getCachedModels());
+        assertEquals(2 * footprint, models.getResidentBytes());
+        assertEquals(1, models.getEvictionCount());
+
+        models.getModel(1);
+        assertArrayEquals(new int[]{3, 1}, models.getCachedModels());
+        assertNotSame(lut0, models.getModel(0));
+        assertEquals(5, models.getLoadCount());
+    }
+
+    @Test
+    public void testMostRecentModelIsRetained() throws IOException {
+        final HyLutModels models = new HyLutModels(2, 1, HyLutFixtures::createLut);
+
+        models.getModel(0);
+        models.getModel(1);
+
+        assertArrayEquals(new int[]{1}, models.getCachedModels());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalModel() throws IOException {
+        new HyLutModels(4, Long.MAX_VALUE, HyLutFixtures::createLut).getModel(4);
+    }
+}
@@ -0,0 +1,50 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Compares single and double precision interpolation on a LUT shaped like the atmospheric parameter LUTs.
+ */
+public class HyLutPrecisionTest {
+
+    private static final int WAVELENGTH_COUNT = 3;
+    private static final double MAX_ERROR = 1.0e-5;
+
+    @Test
+    public void testFloatPrecision() {
+        final HyLut doubleLut = HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT, VectorLookupTable.Precision.DOUBLE);
+        final HyLut floatLut = HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT, VectorLookupTable.Precision.FLOAT);
+        final Random random = new Random(5489);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[][] expected = new double[5][WAVELENGTH_COUNT];
+        final double[][] actual = new double[5][WAVELENGTH_COUNT];
+        final double[] expectedTG = new double[WAVELENGTH_COUNT];
+        final double[] actualTG = new double[WAVELENGTH_COUNT];
+
+        for (int i = 0; i < 10000; i++) {
+            final double aot = random.nextDouble();
+            final double sza = 60.0 * random.nextDouble();
+            final double vza = 60.0 * random.nextDouble();
+            final double raa = 180.0 * random.nextDouble();
+            final double hsf = 2.0 * random.nextDouble();
+            doubleLut.getRT(aot, sza, vza, raa, hsf, expected, workspace);
+            floatLut.getRT(aot, sza, vza, raa, hsf, actual, workspace);
+            for (int k = 0; k < expected.length; k++) {
+                assertArrayEquals(expected[k], actual[k], MAX_ERROR);
+            }
+
+            final double cwv = 2.0 * random.nextDouble();
+            final double ozo = random.nextDouble();
+            final double amf = 1.0 + 2.0 * random.nextDouble();
+            doubleLut.getTG(cwv, ozo, amf, expectedTG, workspace);
+            floatLut.getTG(cwv, ozo, amf, actualTG, workspace);
+            assertArrayEquals(expectedTG, actualTG, MAX_ERROR);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HyLutTest {
+
+    // a synthetic remapping of six LUT wavelengths
+    private static final int[] REMAPPING = {5, 3, 4, 0, 1, 2};
+
+    @Test
+    public void testSelectWavelengths() {
+        assertArrayEquals(new int[]{3, 0, 2}, HyLut.selectWavelengths(REMAPPING, new int[]{1, 3, 5}));
+        assertArrayEquals(new int[]{5}, HyLut.selectWavelengths(REMAPPING, new int[]{0}));
+        assertSame(REMAPPING, HyLut.selectWavelengths(REMAPPING, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWavelengthsRejectsEmptySubset() {
+        HyLut.selectWavelengths(REMAPPING, new int[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWavelengthsRejectsUnknownWavelength() {
+        HyLut.selectWavelengths(REMAPPING, new int[]{1, 6});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWavelengthsRejectsNegativeWavelength() {
+        HyLut.selectWavelengths(REMAPPING, new int[]{-1, 2});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWavelengthsRejectsDescendingOrder() {
+        HyLut.selectWavelengths(REMAPPING, new int[]{3, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWavelengthsRejectsDuplicates() {
+        HyLut.selectWavelengths(REMAPPING, new int[]{2, 2});
+    }
+
+    @Test
+    public void testReadOptionsWithWavelengths() {
+        final LutReadOptions options = LutReadOptions.forSlstr().withWavelengths(new int[]{1, 4});
+        assertArrayEquals(new int[]{1, 4}, options.getWavelengths());
+        assertArrayEquals(new int[]{1, 4}, options.getRemapping());
+        assertNull(LutReadOptions.forSlstr().getWavelengths());
+        assertArrayEquals(HyLutSlstr.REMAPPING, LutReadOptions.forSlstr().getRemapping());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadOptionsRejectUnknownWavelength() {
+        LutReadOptions.forSlstr().withWavelengths(new int[]{6});
+    }
+}
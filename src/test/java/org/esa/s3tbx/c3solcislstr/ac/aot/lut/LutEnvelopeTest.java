@@ -0,0 +1,50 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class LutEnvelopeTest {
+
+    @Test
+    public void testGetIndexRangeIncreasing() {
+        final double[] sequence = {0.0, 10.0, 20.0, 30.0, 40.0, 50.0, 60.0};
+
+        assertArrayEquals(new int[]{1, 4}, LutEnvelope.getIndexRange(sequence, 25.0, 28.0));
+        assertArrayEquals(new int[]{1, 4}, LutEnvelope.getIndexRange(sequence, 20.0, 30.0));
+        assertArrayEquals(new int[]{1, 3}, LutEnvelope.getIndexRange(sequence, 20.0, 20.0));
+        assertArrayEquals(new int[]{0, 2}, LutEnvelope.getIndexRange(sequence, -5.0, 5.0));
+        assertArrayEquals(new int[]{4, 6}, LutEnvelope.getIndexRange(sequence, 55.0, 70.0));
+        assertArrayEquals(new int[]{0, 6}, LutEnvelope.getIndexRange(sequence, -5.0, 70.0));
+    }
+
+    @Test
+    public void testGetIndexRangeDecreasing() {
+        final double[] sequence = {60.0, 50.0, 40.0, 30.0, 20.0, 10.0, 0.0};
+
+        assertArrayEquals(new int[]{1, 6}, LutEnvelope.getIndexRange(sequence, 12.0, 38.0));
+        assertArrayEquals(new int[]{0, 2}, LutEnvelope.getIndexRange(sequence, 55.0, 70.0));
+        assertArrayEquals(new int[]{4, 6}, LutEnvelope.getIndexRange(sequence, -5.0, 5.0));
+    }
+
+    @Test
+    public void testRanges() {
+        final LutEnvelope envelope = new LutEnvelope(0.0, 1.5, 10.0, 90.0, 0.0, 40.0, 30.0, 45.0);
+
+        assertArrayEquals(new double[]{0.0, 1.5}, envelope.getRange(0), 0.0);
+        assertNull(envelope.getRange(1));
+        assertArrayEquals(new double[]{10.0, 90.0}, envelope.getRange(2), 0.0);
+        assertArrayEquals(new double[]{0.0, 40.0}, envelope.getRange(3), 0.0);
+        assertArrayEquals(new double[]{30.0, 45.0}, envelope.getRange(4), 0.0);
+        assertEquals(envelope, new LutEnvelope(0.0, 1.5, 10.0, 90.0, 0.0, 40.0, 30.0, 45.0));
+        assertFalse(envelope.equals(new LutEnvelope(0.0, 1.5, 10.0, 90.0, 0.0, 40.0, 30.0, 50.0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalRange() {
+        new LutEnvelope(0.0, 1.5, 10.0, 90.0, 0.0, 40.0, 45.0, 30.0);
+    }
+}
@@ -0,0 +1,115 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.FusedLookupTable;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.MultivariateLookupTable;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LutPairTest {
+
+    @Test
+    public void testStacking() {
+        final HyLut first = createLut(1, 2.0);
+        final HyLut second = createLut(2, 10.0);
+        final LutPair pair = new LutPair(first, second);
+        final LutPair.Buffers buffers = pair.createBuffers(LookupWorkspace.Search.HUNT);
+
+        assertEquals(3, pair.getWavelengthCount());
+        assertEquals(1, pair.getFirstWavelengthCount());
+
+        pair.getRT(0.5, 0.5, 0.25, 0.25, 0.25, 0.75, 0.75, 0.75, true, buffers);
+        final double[][] rtFirst = first.getRT(0.5, 0.25, 0.25, 0.25, 0.5);
+        final double[][] rtSecond = second.getRT(0.5, 0.75, 0.75, 0.75, 0.5);
+        for (int k = 0; k < 5; k++) {
+            assertArrayEquals(new double[]{rtFirst[k][0], rtSecond[k][0], rtSecond[k][1]}, buffers.getRT()[k], 1.0e-12);
+        }
+
+        pair.getTG(0.5, 0.5, 0.0, 1.0, buffers);
+        assertArrayEquals(new double[]{first.getTG(0.5, 0.5, 0.0)[0], second.getTG(0.5, 0.5, 1.0)[0],
+                                       second.getTG(0.5, 0.5, 1.0)[1]}, buffers.getTG(), 1.0e-12);
+    }
+
+    @Test
+    public void testStackingWithDifferentAot() {
+        final HyLut first = createLut(1, 2.0, new double[]{0.0, 1.0});
+        final HyLut second = createLut(2, 10.0, new double[]{0.0, 2.0});
+        final LutPair pair = new LutPair(first, second);
+        final LutPair.Buffers buffers = pair.createBuffers(LookupWorkspace.Search.HUNT);
+
+        pair.getRT(0.5, 0.5, 0.25, 0.25, 0.25, 0.75, 0.75, 0.75, false, buffers);
+        final double[][] rtFirst = first.getRT(0.5, 0.25, 0.25, 0.25, 0.5);
+        final double[][] rtSecond = second.getRT(0.5, 0.75, 0.75, 0.75, 0.5);
+        for (int k = 0; k < 5; k++) {
+            assertArrayEquals(new double[]{rtFirst[k][0], rtSecond[k][0], rtSecond[k][1]}, buffers.getRT()[k], 1.0e-12);
+        }
+    }
+
+    @Test
+    public void testDerivatives() {
+        final HyLut first = createLut(1, 2.0);
+        final HyLut second = createLut(2, 10.0);
+        final LutPair pair = new LutPair(first, second);
+        final LutPair.Buffers buffers = pair.createBuffers(LookupWorkspace.Search.DIRECT);
+
+        pair.getRT(0.5, 0.5, 0.25, 0.25, 0.25, 0.75, 0.75, 0.75, true, buffers);
+        final double[][] rtFirst = new double[5][1];
+        final double[][] rtDerivativesFirst = new double[5][1];
+        final double[][] rtSecond = new double[5][2];
+        final double[][] rtDerivativesSecond = new double[5][2];
+        first.getRT(0.5, 0.25, 0.25, 0.25, 0.5, rtFirst, rtDerivativesFirst, new LookupWorkspace());
+        second.getRT(0.5, 0.75, 0.75, 0.75, 0.5, rtSecond, rtDerivativesSecond, new LookupWorkspace());
+        for (int k = 0; k < 5; k++) {
+            assertArrayEquals(new double[]{rtFirst[k][0], rtSecond[k][0], rtSecond[k][1]}, buffers.getRT()[k], 1.0e-12);
+            assertArrayEquals(new double[]{rtDerivativesFirst[k][0], rtDerivativesSecond[k][0], rtDerivativesSecond[k][1]},
+                              buffers.getRTDerivatives()[k], 1.0e-12);
+        }
+    }
+
+    @Test
+    public void testMissingSensor() {
+        final HyLut second = createLut(2, 10.0);
+        final LutPair pair = new LutPair(null, second);
+        final LutPair.Buffers buffers = pair.createBuffers(LookupWorkspace.Search.DIRECT);
+
+        assertEquals(2, pair.getWavelengthCount());
+        assertEquals(0, pair.getFirstWavelengthCount());
+
+        pair.getTG(0.5, 0.5, 0.0, 0.5, buffers);
+        assertArrayEquals(second.getTG(0.5, 0.5, 0.5), buffers.getTG(), 1.0e-12);
+    }
+
+    private static HyLut createLut(int wavelengthCount, double scale) {
+        return createLut(wavelengthCount, scale, new double[]{0.0, 1.0});
+    }
+
+    private static HyLut createLut(int wavelengthCount, double scale, double[] aotAxis) {
+        final double[] axis = {0.0, 1.0};
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(axis, aotAxis, axis, axis, axis);
+        final int[][] axes = {{0, 1, 2, 3, 4}, {0, 1, 4}, {0, 1, 3}, {0, 1}};
+        final int[] lengths = {wavelengthCount, 2 * wavelengthCount, 2 * wavelengthCount, wavelengthCount};
+        final VectorLookupTable[] members = new VectorLookupTable[axes.length];
+        for (int k = 0; k < members.length; k++) {
+            final double[] values = new double[lengths[k] << axes[k].length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = scale + 0.01 * i + k;
+            }
+            final IntervalPartition[] memberDimensions = new IntervalPartition[axes[k].length];
+            for (int i = 0; i < memberDimensions.length; i++) {
+                memberDimensions[i] = dimensions[axes[k][i]];
+            }
+            members[k] = new VectorLookupTable(lengths[k], values, memberDimensions);
+        }
+        final FusedLookupTable fused = new FusedLookupTable(dimensions, members, axes);
+        final double[] tgValues = new double[wavelengthCount << 3];
+        for (int i = 0; i < tgValues.length; i++) {
+            tgValues[i] = scale - 0.1 * i;
+        }
+        final VectorLookupTable tg = new VectorLookupTable(wavelengthCount, tgValues, axis, axis, axis);
+        return new HyLut(new MultivariateLookupTable[]{fused, tg}, new double[14]);
+    }
+}
@@ -0,0 +1,55 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class LutPreloaderTest {
+
+    @Test
+    public void testTakePreloaded() throws Exception {
+        final LutPreloader preloader = new LutPreloader();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        preloader.preload("key", () -> {
+            release.await();
+            return "preloaded " + loads.incrementAndGet();
+        });
+        preloader.preload("key", () -> "preloaded again");
+        assertEquals(1, preloader.getPendingCount());
+
+        release.countDown();
+        assertEquals("preloaded 1", preloader.take("key", () -> "loaded"));
+        assertEquals(0, preloader.getPendingCount());
+        assertEquals("loaded", preloader.take("key", () -> "loaded"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testUntakenLoadIsDropped() throws Exception {
+        final LutPreloader preloader = new LutPreloader(10);
+
+        preloader.preload("key", () -> "preloaded");
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (preloader.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, preloader.getPendingCount());
+        assertEquals("loaded", preloader.take("key", () -> "loaded"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailure() throws IOException {
+        final LutPreloader preloader = new LutPreloader();
+        preloader.preload("key", () -> {
+            throw new IOException("not found");
+        });
+        preloader.take("key", () -> "loaded");
+    }
+}
@@ -0,0 +1,140 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LutRegistryTest {
+
+    private static final String LOCATION = new File("lut.nc").getAbsolutePath();
+
+    @Test
+    public void testLoadOnce() throws Exception {
+        final LutRegistry registry = new LutRegistry();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final LutRegistry.Loader<HyLut> loader = () -> {
+            loads.incrementAndGet();
+            return createLut();
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<HyLut>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final Callable<HyLut> task = () -> {
+                    start.await();
+                    return registry.get(createKey(VectorLookupTable.Precision.DOUBLE), loader);
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            final HyLut lut = futures.get(0).get();
+            for (Future<HyLut> future : futures) {
+                assertSame(lut, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, registry.getLoadCount());
+        assertEquals(7, registry.getHitCount());
+        assertEquals(1, registry.size());
+        assertEquals(3 * 4 * 8, registry.getResidentBytes());
+    }
+
+    @Test
+    public void testKeys() throws IOException {
+        final LutRegistry registry = new LutRegistry();
+        final HyLut lut = registry.get(createKey(VectorLookupTable.Precision.DOUBLE), LutRegistryTest::createLut);
+
+        assertSame(lut, registry.get(createKey(VectorLookupTable.Precision.DOUBLE), LutRegistryTest::createLut));
+        assertNotSame(lut, registry.get(createKey(VectorLookupTable.Precision.FLOAT), LutRegistryTest::createLut));
+        assertNotSame(lut, registry.get(new LutRegistry.Key(LOCATION, LutReadOptions.forSlstr()), LutRegistryTest::createLut));
+        assertSame(lut, registry.get(new LutRegistry.Key(LOCATION, LutReadOptions.forOlci().withSnapshot(new File("lut.snapshot"))),
+                                     LutRegistryTest::createLut));
+        assertEquals(3, registry.size());
+
+        registry.clear();
+        assertEquals(0, registry.size());
+        assertNotSame(lut, registry.get(createKey(VectorLookupTable.Precision.DOUBLE), LutRegistryTest::createLut));
+        assertEquals(4, registry.getLoadCount());
+    }
+
+    @Test
+    public void testAerosolModels() throws IOException {
+        final LutRegistry registry = new LutRegistry();
+        final LutReadOptions options = LutReadOptions.forOlci();
+        final HyLutModels models = new HyLutModels(4, Long.MAX_VALUE, aerosolModel -> registry.get(
+                new LutRegistry.Key(LOCATION, options.withAerosolModel(aerosolModel)),
+                () -> HyLutFixtures.createLut(aerosolModel)));
+
+        final HyLut lut = models.getModel(2);
+        assertEquals(2.0, lut.getArrayMinMax()[7], 0.0);
+        assertSame(lut, registry.get(new LutRegistry.Key(LOCATION, options.withAerosolModel(2)), LutRegistryTest::createLut));
+        assertNotSame(lut, registry.get(createKey(VectorLookupTable.Precision.DOUBLE), LutRegistryTest::createLut));
+        assertEquals(2, registry.size());
+        assertEquals(2, registry.getLoadCount());
+    }
+
+    @Test
+    public void testModifiedLutFile() throws IOException {
+        final File file = File.createTempFile("lut", ".nc");
+        try {
+            final LutRegistry registry = new LutRegistry();
+            final LutReadOptions options = LutReadOptions.forOlci();
+            final HyLut lut = registry.get(new LutRegistry.Key(file.getPath(), options), LutRegistryTest::createLut);
+            assertTrue(file.setLastModified(file.lastModified() - 60000));
+
+            assertNotSame(lut, registry.get(new LutRegistry.Key(file.getPath(), options), LutRegistryTest::createLut));
+            assertEquals(1, registry.size());
+            assertEquals(2, registry.getLoadCount());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testContractionCacheIsNotShared() throws IOException {
+        final LutRegistry registry = new LutRegistry();
+        final HyLut lut = registry.get(createKey(VectorLookupTable.Precision.DOUBLE), LutRegistryTest::createLut);
+        final HyLut a = lut.withContractionCacheCapacity(16);
+        final HyLut b = lut.withContractionCacheCapacity(16);
+
+        assertNotSame(a, b);
+        assertNotSame(a.getContractionCache(), b.getContractionCache());
+        assertNull(lut.getContractionCache());
+        assertEquals(lut.getMemoryFootprint(), a.getMemoryFootprint());
+        assertEquals(lut.getArrayMinMax()[7], a.getArrayMinMax()[7], 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalWavelengths() {
+        LutReadOptions.forSlstr().withWavelengths(new int[]{2, 6});
+    }
+
+    private static LutRegistry.Key createKey(VectorLookupTable.Precision precision) throws IOException {
+        return new LutRegistry.Key(LOCATION, LutReadOptions.forOlci().withPrecision(precision));
+    }
+
+    private static HyLut createLut() {
+        return HyLutFixtures.createLut(2.0);
+    }
+}
@@ -0,0 +1,140 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.Array;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.IntervalPartition;
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.VectorLookupTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LutSnapshotTest {
+
+    private static final int[] REMAPPING = {1, 0};
+
+    private File dir;
+    private File source;
+    private File snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lut-snapshot").toFile();
+        source = new File(dir, "lut.nc");
+        snapshot = new File(dir, "lut.nc.snapshot");
+        Files.write(source.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7});
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final LutSnapshot expected = createSnapshot();
+        expected.write(snapshot, source);
+        final LutSnapshot actual = LutSnapshot.read(snapshot);
+
+        assertArrayEquals(expected.arrayMinMax, actual.arrayMinMax, 0.0);
+        assertArrayEquals(REMAPPING, actual.remapping);
+        assertArrayEquals(expected.vectorLengths, actual.vectorLengths);
+        for (int k = 0; k < LutSnapshot.TABLE_COUNT; k++) {
+            assertEquals(expected.dimensions[k].length, actual.dimensions[k].length);
+            for (int i = 0; i < expected.dimensions[k].length; i++) {
+                assertArrayEquals(expected.dimensions[k][i].getSequence(), actual.dimensions[k][i].getSequence(), 0.0);
+            }
+            assertArrayEquals(toArray(expected.values[k]), toArray(actual.values[k]), 0.0);
+        }
+
+        // the mapped values are used for lookups directly
+        final VectorLookupTable table = new VectorLookupTable(actual.vectorLengths[0], actual.values[0], actual.dimensions[0]);
+        assertArrayEquals(new double[]{2.5, 3.5}, table.getValues(0.5, 0.5), 1.0e-6);
+    }
+
+    @Test
+    public void testIsCurrent() throws IOException {
+        assertFalse(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+
+        createSnapshot().write(snapshot, source);
+        assertTrue(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+        assertFalse(LutSnapshot.isCurrent(snapshot, source, new int[]{0, 1}));
+
+        // same content, different modification time
+        assertTrue(source.setLastModified(source.lastModified() - 60000));
+        assertTrue(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+
+        // the modification time of the stamp was updated, so the checksum is not compared
+        final long lastModified = source.lastModified();
+        Files.write(source.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 0});
+        assertTrue(source.setLastModified(lastModified));
+        assertTrue(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+
+        // same length, different content
+        Files.write(source.toPath(), new byte[]{7, 6, 5, 4, 3, 2, 1});
+        assertTrue(source.setLastModified(source.lastModified() - 120000));
+        assertFalse(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+    }
+
+    @Test
+    public void testNaNIsNotWritten() {
+        final LutSnapshot tables = createSnapshot();
+        tables.values[2].setValue(3, Double.NaN);
+        try {
+            tables.write(snapshot, source);
+            fail();
+        } catch (IOException expected) {
+            assertFalse(snapshot.exists());
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshotIsNotCurrent() throws IOException {
+        Files.write(snapshot.toPath(), new byte[]{0x43, 0x33});
+        assertFalse(LutSnapshot.isCurrent(snapshot, source, REMAPPING));
+    }
+
+    private static LutSnapshot createSnapshot() {
+        final double[] minMax = new double[14];
+        for (int i = 0; i < minMax.length; i++) {
+            minMax[i] = 0.5 * i;
+        }
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(new double[]{0.0, 1.0}, new double[]{0.0, 1.0});
+        final IntervalPartition[][] allDimensions = new IntervalPartition[LutSnapshot.TABLE_COUNT][];
+        final Array[] values = new Array[LutSnapshot.TABLE_COUNT];
+        final int[] vectorLengths = new int[LutSnapshot.TABLE_COUNT];
+        for (int k = 0; k < LutSnapshot.TABLE_COUNT; k++) {
+            allDimensions[k] = dimensions;
+            vectorLengths[k] = 2;
+            // an odd number of float values puts the next table at an unaligned position
+            values[k] = k % 2 == 0 ? new Array.Float(new float[]{1, 2, 2, 3, 3, 4, 4, 5}) :
+                        new Array.Double(new double[]{1, 2, 2, 3, 3, 4, 4, 5});
+        }
+        values[1] = new Array.Float(new float[]{1, 2, 3});
+        vectorLengths[1] = 3;
+        allDimensions[1] = new IntervalPartition[0];
+        return new LutSnapshot(minMax, REMAPPING, vectorLengths, allDimensions, values);
+    }
+
+    private static double[] toArray(Array array) {
+        final double[] values = new double[array.getLength()];
+        array.getValues(0, values);
+        return values;
+    }
+}
@@ -0,0 +1,205 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.aot.InputPixelData;
+import org.esa.s3tbx.c3solcislstr.ac.aot.PointRetrieval;
+import org.esa.s3tbx.c3solcislstr.ac.aot.math.BrentFitFunction;
+import org.esa.s3tbx.c3solcislstr.ac.aot.util.PixelGeometry;
+import org.junit.Test;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class MomoLutTest {
+
+    private static final int N_WVL = 3;
+    // the surface height is stored in decreasing order
+    private static final float[] HSF = {1100.0f, 500.0f};
+    private static final float[] VZA = {0.0f, 60.0f};
+    private static final float[] SZA = {0.0f, 70.0f};
+    private static final float[] AZI = {0.0f, 180.0f};
+    private static final float[] AOT = {0.0f, 1.0f, 2.0f};
+    // parameter 5 is not used and must be skipped
+    private static final double[] PARAMETERS = {0.02, 0.8, 0.1, 0.3, 99.0};
+
+    @Test
+    public void testSdrAndDiffuseFrac() throws IOException {
+        final MomoLut lut = createLut();
+        final MomoLut.Buffers buffers = lut.createBuffers();
+        final InputPixelData ipd = createPixelData(0.2);
+
+        for (double tau : new double[]{0.25, 1.5}) {
+            lut.getSdrAndDiffuseFrac(ipd, tau, buffers);
+            final double cosSza = Math.cos(Math.toRadians(ipd.geomOlci.sza));
+            for (int iWvl = 0; iWvl < N_WVL; iWvl++) {
+                final double rhoPath = getValue(0, iWvl, ipd, tau) * Math.PI / cosSza;
+                final double tupTdown = getValue(1, iWvl, ipd, tau) / cosSza;
+                final double spherAlb = getValue(2, iWvl, ipd, tau);
+                final double a = (ipd.toaReflec[iWvl] / getGasTransmission(iWvl) - rhoPath) / tupTdown;
+                assertEquals(a / (1 + spherAlb * a), ipd.surfReflec[iWvl], 1.0e-6);
+                assertEquals(1.0 - getValue(3, iWvl, ipd, tau), ipd.diffuseFrac[iWvl], 1.0e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxAOT() throws IOException {
+        final MomoLut lut = createLut();
+        final MomoLut.Buffers buffers = lut.createBuffers();
+        final InputPixelData ipd = createPixelData(0.1);
+
+        final double cosSza = Math.cos(Math.toRadians(ipd.geomOlci.sza));
+        final double toa = ipd.toaReflec[0] / getGasTransmission(0);
+        final double expected = (toa * cosSza / Math.PI - getValue(0, 0, ipd, 0.0)) / 0.02;
+        assertEquals(expected, lut.getMaxAOT(ipd, buffers), 1.0e-5);
+        assertEquals(0.005, lut.getMaxAOT(createPixelData(0.0), buffers), 0.0);
+        assertEquals(2.0, lut.getMaxAOT(createPixelData(1.0), buffers), 0.0);
+    }
+
+    @Test
+    public void testRetrievalWithSharedLut() throws Exception {
+        final MomoLut lut = createLut();
+        final float[] expected = retrieve(lut, 0, 1, 64);
+
+        // the threads retrieve interleaved super-pixels, all sharing the LUT
+        final int threadCount = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Callable<float[]>> tasks = new ArrayList<>(threadCount);
+            for (int t = 0; t < threadCount; t++) {
+                final int first = t;
+                tasks.add(() -> retrieve(lut, first, threadCount, expected.length));
+            }
+            final List<Future<float[]>> futures = executor.invokeAll(tasks);
+            for (int t = 0; t < threadCount; t++) {
+                final float[] actual = futures.get(t).get();
+                for (int i = t; i < expected.length; i += threadCount) {
+                    assertEquals(expected[i], actual[i], 0.0f);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // retrieves the AOT of the super-pixels first, first + step, ..., the others are NaN
+    private static float[] retrieve(MomoLut lut, int first, int step, int count) {
+        final MomoLut.Buffers buffers = lut.createBuffers();
+        final double[] specWeights = new double[N_WVL];
+        Arrays.fill(specWeights, 1.0);
+        final double[] specSoil = {0.1, 0.2, 0.3};
+        final double[] specVeg = {0.05, 0.05, 0.4};
+        final float[] aot = new float[count];
+        Arrays.fill(aot, Float.NaN);
+        for (int i = first; i < count; i += step) {
+            final InputPixelData[] superPixel = createSuperPixel(new Random(5489 + i));
+            final BrentFitFunction fitFunction = new BrentFitFunction(BrentFitFunction.SPECTRAL_MODEL, superPixel, lut,
+                                                                      buffers, specWeights, specSoil, specVeg);
+            aot[i] = new PointRetrieval(fitFunction).runRetrieval(fitFunction.getMaxAOT()).getOptAOT();
+        }
+        return aot;
+    }
+
+    private static InputPixelData[] createSuperPixel(Random random) {
+        final PixelGeometry geometry = new PixelGeometry(20.0 + 40.0 * random.nextDouble(), 0.0,
+                                                         30.0 * random.nextDouble(), 180.0 * random.nextDouble());
+        final InputPixelData[] superPixel = new InputPixelData[9];
+        for (int k = 0; k < superPixel.length; k++) {
+            final double[] toaReflec = new double[N_WVL];
+            for (int iWvl = 0; iWvl < N_WVL; iWvl++) {
+                toaReflec[iWvl] = 0.12 + 0.2 * random.nextDouble() * (iWvl + 1) / N_WVL;
+            }
+            superPixel[k] = new InputPixelData(geometry, 800.0, 300.0, 2.0, new float[N_WVL], toaReflec);
+        }
+        return superPixel;
+    }
+
+    private static InputPixelData createPixelData(double toa) {
+        final PixelGeometry geometry = new PixelGeometry(30.0, 100.0, 10.0, 20.0);
+        final double[] toaReflec = {toa, toa + 0.05, toa + 0.1};
+        return new InputPixelData(geometry, 800.0, 300.0, 2.0, new float[N_WVL], toaReflec);
+    }
+
+    // the parameters are linear in all coordinates, so they are interpolated exactly
+    private static double getValue(int iPar, int iWvl, InputPixelData ipd, double tau) {
+        return getValue(iPar, iWvl, ipd.surfPressure, ipd.geomOlci.vza, tau);
+    }
+
+    private static double getValue(int iPar, int iWvl, double hsf, double vza, double aot) {
+        return PARAMETERS[iPar] + 0.01 * iWvl + 1.0e-5 * hsf + 1.0e-4 * vza + 0.02 * aot;
+    }
+
+    private static double getGasTransmission(int iWvl) {
+        return 0.9 - 0.01 * iWvl;
+    }
+
+    private static MomoLut createLut() throws IOException {
+        return new MomoLut(createAotStream(), createGasStream(), N_WVL);
+    }
+
+    private static ImageInputStream createAotStream() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        for (float[] dimension : new float[][]{VZA, SZA, AZI, HSF, AOT}) {
+            writeDimension(out, dimension, true);
+        }
+        for (int iWvl = 0; iWvl < N_WVL; iWvl++) {
+            for (float aot : AOT) {
+                for (float hsf : HSF) {
+                    for (int iAzi = 0; iAzi < AZI.length; iAzi++) {
+                        for (int iSza = 0; iSza < SZA.length; iSza++) {
+                            for (float vza : VZA) {
+                                for (int iPar = 0; iPar < PARAMETERS.length; iPar++) {
+                                    out.writeFloat((float) getValue(iPar, iWvl, hsf, vza, aot));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static ImageInputStream createGasStream() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final float[] ang = {0.0f, 60.0f};
+        final float[] cwv = {0.0f, 5.0f};
+        final float[] ozo = {0.0f, 1.0f};
+        out.writeInt(ang.length);
+        out.writeInt(cwv.length);
+        out.writeInt(ozo.length);
+        writeDimension(out, ang, false);
+        writeDimension(out, cwv, false);
+        writeDimension(out, ozo, false);
+        for (int i = 0; i < ang.length * cwv.length * ozo.length; i++) {
+            for (int iWvl = 0; iWvl < N_WVL; iWvl++) {
+                out.writeFloat((float) getGasTransmission(iWvl));
+            }
+        }
+        return new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void writeDimension(DataOutputStream out, float[] dimension, boolean withLength) throws IOException {
+        if (withLength) {
+            out.writeInt(dimension.length);
+        }
+        for (float value : dimension) {
+            out.writeFloat(value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.esa.s3tbx.c3solcislstr.ac.aot.lut;
+
+import org.esa.s3tbx.c3solcislstr.ac.auxdata.lut.LookupWorkspace;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SurrogateLutTest {
+
+    private static final int WAVELENGTH_COUNT = 3;
+    private static final double MAX_ERROR = 1.0e-3;
+
+    @Test
+    public void testErrorWithinBound() {
+        final HyLut lut = HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT);
+        final SurrogateLut surrogateLut = SurrogateLut.fit(lut, 3, MAX_ERROR);
+        assertEquals(WAVELENGTH_COUNT, surrogateLut.getWavelengthCount());
+
+        // other points than those the surrogates were tested at when they were fitted
+        final Random random = new Random(42);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[][] expected = new double[5][WAVELENGTH_COUNT];
+        final double[][] actual = new double[5][WAVELENGTH_COUNT];
+        final double[] expectedTG = new double[WAVELENGTH_COUNT];
+        final double[] actualTG = new double[WAVELENGTH_COUNT];
+        for (int i = 0; i < 10000; i++) {
+            final double aot = random.nextDouble();
+            final double sza = 60.0 * random.nextDouble();
+            final double vza = 60.0 * random.nextDouble();
+            final double raa = 180.0 * random.nextDouble();
+            final double hsf = 2.0 * random.nextDouble();
+            lut.getRT(aot, sza, vza, raa, hsf, expected, workspace);
+            surrogateLut.getRT(aot, sza, vza, raa, hsf, actual, workspace);
+            for (int k = 0; k < expected.length; k++) {
+                assertArrayEquals(expected[k], actual[k], MAX_ERROR);
+            }
+
+            final double cwv = 2.0 * random.nextDouble();
+            final double ozo = random.nextDouble();
+            final double amf = 1.0 + 2.0 * random.nextDouble();
+            lut.getTG(cwv, ozo, amf, expectedTG, workspace);
+            surrogateLut.getTG(cwv, ozo, amf, actualTG, workspace);
+            assertArrayEquals(expectedTG, actualTG, MAX_ERROR);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFitRejectsUnattainableBound() {
+        // a linear polynomial cannot match the multilinear interpolation within a single cell
+        SurrogateLut.fit(HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT), 1, 1.0e-12);
+    }
+
+    @Test
+    public void testWriteReport() {
+        final SurrogateLut surrogateLut = SurrogateLut.fit(HyLutFixtures.createSmoothLut(WAVELENGTH_COUNT), 3, MAX_ERROR);
+        final StringWriter writer = new StringWriter();
+        surrogateLut.writeReport(writer);
+        final String report = writer.toString();
+        assertTrue(report.startsWith("# LUT surrogate accuracy"));
+        for (String name : new String[]{"[RP]", "[TD*TU]", "[SA]", "[DD]", "[DU]", "[TG]"}) {
+            assertTrue(report.contains(name));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayTest {
+
+    private static final int[] CARDINALS = {3, 4, 2, 5};
+
+    private static Array createArray() {
+        final double[] values = new double[3 * 4 * 2 * 5];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        return new Array.Double(values);
+    }
+
+    @Test
+    public void testDegradedIsView() {
+        final Array array = createArray();
+        final Array degraded = array.degraded(2, 1, CARDINALS);
+        final Array expected = ArrayUtilities.degrade(2, 1, CARDINALS, array, new Array.Double(new double[array.getLength() / 2]));
+
+        assertTrue(degraded instanceof Array.View);
+        assertArrayEquals(toArray(expected), toArray(degraded), 0.0);
+        assertArrayEquals(toArray(expected), toArray(degraded.compacted()), 0.0);
+    }
+
+    @Test
+    public void testReorderedIsView() {
+        final Array array = createArray();
+        final int[] reordering = {3, 2, 1, 0};
+        final Array reordered = array.reordered(reordering, CARDINALS);
+        final Array expected = ArrayUtilities.reorder(reordering, CARDINALS, array, new Array.Double(new double[array.getLength()]));
+
+        assertTrue(reordered instanceof Array.View);
+        assertArrayEquals(toArray(expected), toArray(reordered), 0.0);
+        for (int i = 0; i < expected.getLength(); i++) {
+            assertEquals(expected.getValue(i), reordered.getValue(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testComposedViews() {
+        final Array array = createArray();
+        final Array view = array.degraded(1, 3, CARDINALS).reordered(new int[]{2, 0, 1}, new int[]{3, 2, 5});
+
+        final Array degraded = ArrayUtilities.degrade(1, 3, CARDINALS, array, new Array.Double(new double[array.getLength() / 4]));
+        final Array expected = ArrayUtilities.reorder(new int[]{2, 0, 1}, new int[]{3, 2, 5}, degraded, new Array.Double(new double[degraded.getLength()]));
+
+        assertArrayEquals(toArray(expected), toArray(view), 0.0);
+    }
+
+    @Test
+    public void testLookupTableResolvesView() {
+        final Array array = createArray();
+        // a table of vectors of length 3 over the dimensions 0..4, 0..1, 0..4 in reversed order
+        final Array view = array.reordered(new int[]{1, 2, 3, 0}, CARDINALS);
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(
+                new double[]{0, 1, 2, 3}, new double[]{0, 1}, new double[]{0, 1, 2, 3, 4});
+        final VectorLookupTable lazy = new VectorLookupTable(3, view, dimensions);
+        final VectorLookupTable compact = new VectorLookupTable(3, view.compacted(), dimensions);
+
+        assertArrayEquals(compact.getValues(1.5, 0.25, 3.75), lazy.getValues(1.5, 0.25, 3.75), 0.0);
+        assertArrayEquals(compact.getValues(0.0, 1.0, 0.0), lazy.getValues(0.0, 1.0, 0.0), 0.0);
+    }
+
+    @Test
+    public void testReorderLargeArrays() {
+        final int[] cardinals = {64, 33, 17, 31};
+        final float[] values = new float[64 * 33 * 17 * 31];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        final Array source = new Array.Float(values);
+        final int[][] reorderings = {{3, 2, 1, 0}, {0, 1, 3, 2}, {2, 0, 3, 1}, {0, 1, 2, 3}};
+
+        for (int[] reordering : reorderings) {
+            final Array result = ArrayUtilities.reorder(reordering, cardinals, source, new Array.Float(new float[values.length]));
+            final int[] resultCardinals = ArrayUtilities.reorder(reordering, cardinals, new int[4]);
+            final int[] mi = new int[4];
+            for (int i = 0; i < values.length; i++) {
+                // the source index of the result element, computed naively
+                int k = i;
+                for (int j = 4; j-- > 0; ) {
+                    mi[reordering[j]] = k % resultCardinals[j];
+                    k /= resultCardinals[j];
+                }
+                final int sourceIndex = ((mi[0] * cardinals[1] + mi[1]) * cardinals[2] + mi[2]) * cardinals[3] + mi[3];
+                assertEquals(sourceIndex, result.getValue(i), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testIdentityRemappingIsCompiledAway() {
+        final VectorLookupTable table = new VectorLookupTable(2, new double[]{1, 2, 3, 4}, new double[]{0, 1});
+
+        assertSame(table, Remapped.of(table, new int[]{0, 1}));
+        assertTrue(Remapped.of(table, new int[]{1, 0}) instanceof Remapped);
+    }
+
+    @Test
+    public void testQuantized() {
+        final double[] values = new double[3 * 200];
+        for (int i = 0; i < values.length; i++) {
+            // the elements of the period span very different ranges
+            values[i] = Math.pow(10.0, -(i % 3)) * Math.sin(i);
+        }
+        final Array.Quantized quantized = Array.Quantized.of(new Array.Double(values), 3, 1.0e-4);
+
+        assertEquals(values.length, quantized.getLength());
+        assertTrue(quantized.getMaxError() <= 1.0e-4);
+        final double[] slice = new double[7];
+        quantized.getValues(5, slice);
+        for (int i = 0; i < values.length; i++) {
+            final double tolerance = Math.pow(10.0, -(i % 3)) / 0xFFFF;
+            assertEquals(values[i], quantized.getValue(i), tolerance);
+            if (i >= 5 && i < 12) {
+                assertEquals(quantized.getValue(i), slice[i - 5], 0.0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuantizedRejectsLargeError() {
+        final double[] values = {0.0, 1.0, 0.5, 0.25, 1.0e-7};
+        Array.Quantized.of(new Array.Double(values), 1, 1.0e-6);
+    }
+
+    private static double[] toArray(Array array) {
+        final double[] values = new double[array.getLength()];
+        array.getValues(0, values);
+        return values;
+    }
+}
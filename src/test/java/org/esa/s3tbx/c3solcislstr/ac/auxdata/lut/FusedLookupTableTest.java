@@ -0,0 +1,177 @@
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FusedLookupTableTest {
+
+    private static final double[] X = {0.0, 1.0, 3.0};
+    private static final double[] Y = {10.0, 20.0};
+    private static final double[] Z = {-1.0, 0.0, 0.5, 1.0};
+
+    private static Array createValues(int vertexCount, int length, Random random) {
+        final double[] values = new double[vertexCount * length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble();
+        }
+        return new Array.Double(values);
+    }
+
+    @Test
+    public void testGetValuesEqualsMembers() {
+        final Random random = new Random(5489);
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(X, Y, Z);
+        final IntervalPartition[] xz = {dimensions[0], dimensions[2]};
+        final IntervalPartition[] zy = {dimensions[2], dimensions[1]};
+
+        final Array a = createValues(X.length * Y.length * Z.length, 3, random);
+        final Array b = createValues(X.length * Z.length, 3, random);
+        final Array c = createValues(X.length * Z.length, 3, random);
+        final Array d = createValues(Z.length * Y.length, 3, random);
+        final int[] remapping = {2, 0};
+
+        final VectorLookupTable tableA = new VectorLookupTable(3, a, dimensions);
+        final VectorLookupTable tableB = new VectorLookupTable(3, b, xz);
+        final VectorLookupTable tableC = new VectorLookupTable(3, c, xz);
+        final VectorLookupTable tableD = new VectorLookupTable(3, d, zy);
+        // b and c interleaved into a single member, with their vectors remapped
+        final double[] bcValues = new double[X.length * Z.length * 4];
+        for (int v = 0, r = 0; v < X.length * Z.length; v++) {
+            for (Array source : new Array[]{b, c}) {
+                for (int index : remapping) {
+                    bcValues[r++] = source.getValue(v * 3 + index);
+                }
+            }
+        }
+        final Array bc = new Array.Double(bcValues);
+        final FusedLookupTable fused = new FusedLookupTable(dimensions, new VectorLookupTable[]{
+                tableA, new VectorLookupTable(4, bc, xz), tableD}, new int[][]{{0, 1, 2}, {0, 2}, {2, 1}});
+
+        assertEquals(10, fused.getVectorLength());
+        assertEquals(3, fused.getOffset(1));
+        assertEquals(7, fused.getOffset(2));
+
+        final LookupWorkspace workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[] values = new double[fused.getVectorLength()];
+        for (int i = 0; i < 1000; i++) {
+            final double x = 4.0 * random.nextDouble() - 0.5;
+            final double y = 10.0 + 10.0 * random.nextDouble();
+            final double z = 2.0 * random.nextDouble() - 1.0;
+            fused.getValues(new double[]{x, y, z}, values, workspace);
+
+            final double[] expectedA = tableA.getValues(x, y, z);
+            final double[] expectedB = tableB.getValues(x, z);
+            final double[] expectedC = tableC.getValues(x, z);
+            final double[] expectedD = tableD.getValues(z, y);
+            for (int k = 0; k < 3; k++) {
+                assertEquals(expectedA[k], values[k], 1.0e-15);
+                assertEquals(expectedD[k], values[7 + k], 1.0e-15);
+            }
+            for (int k = 0; k < 2; k++) {
+                assertEquals(expectedB[remapping[k]], values[3 + k], 1.0e-15);
+                assertEquals(expectedC[remapping[k]], values[5 + k], 1.0e-15);
+            }
+        }
+    }
+
+    @Test
+    public void testContracted() {
+        final Random random = new Random(5489);
+        final FusedLookupTable fused = createFusedTable(random);
+        final FusedLookupTable contracted = fused.contracted(1, 2.25);
+
+        assertEquals(2, contracted.getDimensionCount());
+        assertEquals(fused.getVectorLength(), contracted.getVectorLength());
+        for (int i = 0; i < 1000; i++) {
+            final double y = 10.0 + 10.0 * random.nextDouble();
+            final double z = 2.0 * random.nextDouble() - 1.0;
+            assertArrayEquals(fused.getValues(2.25, y, z), contracted.getValues(y, z), 1.0e-14);
+        }
+    }
+
+    @Test
+    public void testGetValuesWithDerivatives() {
+        final Random random = new Random(5489);
+        final FusedLookupTable fused = createFusedTable(random);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] values = new double[fused.getVectorLength()];
+        final double[] derivatives = new double[fused.getVectorLength()];
+        final double[] expectedValues = new double[fused.getVectorLength()];
+        final double[] expectedDerivatives = new double[fused.getVectorLength()];
+        final double h = 1.0e-6;
+
+        for (int i = 0; i < 100; i++) {
+            final double[] coordinates = {0.1 + 2.8 * random.nextDouble(), 10.5 + 9.0 * random.nextDouble(), 1.8 * random.nextDouble() - 0.9};
+            for (int axis = 0; axis < 3; axis++) {
+                fused.getValues(coordinates, values, axis, derivatives, workspace);
+                fused.getValues(coordinates, expectedValues, workspace);
+                // central differences are exact for a multilinear function, up to rounding
+                final double[] upper = coordinates.clone();
+                final double[] lower = coordinates.clone();
+                upper[axis] += h;
+                lower[axis] -= h;
+                final double[] u = fused.getValues(upper);
+                final double[] l = fused.getValues(lower);
+                for (int k = 0; k < expectedDerivatives.length; k++) {
+                    expectedDerivatives[k] = (u[k] - l[k]) / (2.0 * h);
+                }
+                assertArrayEquals(expectedValues, values, 1.0e-14);
+                assertArrayEquals(expectedDerivatives, derivatives, 1.0e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testContractionCache() {
+        final FusedLookupTable fused = createFusedTable(new Random(5489));
+        final ContractionCache cache = new ContractionCache(fused, new double[]{0.5}, 1);
+
+        final FusedLookupTable table = cache.get(1.1);
+        assertArrayEquals(fused.getValues(1.0, 15.0, 0.2), table.getValues(15.0, 0.2), 1.0e-14);
+        assertSame(table, cache.get(0.9));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(table.getValueCount() * 8, cache.getMemoryFootprint());
+
+        // exceeds the capacity, so the first table is evicted
+        for (double x = 0.0; x < 3.0; x += 0.5) {
+            cache.get(x);
+        }
+        assertEquals(1, cache.size());
+        assertEquals(table.getValueCount() * 8, cache.getMemoryFootprint());
+        assertEquals(1.0 / 8.0, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void testContractionCacheCapacity() {
+        final FusedLookupTable fused = createFusedTable(new Random(5489));
+        final ContractionCache cache = new ContractionCache(fused, new double[]{0.01}, 20);
+
+        for (int i = 0; i < 400; i++) {
+            cache.get(0.01 * i);
+        }
+        assertEquals(20, cache.size());
+    }
+
+    private static FusedLookupTable createFusedTable(Random random) {
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(X, Y, Z);
+        final IntervalPartition[] xz = {dimensions[0], dimensions[2]};
+        final IntervalPartition[] x = {dimensions[0]};
+        return new FusedLookupTable(dimensions, new VectorLookupTable[]{
+                new VectorLookupTable(3, createValues(X.length * Y.length * Z.length, 3, random), dimensions),
+                new VectorLookupTable(2, createValues(X.length * Z.length, 2, random), xz),
+                new VectorLookupTable(1, createValues(X.length, 1, random), x)}, new int[][]{{0, 1, 2}, {0, 2}, {0}});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMemberDimensionsMustMatch() {
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(X, Y, Z);
+        final VectorLookupTable table = new VectorLookupTable(1, new double[X.length * Y.length], X, Y);
+        new FusedLookupTable(dimensions, new VectorLookupTable[]{table}, new int[][]{{0, 2}});
+    }
+}
@@ -0,0 +1,106 @@
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalPartitionTest {
+
+    @Test
+    public void testIsUniform() {
+        assertTrue(new IntervalPartition(0.0, 0.1, 0.2, 0.3, 0.4).isUniform());
+        assertTrue(new IntervalPartition(0.0f, 0.1f, 0.2f, 0.3f, 0.4f).isUniform());
+        assertTrue(new IntervalPartition(800.0, 600.0, 400.0).isUniform());
+        assertFalse(new IntervalPartition(0.0, 0.05, 0.1, 0.2, 0.4, 0.8, 1.6).isUniform());
+    }
+
+    @Test
+    public void testFindIntervalEqualsBinarySearch() {
+        final Random random = new Random(5489);
+
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(0.0, 0.1, 0.2, 0.3, 0.4), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(0.0f, 0.1f, 0.2f, 0.3f, 0.4f), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(1.0, 2.0), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(0.0, 0.05, 0.1, 0.2, 0.4, 0.8, 1.6), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(1.6, 0.8, 0.4, 0.2, 0.1, 0.05, 0.0), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(800.0, 600.0, 400.0), random);
+        assertFindIntervalEqualsBinarySearch(new IntervalPartition(0.0, 1.0e-6, 1.0, 1.0e6), random);
+    }
+
+    @Test
+    public void testFindIntervalOutside() {
+        final IntervalPartition increasing = new IntervalPartition(0.0, 1.0, 2.0, 5.0);
+        assertEquals(0, increasing.findInterval(-1.0));
+        assertEquals(2, increasing.findInterval(5.0));
+        assertEquals(2, increasing.findInterval(Double.POSITIVE_INFINITY));
+        assertEquals(0, increasing.findInterval(Double.NEGATIVE_INFINITY));
+
+        final IntervalPartition decreasing = new IntervalPartition(5.0, 2.0, 1.0, 0.0);
+        assertEquals(0, decreasing.findInterval(6.0));
+        assertEquals(2, decreasing.findInterval(-1.0));
+    }
+
+    @Test
+    public void testFindIntervalWithGuess() {
+        final IntervalPartition[] partitions = {
+                new IntervalPartition(0.0, 0.05, 0.1, 0.2, 0.4, 0.8, 1.6, 2.0, 2.5, 3.0, 5.0, 10.0),
+                new IntervalPartition(60.0, 50.0, 40.0, 30.0, 20.0, 10.0, 0.0),
+                new IntervalPartition(1.0, 2.0)
+        };
+        final Random random = new Random(5489);
+
+        for (IntervalPartition partition : partitions) {
+            final double min = partition.getMin();
+            final double range = partition.getMax() - min;
+            for (int i = 0; i < 2000; i++) {
+                final double x = min - 0.1 * range + 1.2 * range * random.nextDouble();
+                final int expected = partition.findInterval(x);
+                for (int guess = -1; guess <= partition.getCardinal(); guess++) {
+                    assertEquals(expected, partition.findInterval(x, guess));
+                }
+            }
+            for (int i = 0; i < partition.getCardinal(); i++) {
+                final double x = partition.get(i);
+                for (int guess = 0; guess < partition.getCardinal() - 1; guess++) {
+                    assertEquals(partition.findInterval(x), partition.findInterval(x, guess));
+                }
+            }
+        }
+    }
+
+    private static void assertFindIntervalEqualsBinarySearch(IntervalPartition partition, Random random) {
+        final double min = partition.getMin();
+        final double max = partition.getMax();
+        final double range = max - min;
+
+        for (int i = 0; i < partition.getCardinal(); i++) {
+            final double x = partition.get(i);
+            assertEquals(binarySearch(partition, x), partition.findInterval(x));
+            assertEquals(binarySearch(partition, Math.nextUp(x)), partition.findInterval(Math.nextUp(x)));
+            assertEquals(binarySearch(partition, Math.nextDown(x)), partition.findInterval(Math.nextDown(x)));
+        }
+        for (int i = 0; i < 10000; i++) {
+            final double x = min - 0.1 * range + 1.2 * range * random.nextDouble();
+            assertEquals(binarySearch(partition, x), partition.findInterval(x));
+        }
+    }
+
+    // the search used by VectorLookupTable.computeFracIndex before the index was found in constant time
+    private static int binarySearch(IntervalPartition partition, double x) {
+        int lo = 0;
+        int hi = partition.getCardinal() - 1;
+        while (hi > lo + 1) {
+            final int m = (lo + hi) >> 1;
+            if (partition.getMonotonicity() > 0 ? x < partition.get(m) : x > partition.get(m)) {
+                hi = m;
+            } else {
+                lo = m;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,132 @@
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolynomialSurrogateTest {
+
+    private static final double[] X = {0.0, 0.05, 0.1, 0.2, 0.4, 0.8, 1.2, 1.6, 2.0};
+    private static final double[] Y = {60.0, 50.0, 40.0, 30.0, 20.0, 10.0, 0.0};
+    private static final double[] Z = {1.0, 2.0, 3.0};
+
+    private static VectorLookupTable createTable(Function function) {
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        int i = 0;
+        for (double x : X) {
+            for (double y : Y) {
+                for (double z : Z) {
+                    values[i++] = function.value(x, y, z);
+                    values[i++] = 2.0 - function.value(x, y, z);
+                }
+            }
+        }
+        return new VectorLookupTable(2, values, X, Y, Z);
+    }
+
+    @Test
+    public void testPolynomialIsReproduced() {
+        // the table interpolates a multilinear polynomial exactly
+        final VectorLookupTable table = createTable((x, y, z) -> 0.5 + 0.1 * x + 1.0e-4 * x * y + 0.01 * z - 1.0e-3 * y * z);
+        final PolynomialSurrogate surrogate = PolynomialSurrogate.fit(table, 2, 1.0e-9, 1);
+
+        assertEquals(1, surrogate.getPatchCount());
+        assertTrue(surrogate.getMaxError() <= 1.0e-9);
+        final Random random = new Random(5489);
+        for (int i = 0; i < 1000; i++) {
+            final double[] point = {2.0 * random.nextDouble(), 60.0 * random.nextDouble(), 1.0 + 2.0 * random.nextDouble()};
+            assertArrayEquals(table.getValues(point), surrogate.getValues(point), 1.0e-9);
+        }
+        // outside the range, the coordinates are clamped
+        assertEquals(surrogate.getValues(2.0, 0.0, 3.0)[0], surrogate.getValues(3.0, -10.0, 4.0)[0], 0.0);
+    }
+
+    @Test
+    public void testErrorBoundIsMet() {
+        final VectorLookupTable table = createTable((x, y, z) -> Math.exp(-x * z) * Math.cos(Math.toRadians(y)));
+        final double maxError = 1.0e-4;
+        final PolynomialSurrogate surrogate = PolynomialSurrogate.fit(table, 3, maxError, 1000);
+
+        assertTrue(surrogate.getPatchCount() > 1);
+        assertTrue(surrogate.getMaxError() <= maxError);
+        for (int i = 0; i < X.length; i++) {
+            for (int j = 0; j < Y.length; j++) {
+                for (int k = 0; k < Z.length; k++) {
+                    final double[] expected = table.getValues(X[i], Y[j], Z[k]);
+                    final double[] actual = surrogate.getValues(X[i], Y[j], Z[k]);
+                    assertEquals(expected[0], actual[0], maxError);
+                    assertEquals(expected[1], actual[1], maxError);
+                    if (i > 0 && j > 0 && k > 0) {
+                        final double x = 0.5 * (X[i] + X[i - 1]);
+                        final double y = 0.5 * (Y[j] + Y[j - 1]);
+                        final double z = 0.5 * (Z[k] + Z[k - 1]);
+                        assertEquals(table.getValues(x, y, z)[0], surrogate.getValues(x, y, z)[0], maxError);
+                    }
+                }
+            }
+        }
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final double[] point = {2.0 * random.nextDouble(), 60.0 * random.nextDouble(), 1.0 + 2.0 * random.nextDouble()};
+            assertArrayEquals(table.getValues(point), surrogate.getValues(point), maxError);
+        }
+
+        final StringWriter writer = new StringWriter();
+        surrogate.writeCoefficients(new PrintWriter(writer));
+        assertTrue(writer.toString().startsWith("patch 0 "));
+    }
+
+    @Test
+    public void testDerivatives() {
+        final VectorLookupTable table = createTable((x, y, z) -> Math.exp(-x * z) * Math.cos(Math.toRadians(y)));
+        final PolynomialSurrogate surrogate = PolynomialSurrogate.fit(table, 3, 1.0e-4, 1000);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final Random random = new Random(5489);
+        final double[] values = new double[2];
+        final double[] derivatives = new double[2];
+
+        for (int i = 0; i < 1000; i++) {
+            final double[] point = {0.01 + 1.98 * random.nextDouble(), 0.1 + 59.8 * random.nextDouble(), 1.0 + 2.0 * random.nextDouble()};
+            for (int axis = 0; axis < 3; axis++) {
+                surrogate.getValues(point, values, axis, derivatives, workspace);
+                assertEquals(surrogate.getValues(point)[0], values[0], 0.0);
+
+                final double h = 1.0e-6 * (1.0 + Math.abs(point[axis]));
+                final double[] lower = point.clone();
+                final double[] upper = point.clone();
+                lower[axis] -= h;
+                upper[axis] += h;
+                // skip points close to a patch boundary, where the derivative is discontinuous
+                final double a = surrogate.getValues(lower)[1];
+                final double b = surrogate.getValues(upper)[1];
+                final double[] lowerDerivatives = new double[2];
+                final double[] upperDerivatives = new double[2];
+                surrogate.getValues(lower, values, axis, lowerDerivatives, workspace);
+                surrogate.getValues(upper, values, axis, upperDerivatives, workspace);
+                if (Math.abs(lowerDerivatives[1] - upperDerivatives[1]) < 1.0e-3 * (1.0 + Math.abs(derivatives[1]))) {
+                    assertEquals((b - a) / (2.0 * h), derivatives[1], 1.0e-5 * (1.0 + Math.abs(derivatives[1])));
+                }
+            }
+        }
+
+        surrogate.getValues(new double[]{3.0, 30.0, 2.0}, values, 0, derivatives, workspace);
+        assertEquals(0.0, derivatives[0], 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnattainableErrorBoundIsRejected() {
+        final VectorLookupTable table = createTable((x, y, z) -> Math.exp(-x * z) * Math.cos(Math.toRadians(y)));
+        PolynomialSurrogate.fit(table, 3, 1.0e-4, 2);
+    }
+
+    private interface Function {
+        double value(double x, double y, double z);
+    }
+}
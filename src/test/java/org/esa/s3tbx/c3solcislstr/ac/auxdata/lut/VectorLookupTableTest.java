@@ -0,0 +1,439 @@
+package org.esa.s3tbx.c3solcislstr.ac.auxdata.lut;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorLookupTableTest {
+
+    // a 3-D table of vectors of length 2 which is linear in each coordinate, so interpolation is exact
+    private static final double[] X = {0.0, 1.0, 3.0};
+    private static final double[] Y = {10.0, 20.0};
+    private static final double[] Z = {-1.0, 0.0, 0.5, 1.0};
+
+    private static double f(int k, double x, double y, double z) {
+        return (k + 1) * x + 0.1 * y - 2.0 * z + k;
+    }
+
+    private static VectorLookupTable createTable() {
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        int index = 0;
+        for (double x : X) {
+            for (double y : Y) {
+                for (double z : Z) {
+                    for (int k = 0; k < 2; k++) {
+                        values[index++] = f(k, x, y, z);
+                    }
+                }
+            }
+        }
+        return new VectorLookupTable(2, values, X, Y, Z);
+    }
+
+    @Test
+    public void testGetValues() {
+        final VectorLookupTable table = createTable();
+        final double[] values = table.getValues(0.5, 12.0, 0.25);
+
+        assertEquals(2, values.length);
+        assertEquals(f(0, 0.5, 12.0, 0.25), values[0], 1.0e-12);
+        assertEquals(f(1, 0.5, 12.0, 0.25), values[1], 1.0e-12);
+    }
+
+    @Test
+    public void testGetValuesOutsideIsClamped() {
+        final VectorLookupTable table = createTable();
+        final double[] values = table.getValues(-1.0, 25.0, 2.0);
+
+        assertEquals(f(0, 0.0, 20.0, 1.0), values[0], 1.0e-12);
+        assertEquals(f(1, 0.0, 20.0, 1.0), values[1], 1.0e-12);
+    }
+
+    @Test
+    public void testGetValuesWithWorkspace() {
+        final VectorLookupTable table = createTable();
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] values = new double[2];
+        final double[] coordinates = workspace.getCoordinates(3);
+
+        for (double x = -0.5; x <= 3.5; x += 0.25) {
+            for (double z = -1.5; z <= 1.5; z += 0.125) {
+                coordinates[0] = x;
+                coordinates[1] = 17.0;
+                coordinates[2] = z;
+                table.getValues(coordinates, values, workspace);
+                assertArrayEquals(table.getValues(x, 17.0, z), values, 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testRemappedWithWorkspace() {
+        final VectorLookupTable table = createTable();
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final MultivariateLookupTable swapped = new Remapped(table, new int[]{1, 0});
+        final MultivariateLookupTable identity = new Remapped(swapped, new int[]{1, 0});
+
+        final double[] expected = table.getValues(2.0, 15.0, 0.75);
+        final double[] values = new double[2];
+        swapped.getValues(new double[]{2.0, 15.0, 0.75}, values, workspace);
+        assertEquals(expected[1], values[0], 0.0);
+        assertEquals(expected[0], values[1], 0.0);
+
+        identity.getValues(new double[]{2.0, 15.0, 0.75}, values, workspace);
+        assertArrayEquals(expected, values, 0.0);
+        assertArrayEquals(expected, identity.getValues(2.0, 15.0, 0.75), 0.0);
+    }
+
+    @Test
+    public void testDirectStorage() {
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(i);
+        }
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(X, Y, Z);
+        final VectorLookupTable heapDouble = new VectorLookupTable(2, new Array.Double(values), dimensions);
+        final VectorLookupTable directDouble = new VectorLookupTable(2, Array.Storage.DIRECT.store(new Array.Double(values)), dimensions);
+        final float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            floats[i] = (float) values[i];
+        }
+        final VectorLookupTable heapFloat = new VectorLookupTable(2, new Array.Float(floats), dimensions);
+        final VectorLookupTable directFloat = new VectorLookupTable(2, Array.Storage.DIRECT.store(new Array.Float(floats)), dimensions);
+
+        assertArrayEquals(heapDouble.getValues(0.5, 12.0, 0.25), directDouble.getValues(0.5, 12.0, 0.25), 0.0);
+        assertArrayEquals(heapFloat.getValues(0.5, 12.0, 0.25), directFloat.getValues(0.5, 12.0, 0.25), 0.0);
+        assertArrayEquals(heapFloat.getValues(2.5, 17.0, -0.75), directFloat.getValues(2.5, 17.0, -0.75), 0.0);
+    }
+
+    @Test
+    public void testQuantizedStorage() {
+        final VectorLookupTable table = createTable();
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(X, Y, Z);
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        int index = 0;
+        for (double x : X) {
+            for (double y : Y) {
+                for (double z : Z) {
+                    for (int k = 0; k < 2; k++) {
+                        values[index++] = f(k, x, y, z);
+                    }
+                }
+            }
+        }
+        final Array.Quantized quantized = Array.Quantized.of(new Array.Double(values), 2, 1.0e-3);
+        final VectorLookupTable quantizedTable = new VectorLookupTable(2, quantized, dimensions);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expected = new double[2];
+        final double[] actual = new double[2];
+        final Random random = new Random(5489);
+
+        for (int i = 0; i < 1000; i++) {
+            final double[] coordinates = {3.0 * random.nextDouble(), 10.0 + 10.0 * random.nextDouble(), 2.0 * random.nextDouble() - 1.0};
+            table.getValues(coordinates, expected, workspace);
+            quantizedTable.getValues(coordinates, actual, workspace);
+            assertArrayEquals(expected, actual, quantized.getMaxError());
+            quantizedTable.setPrecision(VectorLookupTable.Precision.FLOAT);
+            quantizedTable.getValues(coordinates, actual, workspace);
+            assertArrayEquals(expected, actual, quantized.getMaxError() + 1.0e-5);
+            quantizedTable.setPrecision(VectorLookupTable.Precision.DOUBLE);
+        }
+    }
+
+    @Test
+    public void testBlockedLayout() {
+        final VectorLookupTable table = createTable();
+        final IntervalPartition[] dimensions = table.getDimensions();
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(i);
+        }
+        final Array rowMajor = new Array.Double(values);
+        final Array blocked = VectorLookupTable.Layout.BLOCKED.arrange(2, rowMajor, dimensions);
+        final VectorLookupTable expectedTable = new VectorLookupTable(2, rowMajor, dimensions);
+        final VectorLookupTable blockedTable = new VectorLookupTable(2, blocked, VectorLookupTable.Layout.BLOCKED, dimensions);
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expected = new double[2];
+        final double[] actual = new double[2];
+        final Random random = new Random(5489);
+
+        // X and Z are padded to 4 vertices
+        assertEquals(4 * 2 * 4 * 2, blocked.getLength());
+        for (int i = 0; i < 1000; i++) {
+            final double[] coordinates = {4.0 * random.nextDouble() - 0.5, 10.0 + 10.0 * random.nextDouble(), 2.0 * random.nextDouble() - 1.0};
+            expectedTable.getValues(coordinates, expected, workspace);
+            blockedTable.getValues(coordinates, actual, workspace);
+            assertArrayEquals(expected, actual, 0.0);
+        }
+    }
+
+    @Test
+    public void testGetValuesWithDerivatives() {
+        final VectorLookupTable table = createTable();
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expected = new double[2];
+        final double[] values = new double[2];
+        final double[] derivatives = new double[2];
+        final double[][] slopes = {{1.0, 2.0}, {0.1, 0.1}, {-2.0, -2.0}};
+        final Random random = new Random(5489);
+
+        for (int i = 0; i < 1000; i++) {
+            final double[] coordinates = {3.0 * random.nextDouble(), 10.0 + 10.0 * random.nextDouble(), 2.0 * random.nextDouble() - 1.0};
+            table.getValues(coordinates, expected, workspace);
+            for (int axis = 0; axis < 3; axis++) {
+                table.getValues(coordinates, values, axis, derivatives, workspace);
+                assertArrayEquals(expected, values, 1.0e-12);
+                assertArrayEquals(slopes[axis], derivatives, 1.0e-12);
+            }
+        }
+        // outside the table the interpolant is constant
+        table.getValues(new double[]{-1.0, 15.0, 0.0}, values, 0, derivatives, workspace);
+        assertArrayEquals(new double[2], derivatives, 0.0);
+    }
+
+    @Test
+    public void testDerivativesEqualDefaultImplementation() {
+        final double[] values = new double[X.length * Y.length * Z.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(i);
+        }
+        final VectorLookupTable table = new VectorLookupTable(2, values, X, Y, Z);
+        // uses the default implementation of the derivative lookup
+        final MultivariateLookupTable reference = new MultivariateLookupTable() {
+            @Override
+            public int getDimensionCount() {
+                return table.getDimensionCount();
+            }
+
+            @Override
+            public IntervalPartition[] getDimensions() {
+                return table.getDimensions();
+            }
+
+            @Override
+            public IntervalPartition getDimension(int i) {
+                return table.getDimension(i);
+            }
+
+            @Override
+            public int getVectorLength() {
+                return table.getVectorLength();
+            }
+
+            @Override
+            public double[] getValues(double... coordinates) {
+                return table.getValues(coordinates);
+            }
+
+            @Override
+            public void getValues(double[] coordinates, double[] values, LookupWorkspace workspace) {
+                table.getValues(coordinates, values, workspace);
+            }
+        };
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expectedValues = new double[2];
+        final double[] expectedDerivatives = new double[2];
+        final double[] actualValues = new double[2];
+        final double[] actualDerivatives = new double[2];
+        final Random random = new Random(5489);
+
+        for (int i = 0; i < 1000; i++) {
+            final double[] coordinates = {3.0 * random.nextDouble(), 10.0 + 10.0 * random.nextDouble(), 2.0 * random.nextDouble() - 1.0};
+            for (int axis = 0; axis < 3; axis++) {
+                reference.getValues(coordinates, expectedValues, axis, expectedDerivatives, workspace);
+                table.getValues(coordinates, actualValues, axis, actualDerivatives, workspace);
+                assertArrayEquals(expectedValues, actualValues, 1.0e-12);
+                assertArrayEquals(expectedDerivatives, actualDerivatives, 1.0e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testFloatPrecision() {
+        final VectorLookupTable table = createTable();
+        final LookupWorkspace workspace = new LookupWorkspace();
+        final double[] expected = new double[2];
+        final double[] values = new double[2];
+        final Random random = new Random(5489);
+
+        for (int i = 0; i < 1000; i++) {
+            final double[] coordinates = {3.0 * random.nextDouble(), 10.0 + 10.0 * random.nextDouble(), 2.0 * random.nextDouble() - 1.0};
+            table.setPrecision(VectorLookupTable.Precision.DOUBLE);
+            table.getValues(coordinates, expected, workspace);
+            table.setPrecision(VectorLookupTable.Precision.FLOAT);
+            table.getValues(coordinates, values, workspace);
+            assertArrayEquals(expected, values, 1.0e-5);
+        }
+    }
+
+    @Test
+    public void testHuntSearch() {
+        final VectorLookupTable table = createTable();
+        final LookupWorkspace direct = new LookupWorkspace();
+        final LookupWorkspace hunt = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[] expected = new double[2];
+        final double[] values = new double[2];
+
+        int count = 0;
+        for (double x = -0.5; x <= 3.5; x += 0.01, count++) {
+            final double[] coordinates = {x, 12.0, 0.1};
+            table.getValues(coordinates, expected, direct);
+            table.getValues(coordinates, values, hunt);
+            assertArrayEquals(expected, values, 0.0);
+        }
+
+        assertEquals(0, direct.getHitCount() + direct.getAdjacentCount() + direct.getMissCount());
+        assertEquals(3 * count, hunt.getHitCount() + hunt.getAdjacentCount() + hunt.getMissCount());
+        assertEquals(3, hunt.getMissCount());
+        assertEquals(1, hunt.getAdjacentCount());
+    }
+
+    @Test
+    public void testHuntSearchWithManyTables() {
+        final LookupWorkspace hunt = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[] values = new double[2];
+
+        // more tables than the workspace has slots, so slots are reassigned
+        for (int i = 0; i < 1000; i++) {
+            final VectorLookupTable table = createTable();
+            for (double x = 0.25; x < 3.0; x += 1.0) {
+                table.getValues(new double[]{x, 12.0, 0.1}, values, hunt);
+                assertArrayEquals(table.getValues(x, 12.0, 0.1), values, 0.0);
+            }
+        }
+        final VectorLookupTable table = createTable();
+        final long hitCount = hunt.getHitCount();
+        table.getValues(new double[]{0.25, 12.0, 0.1}, values, hunt);
+        table.getValues(new double[]{0.25, 12.0, 0.1}, values, hunt);
+        assertEquals(hitCount + 3, hunt.getHitCount());
+    }
+
+    @Test
+    public void testGetValuesBatch() {
+        final VectorLookupTable table = createTable();
+        final MultivariateLookupTable swapped = new Remapped(table, new int[]{1, 0});
+        final LookupWorkspace workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final Random random = new Random(5489);
+
+        final int count = 100;
+        final double[][] coordinates = new double[3][count + 1];
+        for (int p = 0; p < count; p++) {
+            coordinates[0][p] = 4.0 * random.nextDouble() - 0.5;
+            coordinates[1][p] = 10.0 + 10.0 * random.nextDouble();
+            coordinates[2][p] = 2.0 * random.nextDouble() - 1.0;
+        }
+        final double[][] values = new double[count][2];
+        final double[][] swappedValues = new double[count][2];
+        table.getValues(coordinates, count, values, workspace);
+        swapped.getValues(coordinates, count, swappedValues, workspace);
+
+        for (int p = 0; p < count; p++) {
+            final double[] expected = table.getValues(coordinates[0][p], coordinates[1][p], coordinates[2][p]);
+            assertArrayEquals(expected, values[p], 0.0);
+            assertEquals(expected[1], swappedValues[p][0], 0.0);
+            assertEquals(expected[0], swappedValues[p][1], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetValuesBatchWithShortCoordinates() {
+        createTable().getValues(new double[3][4], 5, new double[5][2], new LookupWorkspace());
+    }
+
+    @Test
+    public void testBlockedLayoutTouchesFewerPages() {
+        // a synthetic table shaped like the OLCI reflectance_toa table: hsf, aot, raa, vza, sza, 21 wavelengths
+        final int[] sizes = {4, 13, 19, 14, 14};
+        final int vectorLength = 21;
+        final float[][] axes = new float[sizes.length][];
+        int vertexCount = 1;
+        for (int i = 0; i < sizes.length; i++) {
+            axes[i] = new float[sizes[i]];
+            for (int j = 0; j < sizes[i]; j++) {
+                axes[i][j] = j;
+            }
+            vertexCount *= sizes[i];
+        }
+        final IntervalPartition[] dimensions = IntervalPartition.createArray(axes);
+        final Random random = new Random(5489);
+        final float[] values = new float[vertexCount * vectorLength];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextFloat();
+        }
+
+        // a SYN-like geometry sequence: scan lines across the swath, with smooth angles and aerosol
+        final int lineLength = 1217;
+        final int lineCount = 20;
+        final double[][] coordinates = new double[lineLength * lineCount][];
+        for (int y = 0, p = 0; y < lineCount; y++) {
+            for (int x = 0; x < lineLength; x++, p++) {
+                final double across = (double) x / (lineLength - 1);
+                final double aot = 6.0 + 3.0 * Math.sin(0.01 * x + 0.03 * y) + 0.5 * random.nextDouble();
+                coordinates[p] = new double[]{
+                        1.2, aot, 18.0 * across, 13.0 * Math.abs(2.0 * across - 1.0), 6.0 + 4.0 * y / lineCount + across};
+            }
+        }
+
+        final long[] rowMajorCounts = countCacheLinesAndPages(VectorLookupTable.Layout.ROW_MAJOR, sizes, vectorLength,
+                                                              dimensions, coordinates);
+        final long[] blockedCounts = countCacheLinesAndPages(VectorLookupTable.Layout.BLOCKED, sizes, vectorLength,
+                                                             dimensions, coordinates);
+        // the vectors span two or more cache lines each, so the blocks save pages rather than cache lines
+        assertTrue(blockedCounts[1] < rowMajorCounts[1]);
+
+        // both layouts interpolate the same values
+        final VectorLookupTable rowMajorTable = new VectorLookupTable(vectorLength, values, dimensions);
+        final VectorLookupTable blockedTable = new VectorLookupTable(
+                vectorLength, VectorLookupTable.Layout.BLOCKED.arrange(vectorLength, new Array.Float(values), dimensions),
+                VectorLookupTable.Layout.BLOCKED, dimensions);
+        final LookupWorkspace workspace = new LookupWorkspace(LookupWorkspace.Search.HUNT);
+        final double[] expected = new double[vectorLength];
+        final double[] actual = new double[vectorLength];
+        for (int p = 0; p < coordinates.length; p += 97) {
+            rowMajorTable.getValues(coordinates[p], expected, workspace);
+            blockedTable.getValues(coordinates[p], actual, workspace);
+            assertArrayEquals(expected, actual, 1.0e-12);
+        }
+    }
+
+    // the numbers of distinct 64-byte cache lines and 4-KiB pages holding the corners of the cells looked up
+    private static long[] countCacheLinesAndPages(VectorLookupTable.Layout layout, int[] sizes, int vectorLength,
+                                                  IntervalPartition[] dimensions, double[][] coordinates) {
+        final int[][] addresses = layout == VectorLookupTable.Layout.ROW_MAJOR ? null :
+                VectorLookupTable.computeAddresses(layout, vectorLength, dimensions);
+        final long[] counts = new long[2];
+        final BitSet lines = new BitSet();
+        final BitSet pages = new BitSet();
+        for (double[] c : coordinates) {
+            lines.clear();
+            pages.clear();
+            final int[] lo = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                lo[i] = Math.min((int) c[i], sizes[i] - 2);
+            }
+            for (int corner = 0; corner < 1 << sizes.length; corner++) {
+                int index = 0;
+                for (int i = 0; i < sizes.length; i++) {
+                    final int j = lo[i] + (corner >> i & 1);
+                    index = addresses == null ? index * sizes[i] + j : index + addresses[i][j];
+                }
+                final int first = (addresses == null ? index * vectorLength : index) * 4;
+                lines.set(first >> 6, (first + 4 * vectorLength - 1 >> 6) + 1);
+                pages.set(first >> 12, (first + 4 * vectorLength - 1 >> 12) + 1);
+            }
+            counts[0] += lines.cardinality();
+            counts[1] += pages.cardinality();
+        }
+        return counts;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetValuesWithIllegalCoordinates() {
+        createTable().getValues(new double[]{0.0, 10.0}, new double[2], new LookupWorkspace());
+    }
+}